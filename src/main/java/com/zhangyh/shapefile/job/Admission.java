@@ -0,0 +1,29 @@
+package com.zhangyh.shapefile.job;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 提交任务前预占的名额和上传配额
+ * 在读取请求体之前按 Content-Length 预占，随后交给 {@link JobService#submit(Admission, String, org.springframework.web.multipart.MultipartFile, JobTask)}
+ * 转为任务；没有转为任务（如上传中断、参数错误）的预占由 {@link JobService#release(Admission)} 归还。
+ *
+ * @author zhangyh
+ */
+public final class Admission {
+
+    private final long bytes;
+    /** 已交给任务或已归还，二者只发生一次 */
+    private final AtomicBoolean settled = new AtomicBoolean();
+
+    Admission(long bytes) {
+        this.bytes = bytes;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    boolean settle() {
+        return settled.compareAndSet(false, true);
+    }
+}
@@ -0,0 +1,203 @@
+package com.zhangyh.shapefile.job;
+
+import com.zhangyh.shapefile.shapefile.stream.ShapefileFileWriter;
+import com.zhangyh.shapefile.shapefile.stream.ShapefileRecord;
+import com.zhangyh.shapefile.shapefile.stream.ShapefileStreamReader;
+import com.zhangyh.shapefile.shapefile.stream.ZipShapefileReader;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.api.feature.type.AttributeDescriptor;
+import org.geotools.api.feature.type.GeometryDescriptor;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geojson.feature.FeatureJSON;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.MultiPolygon;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 可提交给 {@link JobService} 的转换与分析任务
+ * 与 ShapeFileOperator 中的教学示例逻辑相同，但全程流式处理，并上报进度、响应取消。
+ *
+ * @author zhangyh
+ */
+public final class ConversionTasks {
+
+    /** 每批交给 CPU 线程池的记录数 */
+    private static final int BATCH_SIZE = 512;
+
+    private ConversionTasks() {
+    }
+
+    /**
+     * GeoJSON FeatureCollection 转 Shapefile
+     * 字段规则与 ShapeFileOperator.geoJsonToShapefile 一致：以第一个要素推断结构，字段名截断为 10 个字符。
+     */
+    public static JobTask geoJsonToShapefile() {
+        return context -> {
+            Path output = context.getWorkDir().resolve("result.shp");
+            context.setTotalBytes(Files.size(context.getInput()));
+            FeatureJSON featureJSON = new FeatureJSON();
+            try (InputStream in = new ProgressInputStream(Files.newInputStream(context.getInput()), context);
+                 FeatureIterator<SimpleFeature> features = featureJSON.streamFeatureCollection(new BufferedInputStream(in, 64 * 1024))) {
+                if (!features.hasNext()) {
+                    throw new IOException("GeoJSON 中没有要素，输入需要是 FeatureCollection");
+                }
+                SimpleFeature first = features.next();
+                List<String> fields = attributeNames(first.getFeatureType());
+                // try-with-resources：写入失败时 close() 的异常作为 suppressed 附加，不会掩盖原始异常
+                try (ShapefileFileWriter writer = new ShapefileFileWriter(output, shapefileSchema(first.getFeatureType(), "result"))) {
+                    SimpleFeature feature = first;
+                    while (true) {
+                        context.checkCancelled();
+                        Object[] values = new Object[fields.size()];
+                        for (int i = 0; i < values.length; i++) {
+                            values[i] = feature.getAttribute(fields.get(i));
+                        }
+                        writer.write((Geometry) feature.getDefaultGeometry(), values);
+                        context.addRecords(1);
+                        if (!features.hasNext()) {
+                            break;
+                        }
+                        feature = features.next();
+                    }
+                }
+            }
+            context.setResult(output);
+        };
+    }
+
+    /**
+     * 缓冲区分析：读取上传的 zip 包，分批在 CPU 线程池中做 buffer，结果保留全部原始属性
+     */
+    public static JobTask bufferFeatures(double distance) {
+        return context -> {
+            Path output = context.getWorkDir().resolve("result.shp");
+            try (ZipShapefileReader zip = new ZipShapefileReader(context.getInput());
+                 ShapefileStreamReader reader = zip.open()) {
+                context.setTotalBytes(reader.getFileLength());
+                SimpleFeatureType schema = bufferSchema(reader.getSchema());
+                try (ShapefileFileWriter writer = new ShapefileFileWriter(output, schema, reader.getCharset())) {
+                    List<ShapefileRecord> batch = new ArrayList<>(BATCH_SIZE);
+                    long position = 0;
+                    while (reader.hasNext()) {
+                        context.checkCancelled();
+                        ShapefileRecord record = reader.next();
+                        batch.add(record);
+                        position = record.getOffset() + 8 + record.getContent().remaining();
+                        if (batch.size() == BATCH_SIZE) {
+                            writeBuffered(context, writer, batch, distance);
+                            context.setBytesProcessed(position);
+                        }
+                    }
+                    writeBuffered(context, writer, batch, distance);
+                    context.setBytesProcessed(position);
+                }
+            }
+            context.setResult(output);
+        };
+    }
+
+    private static void writeBuffered(JobContext context, ShapefileFileWriter writer,
+                                      List<ShapefileRecord> batch, double distance) throws Exception {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<ShapefileRecord> records = new ArrayList<>(batch);
+        batch.clear();
+        Geometry[] buffered = context.compute(() -> {
+            Geometry[] result = new Geometry[records.size()];
+            for (int i = 0; i < result.length; i++) {
+                Geometry geometry = records.get(i).getGeometry();
+                result[i] = geometry == null ? null : geometry.buffer(distance);
+            }
+            return result;
+        });
+        for (int i = 0; i < buffered.length; i++) {
+            context.checkCancelled();
+            writer.write(buffered[i], records.get(i).getAttributes());
+        }
+        context.addRecords(buffered.length);
+    }
+
+    private static SimpleFeatureType bufferSchema(SimpleFeatureType source) {
+        SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+        builder.setName("result");
+        builder.setCRS(source.getCoordinateReferenceSystem());
+        builder.add("the_geom", MultiPolygon.class);
+        for (AttributeDescriptor descriptor : source.getAttributeDescriptors()) {
+            if (!(descriptor instanceof GeometryDescriptor)) {
+                builder.add(descriptor);
+            }
+        }
+        return builder.buildFeatureType();
+    }
+
+    private static SimpleFeatureType shapefileSchema(SimpleFeatureType geoJsonType, String name) {
+        SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+        builder.setName(name);
+        builder.setCRS(DefaultGeographicCRS.WGS84);
+        GeometryDescriptor geometry = geoJsonType.getGeometryDescriptor();
+        builder.add("the_geom", geometry == null ? Geometry.class : geometry.getType().getBinding());
+        for (AttributeDescriptor descriptor : geoJsonType.getAttributeDescriptors()) {
+            if (descriptor instanceof GeometryDescriptor) {
+                continue;
+            }
+            String field = descriptor.getLocalName();
+            builder.add(field.length() > 10 ? field.substring(0, 10) : field, descriptor.getType().getBinding());
+        }
+        return builder.buildFeatureType();
+    }
+
+    private static List<String> attributeNames(SimpleFeatureType type) {
+        List<String> names = new ArrayList<>();
+        for (AttributeDescriptor descriptor : type.getAttributeDescriptors()) {
+            if (!(descriptor instanceof GeometryDescriptor)) {
+                names.add(descriptor.getLocalName());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 统计已读取字节数作为进度
+     */
+    private static final class ProgressInputStream extends FilterInputStream {
+
+        private final JobContext context;
+        private long count;
+
+        ProgressInputStream(InputStream in, JobContext context) {
+            super(in);
+            this.context = context;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                context.setBytesProcessed(++count);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+                context.setBytesProcessed(count);
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.zhangyh.shapefile.job;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个异步转换任务的状态与进度
+ * 公开的 getter 即接口返回的 JSON 字段，内部状态（工作目录、Future 等）只对本包可见。
+ *
+ * @author zhangyh
+ */
+public class Job {
+
+    private final String id;
+    private final String type;
+    private final long inputBytes;
+    private final long reservedBytes;
+    private final Instant createdAt = Instant.now();
+    private final Path workDir;
+
+    private final AtomicLong recordsProcessed = new AtomicLong();
+    private final AtomicLong bytesProcessed = new AtomicLong();
+    private volatile long totalBytes;
+
+    private volatile JobStatus status = JobStatus.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    private volatile boolean cancelRequested;
+    /** 任务体开始执行或排队时被取消，二者只有一方能拿到，拿到的一方负责归还名额 */
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    private volatile Future<?> future;
+    private volatile Path input;
+    private volatile Path result;
+
+    Job(String id, String type, long inputBytes, long reservedBytes, Path workDir) {
+        this.id = id;
+        this.type = type;
+        this.inputBytes = inputBytes;
+        this.reservedBytes = reservedBytes;
+        this.workDir = workDir;
+        this.totalBytes = inputBytes;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    public long getRecordsProcessed() {
+        return recordsProcessed.get();
+    }
+
+    public long getBytesProcessed() {
+        return bytesProcessed.get();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isResultAvailable() {
+        return status == JobStatus.SUCCEEDED && result != null;
+    }
+
+    // ---------------- 以下仅供任务子系统内部使用 ----------------
+
+    /**
+     * 提交时预占的上传配额（按 Content-Length 预占时略大于文件大小）
+     */
+    long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    Path getWorkDir() {
+        return workDir;
+    }
+
+    Path getInput() {
+        return input;
+    }
+
+    void setInput(Path input) {
+        this.input = input;
+    }
+
+    Path getResult() {
+        return result;
+    }
+
+    void setResult(Path result) {
+        this.result = result;
+    }
+
+    Future<?> getFuture() {
+        return future;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    void requestCancel() {
+        this.cancelRequested = true;
+    }
+
+    /**
+     * 认领任务的生命周期，只有第一次调用返回 true
+     */
+    boolean claim() {
+        return claimed.compareAndSet(false, true);
+    }
+
+    void addRecords(long n) {
+        recordsProcessed.addAndGet(n);
+    }
+
+    void setBytesProcessed(long bytes) {
+        bytesProcessed.set(bytes);
+    }
+
+    void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    void markRunning() {
+        startedAt = Instant.now();
+        status = JobStatus.RUNNING;
+    }
+
+    void markFinished(JobStatus status, String error) {
+        this.error = error;
+        this.finishedAt = Instant.now();
+        this.status = status;
+    }
+}
@@ -0,0 +1,52 @@
+package com.zhangyh.shapefile.job;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * 上传接口的准入控制：在 multipart 请求体被读取之前，按 Content-Length 检查大小并预占任务名额和上传配额
+ * 需要 spring.servlet.multipart.resolve-lazily=true，否则请求体会在进入拦截器之前被完整解析落盘。
+ * 请求结束时未交给任务的预占会被归还。
+ *
+ * @author zhangyh
+ */
+public class JobAdmissionInterceptor implements HandlerInterceptor {
+
+    /** 预占结果存放的请求属性名 */
+    public static final String ADMISSION = JobAdmissionInterceptor.class.getName() + ".admission";
+
+    private final JobService jobService;
+    private final JobProperties properties;
+
+    public JobAdmissionInterceptor(JobService jobService, JobProperties properties) {
+        this.jobService = jobService;
+        this.properties = properties;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!"POST".equalsIgnoreCase(request.getMethod())) {
+            return true;
+        }
+        long length = request.getContentLengthLong();
+        if (length < 0) {
+            throw new ResponseStatusException(HttpStatus.LENGTH_REQUIRED, "上传请求需要 Content-Length");
+        }
+        if (length > properties.getMaxUploadBytes()) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "上传数据超过单个任务上限 " + properties.getMaxUploadBytes() + " 字节");
+        }
+        request.setAttribute(ADMISSION, jobService.admit(length));
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(ADMISSION) instanceof Admission admission) {
+            jobService.release(admission);
+        }
+    }
+}
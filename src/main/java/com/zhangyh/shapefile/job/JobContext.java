@@ -0,0 +1,95 @@
+package com.zhangyh.shapefile.job;
+
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 任务执行上下文：输入输出位置、进度上报、取消检查，以及受限的几何计算线程池
+ *
+ * @author zhangyh
+ */
+public class JobContext {
+
+    private final Job job;
+    private final ExecutorService cpuPool;
+    private final Semaphore cpuPermits;
+
+    JobContext(Job job, ExecutorService cpuPool, Semaphore cpuPermits) {
+        this.job = job;
+        this.cpuPool = cpuPool;
+        this.cpuPermits = cpuPermits;
+    }
+
+    /**
+     * 上传的输入文件
+     */
+    public Path getInput() {
+        return job.getInput();
+    }
+
+    /**
+     * 任务私有的工作目录，任务过期后整体删除
+     */
+    public Path getWorkDir() {
+        return job.getWorkDir();
+    }
+
+    /**
+     * 登记结果 Shapefile（.shp 路径），下载时连同边车文件打包为 zip
+     */
+    public void setResult(Path shpFile) {
+        job.setResult(shpFile);
+    }
+
+    /**
+     * 已被取消或线程被中断时抛出 {@link CancellationException}，扫描循环中每条记录调用一次
+     */
+    public void checkCancelled() {
+        if (job.isCancelRequested() || Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("任务已取消: " + job.getId());
+        }
+    }
+
+    public void addRecords(long n) {
+        job.addRecords(n);
+    }
+
+    public void setBytesProcessed(long bytes) {
+        job.setBytesProcessed(bytes);
+    }
+
+    public void setTotalBytes(long bytes) {
+        job.setTotalBytes(bytes);
+    }
+
+    /**
+     * 在几何计算线程池中执行 CPU 密集的工作并等待结果
+     * 池大小固定，排队数量由信号量限制，大量任务同时运行时会在这里排队而不是无限堆积。
+     */
+    public <T> T compute(Callable<T> work) throws Exception {
+        checkCancelled();
+        cpuPermits.acquire();
+        try {
+            Future<T> future = cpuPool.submit(work);
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                throw e;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception exception) {
+                    throw exception;
+                }
+                throw e;
+            }
+        } finally {
+            cpuPermits.release();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.zhangyh.shapefile.job;
+
+import com.zhangyh.shapefile.shapefile.stream.ZipShapefileWriter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 异步转换任务接口
+ * <pre>
+ * POST   /jobs/geojson-to-shapefile   上传 GeoJSON FeatureCollection，转换为 Shapefile
+ * POST   /jobs/buffer?distance=10     上传 Shapefile zip 包，做缓冲区分析
+ * GET    /jobs                        任务列表
+ * GET    /jobs/{id}                   任务状态与进度
+ * DELETE /jobs/{id}                   取消任务
+ * GET    /jobs/{id}/result            下载结果（zip）
+ * </pre>
+ * 提交接口返回 202，队列已满时返回 429，超过单个任务上传上限时返回 413；准入检查在读取上传数据之前完成。
+ *
+ * @author zhangyh
+ */
+@RestController
+@RequestMapping("/jobs")
+public class JobController {
+
+    private final JobService jobService;
+
+    public JobController(JobService jobService) {
+        this.jobService = jobService;
+    }
+
+    @PostMapping("/geojson-to-shapefile")
+    public ResponseEntity<Job> geoJsonToShapefile(@RequestAttribute(JobAdmissionInterceptor.ADMISSION) Admission admission,
+                                                  @RequestParam("file") MultipartFile file) throws IOException {
+        Job job = jobService.submit(admission, "geojson-to-shapefile", file, ConversionTasks.geoJsonToShapefile());
+        return ResponseEntity.accepted().body(job);
+    }
+
+    @PostMapping("/buffer")
+    public ResponseEntity<Job> buffer(@RequestAttribute(JobAdmissionInterceptor.ADMISSION) Admission admission,
+                                      @RequestParam("file") MultipartFile file,
+                                      @RequestParam("distance") double distance) throws IOException {
+        Job job = jobService.submit(admission, "buffer", file, ConversionTasks.bufferFeatures(distance));
+        return ResponseEntity.accepted().body(job);
+    }
+
+    @GetMapping
+    public List<Job> list() {
+        return jobService.list();
+    }
+
+    @GetMapping("/{id}")
+    public Job get(@PathVariable String id) {
+        return requireJob(jobService.get(id), id);
+    }
+
+    @DeleteMapping("/{id}")
+    public Job cancel(@PathVariable String id) {
+        return requireJob(jobService.cancel(id), id);
+    }
+
+    @GetMapping("/{id}/result")
+    public ResponseEntity<StreamingResponseBody> result(@PathVariable String id) {
+        Job job = requireJob(jobService.get(id), id);
+        if (!job.isResultAvailable()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "任务尚未成功完成: " + job.getStatus());
+        }
+        StreamingResponseBody body = out -> ZipShapefileWriter.zip(job.getResult(), out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + id + ".zip\"")
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .body(body);
+    }
+
+    private static Job requireJob(Job job, String id) {
+        if (job == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "任务不存在: " + id);
+        }
+        return job;
+    }
+}
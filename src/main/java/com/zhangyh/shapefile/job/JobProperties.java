@@ -0,0 +1,38 @@
+package com.zhangyh.shapefile.job;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * 异步转换任务配置，前缀 easy-shapefile.jobs
+ *
+ * @author zhangyh
+ */
+@Data
+@ConfigurationProperties(prefix = "easy-shapefile.jobs")
+public class JobProperties {
+
+    /** 排队 + 运行中的任务总数上限，超过后直接拒绝新任务 */
+    private int maxActiveJobs = 64;
+
+    /** 同时运行的任务数，其余任务在虚拟线程上排队等待 */
+    private int maxRunningJobs = 4;
+
+    /** 单个任务的上传字节数上限（按请求的 Content-Length 判断），应与 spring.servlet.multipart.max-request-size 一致 */
+    private long maxUploadBytes = 2L * 1024 * 1024 * 1024;
+
+    /** 排队 + 运行中任务的上传文件总字节数上限 */
+    private long maxPendingBytes = 8L * 1024 * 1024 * 1024;
+
+    /** 几何计算线程池大小，默认为 CPU 核数 */
+    private int cpuThreads = Runtime.getRuntime().availableProcessors();
+
+    /** 任务的上传文件和结果文件所在目录 */
+    private Path workDir = Path.of(System.getProperty("java.io.tmpdir"), "easy-shapefile-jobs");
+
+    /** 已结束任务及其结果文件的保留时间 */
+    private Duration retention = Duration.ofHours(1);
+}
@@ -0,0 +1,17 @@
+package com.zhangyh.shapefile.job;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * 任务队列已满或上传数据超过配额时抛出，返回 429 让客户端稍后重试
+ *
+ * @author zhangyh
+ */
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class JobRejectedException extends RuntimeException {
+
+    public JobRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,288 @@
+package com.zhangyh.shapefile.job;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * 异步转换任务子系统
+ * <ul>
+ *     <li>每个任务运行在独立的虚拟线程上（JDK 21+，低版本退化为普通线程），请求线程提交后立即返回</li>
+ *     <li>同时运行的任务数受限，其余任务排队；排队 + 运行的总数和上传字节数有上限，超出直接拒绝（429）</li>
+ *     <li>HTTP 上传在读取请求体之前按 Content-Length 预占名额和配额（见 {@link JobAdmissionInterceptor}），过载时不会先把上传数据落盘</li>
+ *     <li>几何计算提交到固定大小的 CPU 线程池，避免大量任务同时抢占 CPU</li>
+ *     <li>取消会设置标记并中断任务线程，扫描循环在下一条记录处退出</li>
+ * </ul>
+ *
+ * @author zhangyh
+ */
+@Service
+public class JobService implements DisposableBean {
+
+    private static final Logger LOGGER = Logger.getLogger(JobService.class.getName());
+
+    private final JobProperties properties;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final Semaphore activeSlots;
+    private final Semaphore runningSlots;
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final ExecutorService jobExecutor;
+    private final ExecutorService cpuPool;
+    private final Semaphore cpuPermits;
+
+    public JobService(JobProperties properties) throws IOException {
+        this.properties = properties;
+        this.activeSlots = new Semaphore(properties.getMaxActiveJobs());
+        this.runningSlots = new Semaphore(properties.getMaxRunningJobs());
+        this.jobExecutor = newVirtualThreadExecutor();
+        int cpuThreads = Math.max(1, properties.getCpuThreads());
+        this.cpuPool = new ThreadPoolExecutor(cpuThreads, cpuThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), namedDaemonThreads("shapefile-cpu-"));
+        this.cpuPermits = new Semaphore(cpuThreads * 2);
+        Files.createDirectories(properties.getWorkDir());
+    }
+
+    /**
+     * JDK 21+ 使用虚拟线程；项目以 Java 17 编译，因此通过反射获取
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.info("当前 JDK 不支持虚拟线程，任务使用普通线程执行");
+            return Executors.newCachedThreadPool(namedDaemonThreads("shapefile-job-"));
+        }
+    }
+
+    private static ThreadFactory namedDaemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 预占一个任务名额和 bytes 字节的上传配额
+     *
+     * @throws JobRejectedException 队列已满或上传数据超过配额
+     */
+    public Admission admit(long bytes) {
+        if (!activeSlots.tryAcquire()) {
+            throw new JobRejectedException("任务队列已满（" + properties.getMaxActiveJobs() + "），请稍后重试");
+        }
+        if (pendingBytes.addAndGet(bytes) > properties.getMaxPendingBytes()) {
+            pendingBytes.addAndGet(-bytes);
+            activeSlots.release();
+            throw new JobRejectedException("待处理数据量超过上限，请稍后重试");
+        }
+        return new Admission(bytes);
+    }
+
+    /**
+     * 归还没有转为任务的预占，已转为任务或已归还时什么也不做
+     */
+    public void release(Admission admission) {
+        if (admission.settle()) {
+            pendingBytes.addAndGet(-admission.getBytes());
+            activeSlots.release();
+        }
+    }
+
+    /**
+     * 提交任务：先按上传文件大小预占名额和配额，再保存上传文件
+     *
+     * @throws JobRejectedException 队列已满或上传数据超过配额
+     */
+    public Job submit(String type, MultipartFile upload, JobTask task) throws IOException {
+        return submit(admit(upload.getSize()), type, upload, task);
+    }
+
+    /**
+     * 用已预占的名额提交任务：保存上传文件后立即返回，任务在后台执行
+     */
+    public Job submit(Admission admission, String type, MultipartFile upload, JobTask task) throws IOException {
+        if (!admission.settle()) {
+            throw new IllegalStateException("预占已使用或已归还");
+        }
+        String id = UUID.randomUUID().toString();
+        Job job = new Job(id, type, upload.getSize(), admission.getBytes(), properties.getWorkDir().resolve(id));
+        try {
+            Files.createDirectories(job.getWorkDir());
+            String name = upload.getOriginalFilename();
+            String extension = name == null || name.lastIndexOf('.') < 0 ? "" : name.substring(name.lastIndexOf('.'));
+            Path input = job.getWorkDir().resolve("input" + extension);
+            upload.transferTo(input);
+            job.setInput(input);
+        } catch (IOException | RuntimeException e) {
+            release(job);
+            deleteRecursively(job.getWorkDir());
+            throw e;
+        }
+
+        jobs.put(id, job);
+        job.setFuture(jobExecutor.submit(() -> execute(job, task)));
+        return job;
+    }
+
+    /**
+     * 执行任务体；先归还名额再标记结束，状态变为已结束时名额和配额一定已经归还
+     */
+    private void execute(Job job, JobTask task) {
+        if (!job.claim()) {
+            // 排队期间已被取消，名额已由 cancel 归还
+            return;
+        }
+        try {
+            runningSlots.acquire();
+        } catch (InterruptedException e) {
+            release(job);
+            job.markFinished(JobStatus.CANCELLED, null);
+            return;
+        }
+        JobStatus status = JobStatus.CANCELLED;
+        String error = null;
+        try {
+            if (!job.isCancelRequested()) {
+                job.markRunning();
+                task.run(new JobContext(job, cpuPool, cpuPermits));
+                status = JobStatus.SUCCEEDED;
+            }
+        } catch (CancellationException | InterruptedException | ClosedByInterruptException e) {
+            status = JobStatus.CANCELLED;
+        } catch (Exception e) {
+            if (!job.isCancelRequested()) {
+                LOGGER.log(Level.WARNING, "任务执行失败: " + job.getId(), e);
+                status = JobStatus.FAILED;
+                error = e.getMessage();
+            }
+        } finally {
+            runningSlots.release();
+            release(job);
+            job.markFinished(status, error);
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * 归还名额和配额，并删除已不再需要的上传文件
+     */
+    private void release(Job job) {
+        pendingBytes.addAndGet(-job.getReservedBytes());
+        activeSlots.release();
+        Path input = job.getInput();
+        if (input != null) {
+            try {
+                Files.deleteIfExists(input);
+            } catch (IOException e) {
+                LOGGER.warning("删除上传文件失败: " + input);
+            }
+        }
+    }
+
+    public Job get(String id) {
+        return jobs.get(id);
+    }
+
+    public List<Job> list() {
+        Collection<Job> values = jobs.values();
+        List<Job> result = new ArrayList<>(values);
+        result.sort(Comparator.comparing(Job::getCreatedAt));
+        return result;
+    }
+
+    /**
+     * 取消任务；尚未开始执行的任务直接结束并归还名额，运行中（含等待运行名额）的任务在下一条记录处停止
+     * 未开始执行的 FutureTask 被取消后不会再调用任务体，所以名额和上传文件必须在这里归还。
+     *
+     * @return 任务不存在时返回 null
+     */
+    public Job cancel(String id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            return null;
+        }
+        if (!job.getStatus().isFinished()) {
+            job.requestCancel();
+            Future<?> future = job.getFuture();
+            if (job.claim()) {
+                release(job);
+                job.markFinished(JobStatus.CANCELLED, null);
+                if (future != null) {
+                    future.cancel(false);
+                }
+            } else if (future != null) {
+                future.cancel(true);
+            }
+        }
+        return job;
+    }
+
+    /**
+     * 定期清理超过保留时间的已结束任务
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictExpired() {
+        Instant deadline = Instant.now().minus(properties.getRetention());
+        for (Job job : jobs.values()) {
+            if (job.getStatus().isFinished() && job.getFinishedAt() != null && job.getFinishedAt().isBefore(deadline)) {
+                jobs.remove(job.getId());
+                deleteRecursively(job.getWorkDir());
+            }
+        }
+    }
+
+    private static void deleteRecursively(Path dir) {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.warning("删除任务目录失败: " + dir);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        jobs.values().forEach(Job::requestCancel);
+        jobExecutor.shutdownNow();
+        cpuPool.shutdownNow();
+    }
+}
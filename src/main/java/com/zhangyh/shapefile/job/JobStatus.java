@@ -0,0 +1,19 @@
+package com.zhangyh.shapefile.job;
+
+/**
+ * 任务状态
+ *
+ * @author zhangyh
+ */
+public enum JobStatus {
+    /** 已接收，等待运行名额 */
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED,
+    CANCELLED;
+
+    public boolean isFinished() {
+        return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+    }
+}
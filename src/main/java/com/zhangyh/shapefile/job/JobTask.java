@@ -0,0 +1,13 @@
+package com.zhangyh.shapefile.job;
+
+/**
+ * 任务体，在虚拟线程上执行
+ * 实现需要在处理每条记录时调用 {@link JobContext#checkCancelled()}，保证取消能及时生效。
+ *
+ * @author zhangyh
+ */
+@FunctionalInterface
+public interface JobTask {
+
+    void run(JobContext context) throws Exception;
+}
@@ -0,0 +1,27 @@
+package com.zhangyh.shapefile.job;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * 为任务上传接口注册准入拦截器
+ *
+ * @author zhangyh
+ */
+@Configuration
+public class JobWebConfig implements WebMvcConfigurer {
+
+    private final JobService jobService;
+    private final JobProperties properties;
+
+    public JobWebConfig(JobService jobService, JobProperties properties) {
+        this.jobService = jobService;
+        this.properties = properties;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new JobAdmissionInterceptor(jobService, properties)).addPathPatterns("/jobs/**");
+    }
+}
@@ -1,5 +1,9 @@
 package com.zhangyh.shapefile.shapefile;
 
+import com.zhangyh.shapefile.shapefile.stream.ShapefileRecord;
+import com.zhangyh.shapefile.shapefile.stream.ShapefileStreamReader;
+import com.zhangyh.shapefile.shapefile.stream.ZipShapefileReader;
+import com.zhangyh.shapefile.shapefile.stream.ZipShapefileWriter;
 import org.geotools.api.data.*;
 import org.geotools.api.feature.simple.SimpleFeature;
 import org.geotools.api.feature.simple.SimpleFeatureType;
@@ -20,6 +24,8 @@ import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
@@ -71,6 +77,11 @@ public class ShapeFileOperator {
             File outputShapefile = new File("geojson_output.shp");
             geoJsonToShapefile(geoJson, outputShapefile);
 
+            // 6. 直接输出 Shapefile 压缩包 (不在磁盘上生成 .shp/.dbf)
+            try (OutputStream out = new FileOutputStream("geojson_output.zip")) {
+                geoJsonToShapefile(geoJson, "geojson_output", out);
+            }
+
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -130,29 +141,8 @@ public class ShapeFileOperator {
     public static void createPointShapefile(File file) throws Exception {
         System.out.println("========== 创建 Shapefile: " + file.getName() + " ==========");
 
-        // 定义 Schema: "the_geom:Point:srid=4326,name:String,id:Integer"
-        // srid=4326 代表 WGS84 经纬度坐标系
-        final SimpleFeatureType TYPE = DataUtilities.createType("Location",
-                "the_geom:Point:srid=4326," + // 几何字段，必须存在
-                        "name:String," +              // 字符串属性
-                        "number:Integer"              // 整数属性
-        );
-
-        // 创建要素集合
-        List<SimpleFeature> features = new ArrayList<>();
-        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(TYPE);
-
-        // 添加第一个点
-        builder.add(geometryFactory.createPoint(new Coordinate(116.397, 39.908))); // 北京
-        builder.add("Beijing");
-        builder.add(1);
-        features.add(builder.buildFeature(null));
-
-        // 添加第二个点
-        builder.add(geometryFactory.createPoint(new Coordinate(121.473, 31.230))); // 上海
-        builder.add("Shanghai");
-        builder.add(2);
-        features.add(builder.buildFeature(null));
+        final SimpleFeatureType TYPE = pointType();
+        List<SimpleFeature> features = pointFeatures(TYPE);
 
         // 创建 Shapefile DataStore
         ShapefileDataStoreFactory dataStoreFactory = new ShapefileDataStoreFactory();
@@ -190,6 +180,53 @@ public class ShapeFileOperator {
         System.out.println("========== 创建结束 ==========\n");
     }
 
+    /**
+     * 2.1 创建点图层并直接写成 .zip 输出流
+     * 原理：与 createPointShapefile 使用相同的 Schema 和要素，但交给 ZipShapefileWriter 写出，
+     * 适合直接作为下载内容返回，不需要先在磁盘上生成 Shapefile 再打包。
+     */
+    public static void createPointShapefile(OutputStream out) throws Exception {
+        System.out.println("========== 创建 Shapefile 压缩包 ==========");
+
+        SimpleFeatureType type = pointType();
+        try (ZipShapefileWriter writer = new ZipShapefileWriter(out, type.getTypeName(), type)) {
+            for (SimpleFeature feature : pointFeatures(type)) {
+                writer.write(feature);
+            }
+            System.out.println("成功写入 " + writer.getRecordCount() + " 个要素。");
+        }
+        System.out.println("========== 创建结束 ==========\n");
+    }
+
+    private static SimpleFeatureType pointType() throws Exception {
+        // 定义 Schema: "the_geom:Point:srid=4326,name:String,id:Integer"
+        // srid=4326 代表 WGS84 经纬度坐标系
+        return DataUtilities.createType("Location",
+                "the_geom:Point:srid=4326," + // 几何字段，必须存在
+                        "name:String," +              // 字符串属性
+                        "number:Integer"              // 整数属性
+        );
+    }
+
+    private static List<SimpleFeature> pointFeatures(SimpleFeatureType type) {
+        // 创建要素集合
+        List<SimpleFeature> features = new ArrayList<>();
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+
+        // 添加第一个点
+        builder.add(geometryFactory.createPoint(new Coordinate(116.397, 39.908))); // 北京
+        builder.add("Beijing");
+        builder.add(1);
+        features.add(builder.buildFeature(null));
+
+        // 添加第二个点
+        builder.add(geometryFactory.createPoint(new Coordinate(121.473, 31.230))); // 上海
+        builder.add("Shanghai");
+        builder.add(2);
+        features.add(builder.buildFeature(null));
+        return features;
+    }
+
     /**
      * 3. 过滤查询
      * 原理：使用 CQL (Common Query Language) 构建过滤器，筛选符合条件的要素。
@@ -288,17 +325,6 @@ public class ShapeFileOperator {
     public static void geoJsonToShapefile(String geoJsonContent, File outputFile) throws Exception {
         System.out.println("========== GeoJSON 转 Shapefile ==========");
         
-        // 1. 解析 GeoJSON
-        FeatureJSON featureJSON = new FeatureJSON();
-        // 尝试读取为单个 Feature (如果是 FeatureCollection，需要用 readFeatureCollection)
-        SimpleFeature geoJsonFeature = featureJSON.readFeature(new StringReader(geoJsonContent));
-        SimpleFeatureType geoJsonType = geoJsonFeature.getType();
-
-        // 2. 构建 Shapefile 的 Schema (SimpleFeatureType)
-        // Shapefile 的字段名限制为 10 个字符，且几何字段必须明确
-        SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
-        typeBuilder.setName(outputFile.getName().replace(".shp", ""));
-        
         // 准备 CRS
         org.geotools.api.referencing.crs.CoordinateReferenceSystem crs = org.geotools.referencing.crs.DefaultGeographicCRS.WGS84;
         try {
@@ -309,6 +335,109 @@ public class ShapeFileOperator {
         } catch (Exception e) {
             LOGGER.warning("CRS 解码失败，使用默认 WGS84");
         }
+        SimpleFeature feature = toShapefileFeature(geoJsonContent, outputFile.getName().replace(".shp", ""), crs);
+        SimpleFeatureType shpType = feature.getFeatureType();
+        List<SimpleFeature> features = List.of(feature);
+
+        // 4. 写入 Shapefile
+        ShapefileDataStoreFactory dataStoreFactory = new ShapefileDataStoreFactory();
+        Map<String, Serializable> params = new HashMap<>();
+        params.put("url", outputFile.toURI().toURL());
+        params.put("create spatial index", Boolean.TRUE);
+
+        ShapefileDataStore shpStore = (ShapefileDataStore) dataStoreFactory.createNewDataStore(params);
+        shpStore.setCharset(StandardCharsets.UTF_8);
+        
+        shpStore.createSchema(shpType);
+        // 强制 DataStore 写入 .prj 文件
+        // 为了避免轴序问题 (Lat,Lon vs Lon,Lat)，我们显式使用强制 Longitude-First 的 WGS84
+        try {
+             // 使用 CRS.decode("EPSG:4326", true) 的 true 参数强制 longitude first (x,y)
+             org.geotools.api.referencing.crs.CoordinateReferenceSystem lonLatCrs = org.geotools.referencing.CRS.decode("EPSG:4326", true);
+             shpStore.forceSchemaCRS(lonLatCrs);
+        } catch (Exception e) {
+             shpStore.forceSchemaCRS(crs);
+        }
+        
+        // 强制更新 Bounds (边界框)
+        // 这一步非常关键！如果不手动更新 Bounds，GeoTools 可能无法正确计算新创建的 Shapefile 的空间范围，
+        // 导致在打开文件（如 JMapFrame.showMap）时出现 NullPointerException: Cannot read field "minx" because "env" is null
+        // 或者在读取时无法正确获取空间索引。
+        // 参考：GeoTools 官方 FAQ 或类似问题。虽然 createSchema 应该处理，但在某些版本或用法下，显式写入数据后最好刷新。
+        // 实际上，正确的方法是在写入数据后，ShapefileDataStore 会自动处理。
+        // 但如果遇到 Bounds 为空的问题，可能是因为 Feature 自身的 Geometry 没有正确计算 Envelope，或者 DataStore 缓存问题。
+        // 下面的代码确保在写入数据前，强制重新计算一次 Feature 的 Geometry 的边界。
+        
+        Transaction transaction = new DefaultTransaction("geojson_to_shp");
+        SimpleFeatureStore featureStore = (SimpleFeatureStore) shpStore.getFeatureSource(shpStore.getTypeNames()[0]);
+        featureStore.setTransaction(transaction);
+        
+        try {
+            featureStore.addFeatures(DataUtilities.collection(features));
+            transaction.commit();
+            System.out.println("转换成功，文件已生成: " + outputFile.getAbsolutePath());
+        } catch (Exception e) {
+            transaction.rollback();
+            e.printStackTrace();
+        } finally {
+            transaction.close();
+            shpStore.dispose();
+        }
+
+        // 5. 验证文件是否生成成功，并尝试读取一次（确保 Bounds 正常）
+        if (outputFile.exists()) {
+            try {
+                ShapefileDataStore checkStore = new ShapefileDataStore(outputFile.toURI().toURL());
+                SimpleFeatureSource source = checkStore.getFeatureSource();
+                // 这一步是关键：尝试获取 Bounds，如果之前没写入成功或者索引有问题，这里可能会报错或返回空
+                // 某些情况下，GeoTools 的 ShapefileDataStore 需要重新加载才能正确计算 Bounds
+                // 如果这里不报错，说明文件是完好的
+                System.out.println("验证 Bounds: " + source.getBounds()); 
+                checkStore.dispose();
+            } catch (Exception e) {
+                System.err.println("验证文件时发生错误: " + e.getMessage());
+            }
+        }
+        System.out.println("========== 转换结束 ==========\n");
+    }
+
+    /**
+     * 5.1 GeoJSON 转 Shapefile 压缩包
+     * 原理：转换逻辑与 geoJsonToShapefile 相同，写出交给 ZipShapefileWriter，结果直接是 .zip 输出流。
+     * .prj 使用强制经度在前的 EPSG:4326，避免轴序问题。
+     */
+    public static void geoJsonToShapefile(String geoJsonContent, String layerName, OutputStream out) throws Exception {
+        System.out.println("========== GeoJSON 转 Shapefile 压缩包 ==========");
+
+        org.geotools.api.referencing.crs.CoordinateReferenceSystem crs = org.geotools.referencing.crs.DefaultGeographicCRS.WGS84;
+        try {
+            crs = org.geotools.referencing.CRS.decode("EPSG:4326", true);
+        } catch (Exception e) {
+            LOGGER.warning("CRS 解码失败，使用默认 WGS84");
+        }
+        SimpleFeature feature = toShapefileFeature(geoJsonContent, layerName, crs);
+        try (ZipShapefileWriter writer = new ZipShapefileWriter(out, layerName, feature.getFeatureType())) {
+            writer.write(feature);
+        }
+        System.out.println("========== 转换结束 ==========\n");
+    }
+
+    /**
+     * 把 GeoJSON Feature 转成适配 Shapefile 规范的要素：几何字段为 the_geom，属性名截断到 10 个字符
+     */
+    private static SimpleFeature toShapefileFeature(String geoJsonContent, String layerName,
+                                                    org.geotools.api.referencing.crs.CoordinateReferenceSystem crs) throws Exception {
+        // 1. 解析 GeoJSON
+        FeatureJSON featureJSON = new FeatureJSON();
+        // 尝试读取为单个 Feature (如果是 FeatureCollection，需要用 readFeatureCollection)
+        SimpleFeature geoJsonFeature = featureJSON.readFeature(new StringReader(geoJsonContent));
+        SimpleFeatureType geoJsonType = geoJsonFeature.getType();
+
+        // 2. 构建 Shapefile 的 Schema (SimpleFeatureType)
+        // Shapefile 的字段名限制为 10 个字符，且几何字段必须明确
+        SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+        typeBuilder.setName(layerName);
+        
         typeBuilder.setCRS(crs); // 设置默认 CRS
 
         // 添加几何字段 (强制使用 "the_geom" 和正确的类型与 CRS)
@@ -330,7 +459,6 @@ public class ShapeFileOperator {
 
         // 3. 转换 Feature 数据
         SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(shpType);
-        List<SimpleFeature> features = new ArrayList<>();
         
         // 填充数据
         // 注意：GeoJSON 标准是 (经度, 纬度) -> (x, y)，但有时候数据源可能弄反
@@ -374,67 +502,38 @@ public class ShapeFileOperator {
             }
             featureBuilder.set(shpName, value);
         }
-        features.add(featureBuilder.buildFeature(null));
+        return featureBuilder.buildFeature(null);
+    }
 
-        // 4. 写入 Shapefile
-        ShapefileDataStoreFactory dataStoreFactory = new ShapefileDataStoreFactory();
-        Map<String, Serializable> params = new HashMap<>();
-        params.put("url", outputFile.toURI().toURL());
-        params.put("create spatial index", Boolean.TRUE);
+    /**
+     * 6. 压缩包直接读写 (Zip Shapefile)
+     * 原理：上传/下载的 Shapefile 通常是 .zip 包。ZipShapefileReader 直接从压缩包条目中流式读取记录，
+     * ZipShapefileWriter 把结果直接写成 zip 输出流，整个过程不需要解压或落盘。
+     * 这里以缓冲区分析为例：读取 zip 中的要素，做 buffer 后写回 zip。
+     */
+    public static void bufferZipShapefile(File inputZip, double distance, OutputStream out) throws Exception {
+        System.out.println("========== 压缩包缓冲区分析 (距离: " + distance + ") ==========");
 
-        ShapefileDataStore shpStore = (ShapefileDataStore) dataStoreFactory.createNewDataStore(params);
-        shpStore.setCharset(StandardCharsets.UTF_8);
-        
-        shpStore.createSchema(shpType);
-        // 强制 DataStore 写入 .prj 文件
-        // 为了避免轴序问题 (Lat,Lon vs Lon,Lat)，我们显式使用强制 Longitude-First 的 WGS84
-        try {
-             // 使用 CRS.decode("EPSG:4326", true) 的 true 参数强制 longitude first (x,y)
-             org.geotools.api.referencing.crs.CoordinateReferenceSystem lonLatCrs = org.geotools.referencing.CRS.decode("EPSG:4326", true);
-             shpStore.forceSchemaCRS(lonLatCrs);
-        } catch (Exception e) {
-             shpStore.forceSchemaCRS(crs);
-        }
-        
-        // 强制更新 Bounds (边界框)
-        // 这一步非常关键！如果不手动更新 Bounds，GeoTools 可能无法正确计算新创建的 Shapefile 的空间范围，
-        // 导致在打开文件（如 JMapFrame.showMap）时出现 NullPointerException: Cannot read field "minx" because "env" is null
-        // 或者在读取时无法正确获取空间索引。
-        // 参考：GeoTools 官方 FAQ 或类似问题。虽然 createSchema 应该处理，但在某些版本或用法下，显式写入数据后最好刷新。
-        // 实际上，正确的方法是在写入数据后，ShapefileDataStore 会自动处理。
-        // 但如果遇到 Bounds 为空的问题，可能是因为 Feature 自身的 Geometry 没有正确计算 Envelope，或者 DataStore 缓存问题。
-        // 下面的代码确保在写入数据前，强制重新计算一次 Feature 的 Geometry 的边界。
-        
-        Transaction transaction = new DefaultTransaction("geojson_to_shp");
-        SimpleFeatureStore featureStore = (SimpleFeatureStore) shpStore.getFeatureSource(shpStore.getTypeNames()[0]);
-        featureStore.setTransaction(transaction);
-        
-        try {
-            featureStore.addFeatures(DataUtilities.collection(features));
-            transaction.commit();
-            System.out.println("转换成功，文件已生成: " + outputFile.getAbsolutePath());
-        } catch (Exception e) {
-            transaction.rollback();
-            e.printStackTrace();
-        } finally {
-            transaction.close();
-            shpStore.dispose();
-        }
+        SimpleFeatureType outputSchema = DataUtilities.createType("Buffer",
+                "the_geom:Polygon:srid=4326," +
+                        "original_name:String"
+        );
 
-        // 5. 验证文件是否生成成功，并尝试读取一次（确保 Bounds 正常）
-        if (outputFile.exists()) {
-            try {
-                ShapefileDataStore checkStore = new ShapefileDataStore(outputFile.toURI().toURL());
-                SimpleFeatureSource source = checkStore.getFeatureSource();
-                // 这一步是关键：尝试获取 Bounds，如果之前没写入成功或者索引有问题，这里可能会报错或返回空
-                // 某些情况下，GeoTools 的 ShapefileDataStore 需要重新加载才能正确计算 Bounds
-                // 如果这里不报错，说明文件是完好的
-                System.out.println("验证 Bounds: " + source.getBounds()); 
-                checkStore.dispose();
-            } catch (Exception e) {
-                System.err.println("验证文件时发生错误: " + e.getMessage());
+        try (ZipShapefileReader zip = new ZipShapefileReader(inputZip.toPath());
+             ShapefileStreamReader reader = zip.open();
+             ZipShapefileWriter writer = new ZipShapefileWriter(out, "buffered_result", outputSchema)) {
+            while (reader.hasNext()) {
+                ShapefileRecord record = reader.next();
+                if (record.isDeleted()) {
+                    continue; // .dbf 中已标记删除的记录
+                }
+                Geometry geom = record.getGeometry();
+                Object name = record.getAttribute("name");
+                writer.write(geom == null ? null : geom.buffer(distance),
+                        new Object[]{name == null ? null : name.toString()});
             }
+            System.out.println("缓冲区生成成功，要素数量: " + writer.getRecordCount());
         }
-        System.out.println("========== 转换结束 ==========\n");
+        System.out.println("========== 分析结束 ==========\n");
     }
 }
@@ -0,0 +1,655 @@
+package com.zhangyh.shapefile.shapefile.coverage;
+
+import com.zhangyh.shapefile.shapefile.coverage.CoverageResult.ZoneCoverage;
+import com.zhangyh.shapefile.shapefile.stream.ShapefileRecord;
+import com.zhangyh.shapefile.shapefile.stream.ShapefileStreamReader;
+import org.geotools.api.referencing.FactoryException;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.api.referencing.crs.GeographicCRS;
+import org.geotools.api.referencing.operation.MathTransform;
+import org.geotools.api.referencing.operation.NoninvertibleTransformException;
+import org.geotools.api.referencing.operation.TransformException;
+import org.geotools.geometry.jts.JTS;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.operation.buffer.BufferOp;
+import org.locationtech.jts.operation.buffer.BufferParameters;
+import org.locationtech.jts.operation.overlayng.OverlayNG;
+import org.locationtech.jts.operation.overlayng.OverlayNGRobust;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 作业覆盖分析：由作业轨迹线和机具幅宽计算地块内的已作业、漏喷、重喷面积
+ * 原理：
+ * 1. 经纬度数据先投影到地块中心所在的 UTM 带，幅宽按米计算。多个地块（{@link #loadFields}）共用一次轨迹缓冲，
+ * 统计按地块分别输出，地块之间不合并。
+ * 2. 每条轨迹先按形状切成若干“趟”（见 {@link #splitPasses}），一趟内的自重叠（弯道内侧等）不算重喷，不同趟之间的重叠才算。
+ * 记录在线程池中并行做平头缓冲（与 ShapeFileOperator.bufferFeatures 相同的 buffer，只是端点为平头）；
+ * 长的一趟按 {@value #CHUNK_VERTICES} 个顶点分段缓冲，相邻分段重叠一条线段后合并，与整趟一次缓冲的结果相同。
+ * 相邻两趟同样重叠一条线段以补上转折处外侧的圆角，后一趟扣掉这条线段的作业带，衔接处既不漏也不算重喷，
+ * 统计结果与分段大小无关。
+ * 3. 作业带按地块范围切成边长 tileSize 的瓦片，落入各瓦片后增量合并（见 {@link CoverageTile}），
+ * 不做全局的“全部缓冲再整体合并”。
+ * 4. 逐瓦片与地块边界、各 ZONE 求交得到统计，再合并输出。地块和 ZONE 使用 PreparedGeometry，完全包含的瓦片不做求交。
+ *
+ * @author zhangyh
+ */
+public class CoverageEngine {
+
+    private static final int CHUNK_VERTICES = 256;
+    private static final int RECORD_BATCH = 64;
+
+    private final double width;
+    private String widthField;
+    private double tileSize = 250;
+    private int mergeBatch = 64;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * @param width 机具幅宽（米）
+     */
+    public CoverageEngine(double width) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("幅宽必须大于 0: " + width);
+        }
+        this.width = width;
+    }
+
+    /**
+     * 轨迹图层中的幅宽字段（米），有值时优先于构造参数
+     */
+    public CoverageEngine widthField(String widthField) {
+        this.widthField = widthField;
+        return this;
+    }
+
+    /**
+     * 瓦片边长（米）
+     */
+    public CoverageEngine tileSize(double tileSize) {
+        this.tileSize = tileSize;
+        return this;
+    }
+
+    /**
+     * 每个瓦片攒多少条作业带合并一次
+     */
+    public CoverageEngine mergeBatch(int mergeBatch) {
+        this.mergeBatch = Math.max(1, mergeBatch);
+        return this;
+    }
+
+    public CoverageEngine parallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * 读取只包含一个地块的边界图层，全部面（同一地块的各部分）合并为一个几何
+     * 图层包含多个地块时使用 {@link #loadFields}，否则各地块会被当成一个地块统计。
+     */
+    public static Geometry loadBoundary(Path shpFile) throws IOException {
+        List<Geometry> polygons = new ArrayList<>();
+        try (ShapefileStreamReader reader = ShapefileStreamReader.open(shpFile)) {
+            while (reader.hasNext()) {
+                Geometry geometry = reader.next().getGeometry();
+                if (geometry != null && geometry.getDimension() == 2) {
+                    polygons.add(geometry);
+                }
+            }
+        }
+        return OverlayNGRobust.union(polygons);
+    }
+
+    /**
+     * 读取包含多个地块的边界图层，按地块 ID 字段合并几何，交给 {@link #computeFields} 分地块统计
+     */
+    public static Map<String, Geometry> loadFields(Path shpFile, String idField) throws IOException {
+        return loadGrouped(shpFile, idField);
+    }
+
+    /**
+     * 读取处方图，按 ZONE 字段合并几何
+     */
+    public static Map<String, Geometry> loadZones(Path shpFile, String zoneField) throws IOException {
+        return loadGrouped(shpFile, zoneField);
+    }
+
+    private static Map<String, Geometry> loadGrouped(Path shpFile, String keyField) throws IOException {
+        Map<String, List<Geometry>> parts = new LinkedHashMap<>();
+        try (ShapefileStreamReader reader = ShapefileStreamReader.open(shpFile)) {
+            while (reader.hasNext()) {
+                ShapefileRecord record = reader.next();
+                Geometry geometry = record.getGeometry();
+                if (geometry != null && geometry.getDimension() == 2) {
+                    Object key = record.getAttribute(keyField);
+                    parts.computeIfAbsent(key == null ? "" : key.toString().trim(), k -> new ArrayList<>()).add(geometry);
+                }
+            }
+        }
+        Map<String, Geometry> groups = new LinkedHashMap<>();
+        parts.forEach((key, geometries) -> groups.put(key, OverlayNGRobust.union(geometries)));
+        return groups;
+    }
+
+    public CoverageResult compute(Path tracksShp, Geometry field, Map<String, Geometry> zones) throws IOException {
+        try (ShapefileStreamReader reader = ShapefileStreamReader.open(tracksShp)) {
+            return compute(reader, field, zones);
+        }
+    }
+
+    /**
+     * @param tracks 作业轨迹（线）图层，不关闭
+     * @param field  地块边界，坐标系与轨迹相同
+     * @param zones  处方 ZONE 几何，可为空
+     */
+    public CoverageResult compute(ShapefileStreamReader tracks, Geometry field, Map<String, Geometry> zones) throws IOException {
+        return computeFields(tracks, Map.of("", field), zones).get("");
+    }
+
+    public Map<String, CoverageResult> computeFields(Path tracksShp, Map<String, Geometry> fields,
+                                                     Map<String, Geometry> zones) throws IOException {
+        try (ShapefileStreamReader reader = ShapefileStreamReader.open(tracksShp)) {
+            return computeFields(reader, fields, zones);
+        }
+    }
+
+    /**
+     * 一次读取轨迹，分地块统计；每个地块的结果只包含与它相交的 ZONE，段数为整个轨迹图层的段数
+     *
+     * @param tracks 作业轨迹（线）图层，不关闭
+     * @param fields 地块 ID → 地块边界（见 {@link #loadFields}），坐标系与轨迹相同
+     * @param zones  处方 ZONE 几何，可为空
+     * @return 地块 ID → 该地块的覆盖结果，顺序与 fields 相同
+     */
+    public Map<String, CoverageResult> computeFields(ShapefileStreamReader tracks, Map<String, Geometry> fields,
+                                                     Map<String, Geometry> zones) throws IOException {
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("没有地块");
+        }
+        GeometryFactory factory = fields.values().iterator().next().getFactory();
+        Projection projection = Projection.of(tracks.getCrs(), factory.buildGeometry(fields.values()));
+        Map<String, Geometry> workFields = new LinkedHashMap<>();
+        Envelope extent = new Envelope();
+        for (Map.Entry<String, Geometry> field : fields.entrySet()) {
+            Geometry workField = projection.forward(field.getValue());
+            workFields.put(field.getKey(), workField);
+            extent.expandToInclude(workField.getEnvelopeInternal());
+        }
+        Map<String, Geometry> workZones = new TreeMap<>();
+        if (zones != null) {
+            for (Map.Entry<String, Geometry> zone : zones.entrySet()) {
+                workZones.put(zone.getKey(), projection.forward(zone.getValue()));
+            }
+        }
+        TileGrid grid = new TileGrid(extent, tileSize, factory, mergeBatch);
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            long segments = bufferTracks(tracks, projection, grid, executor);
+            Map<String, CoverageResult> results = new LinkedHashMap<>();
+            for (Map.Entry<String, Geometry> field : workFields.entrySet()) {
+                results.put(field.getKey(), summarize(grid, field.getValue(), workZones, projection,
+                        tracks.getCrs(), segments, executor));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 阶段一：读取线程分批提交轨迹，线程池并行缓冲并写入瓦片；信号量限制在途批次，内存占用有上限
+     */
+    private long bufferTracks(ShapefileStreamReader tracks, Projection projection, TileGrid grid,
+                              ExecutorService executor) throws IOException {
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicLong segments = new AtomicLong();
+        Envelope reach = new Envelope(grid.bounds);
+        List<ShapefileRecord> batch = new ArrayList<>(RECORD_BATCH);
+        try {
+            while (tracks.hasNext() && failure.get() == null) {
+                batch.add(tracks.next());
+                if (batch.size() < RECORD_BATCH && tracks.hasNext()) {
+                    continue;
+                }
+                List<ShapefileRecord> records = batch;
+                batch = new ArrayList<>(RECORD_BATCH);
+                inFlight.acquire();
+                executor.execute(() -> {
+                    try {
+                        for (ShapefileRecord record : records) {
+                            segments.addAndGet(bufferRecord(record, projection, grid, reach));
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            inFlight.acquire(parallelism * 2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("覆盖分析被中断", e);
+        }
+        Throwable error = failure.get();
+        if (error instanceof IOException io) {
+            throw io;
+        }
+        if (error instanceof RuntimeException runtime) {
+            throw runtime;
+        }
+        if (error != null) {
+            throw new IOException(error);
+        }
+        return segments.get();
+    }
+
+    private int bufferRecord(ShapefileRecord record, Projection projection, TileGrid grid, Envelope reach) {
+        Geometry geometry = record.getGeometry();
+        if (geometry == null || geometry.getDimension() != 1) {
+            return 0;
+        }
+        double swathWidth = width;
+        if (widthField != null && record.getAttribute(widthField) instanceof Number number && number.doubleValue() > 0) {
+            swathWidth = number.doubleValue();
+        }
+        Geometry line = projection.forward(geometry);
+        int segments = 0;
+        for (int i = 0; i < line.getNumGeometries(); i++) {
+            LineString part = (LineString) line.getGeometryN(i);
+            Coordinate[] coordinates = part.getCoordinates();
+            if (coordinates.length < 2) {
+                continue;
+            }
+            segments += coordinates.length - 1;
+            int[] passes = splitPasses(coordinates, swathWidth);
+            for (int pass = 0; pass + 1 < passes.length; pass++) {
+                int from = passes[pass];
+                int to = passes[pass + 1];
+                if (from == 0) {
+                    addSwath(bufferPass(part.getFactory(), coordinates, 0, to, swathWidth, reach), grid);
+                    continue;
+                }
+                // 从前一个顶点开始缓冲，补上转折处外侧的圆角；重叠的这条线段已算在前一趟里，从本趟扣掉
+                int joint = previousDistinct(coordinates, from);
+                Geometry swath = bufferPass(part.getFactory(), coordinates, joint, to, swathWidth, reach);
+                if (swath != null) {
+                    Geometry overlap = buffer(part.getFactory().createLineString(
+                            new Coordinate[]{coordinates[joint], coordinates[from]}), swathWidth / 2);
+                    addSwath(OverlayNGRobust.overlay(swath, overlap, OverlayNG.DIFFERENCE), grid);
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * 把轨迹切成若干趟，切分只取决于轨迹形状
+     * 以趟起点到第一个距离达到幅宽的顶点为前进方向，之后的顶点沿前进方向比最远处后退了一个幅宽以上时，
+     * 说明轨迹已经折返、可能压到本趟走过的地方，在前进最远的顶点处切开。
+     * 幅宽以内的原地抖动不会触发切分；转过 90° 以上的弯道会被切开，但相邻两趟的衔接处不算重喷。
+     *
+     * @return 每趟起点的顶点下标，末尾附加最后一个顶点的下标
+     */
+    private static int[] splitPasses(Coordinate[] coordinates, double width) {
+        List<Integer> breaks = new ArrayList<>();
+        breaks.add(0);
+        int start = 0;
+        int apex = 0;
+        boolean directed = false;
+        double directionX = 0;
+        double directionY = 0;
+        double furthest = 0;
+        for (int i = 1; i < coordinates.length; i++) {
+            double dx = coordinates[i].x - coordinates[start].x;
+            double dy = coordinates[i].y - coordinates[start].y;
+            if (!directed) {
+                double distance = Math.hypot(dx, dy);
+                if (distance >= width) {
+                    directed = true;
+                    directionX = dx / distance;
+                    directionY = dy / distance;
+                    furthest = distance;
+                    apex = i;
+                }
+                continue;
+            }
+            double progress = dx * directionX + dy * directionY;
+            if (progress >= furthest) {
+                furthest = progress;
+                apex = i;
+            } else if (furthest - progress >= width) {
+                breaks.add(apex);
+                start = apex;
+                i = apex;
+                directed = false;
+            }
+        }
+        breaks.add(coordinates.length - 1);
+        return breaks.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * 缓冲一趟轨迹 [from, to]：超过 {@value #CHUNK_VERTICES} 个顶点时分段缓冲，相邻分段重叠一条线段后合并
+     *
+     * @return 与计算范围不相交时返回 null
+     */
+    private static Geometry bufferPass(GeometryFactory factory, Coordinate[] coordinates, int from, int to,
+                                       double swathWidth, Envelope reach) {
+        List<Geometry> chunks = new ArrayList<>();
+        int start = from;
+        while (true) {
+            int end = Math.min(to, start + CHUNK_VERTICES - 1);
+            LineString chunk = factory.createLineString(Arrays.copyOfRange(coordinates, start, end + 1));
+            Envelope envelope = new Envelope(chunk.getEnvelopeInternal());
+            envelope.expandBy(swathWidth);
+            if (envelope.intersects(reach)) {
+                chunks.add(buffer(chunk, swathWidth / 2));
+            }
+            if (end == to) {
+                break;
+            }
+            // 下一段从末端的前一个（不重合的）顶点开始，保证末端顶点处的圆角不缺
+            start = Math.max(start + 1, previousDistinct(coordinates, end));
+        }
+        if (chunks.isEmpty()) {
+            return null;
+        }
+        return chunks.size() == 1 ? chunks.get(0) : OverlayNGRobust.union(chunks);
+    }
+
+    /**
+     * index 之前最后一个与它不重合的顶点，保证重叠的线段长度不为 0
+     */
+    private static int previousDistinct(Coordinate[] coordinates, int index) {
+        int previous = index - 1;
+        while (previous > 0 && coordinates[previous].equals2D(coordinates[index])) {
+            previous--;
+        }
+        return previous;
+    }
+
+    private static void addSwath(Geometry swath, TileGrid grid) {
+        if (swath != null && !swath.isEmpty()) {
+            grid.add(swath);
+        }
+    }
+
+    /**
+     * 不简化输入线：分段缓冲与整趟缓冲在分段处的边界必须完全一致
+     */
+    private static Geometry buffer(LineString chunk, double distance) {
+        BufferParameters parameters = new BufferParameters(4, BufferParameters.CAP_FLAT, BufferParameters.JOIN_ROUND, 5);
+        parameters.setSimplifyFactor(0);
+        return BufferOp.bufferOp(chunk, distance, parameters);
+    }
+
+    /**
+     * 阶段二：一个地块范围内的瓦片逐个与地块、ZONE 求交，汇总统计并合并各瓦片的结果几何
+     */
+    private CoverageResult summarize(TileGrid grid, Geometry workField, Map<String, Geometry> workZones,
+                                     Projection projection, CoordinateReferenceSystem crs, long segments,
+                                     ExecutorService executor) throws IOException {
+        PreparedGeometry preparedField = PreparedGeometryFactory.prepare(workField);
+        Envelope fieldEnvelope = workField.getEnvelopeInternal();
+        Map<String, PreparedGeometry> preparedZones = new LinkedHashMap<>();
+        workZones.forEach((zone, geometry) -> {
+            if (geometry.getEnvelopeInternal().intersects(fieldEnvelope)) {
+                preparedZones.put(zone, PreparedGeometryFactory.prepare(geometry));
+            }
+        });
+
+        List<Future<TileResult>> futures = new ArrayList<>();
+        int[] range = grid.range(fieldEnvelope);
+        for (int ix = range[0]; ix <= range[1]; ix++) {
+            for (int iy = range[2]; iy <= range[3]; iy++) {
+                Polygon rectangle = grid.rectangle(ix, iy);
+                CoverageTile tile = grid.tiles.get(grid.key(ix, iy));
+                futures.add(executor.submit(() -> summarizeTile(rectangle, tile, workField, preparedField, preparedZones)));
+            }
+        }
+
+        ZoneCoverage total = new ZoneCoverage(null, 0, 0, 0, 0);
+        Map<String, ZoneCoverage> zones = new TreeMap<>();
+        preparedZones.keySet().forEach(zone -> zones.put(zone, new ZoneCoverage(zone, 0, 0, 0, 0)));
+        List<Geometry> covered = new ArrayList<>();
+        List<Geometry> skipped = new ArrayList<>();
+        List<Geometry> doubled = new ArrayList<>();
+        try {
+            for (Future<TileResult> future : futures) {
+                TileResult result = future.get();
+                if (result == null) {
+                    continue;
+                }
+                total = total.plus(result.total);
+                result.zones.forEach((zone, stats) -> zones.merge(zone, stats, ZoneCoverage::plus));
+                addIfNotEmpty(covered, result.covered);
+                addIfNotEmpty(skipped, result.skipped);
+                addIfNotEmpty(doubled, result.doubled);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("覆盖分析被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(e.getCause());
+        }
+
+        GeometryFactory factory = workField.getFactory();
+        return new CoverageResult(crs,
+                projection.inverse(union(covered, factory)),
+                projection.inverse(union(skipped, factory)),
+                projection.inverse(union(doubled, factory)),
+                total, new ArrayList<>(zones.values()), segments);
+    }
+
+    private static TileResult summarizeTile(Polygon rectangle, CoverageTile tile, Geometry workField,
+                                            PreparedGeometry preparedField, Map<String, PreparedGeometry> preparedZones) {
+        Geometry fieldPart = clip(rectangle, workField, preparedField);
+        if (fieldPart == null) {
+            return null;
+        }
+        Geometry coveredAll = tile == null ? null : tile.covered();
+        Geometry doubledAll = tile == null ? null : tile.doubled();
+        Geometry covered = intersection(coveredAll, fieldPart);
+        Geometry doubled = intersection(doubledAll, fieldPart);
+        Geometry skipped = covered == null ? fieldPart : OverlayNGRobust.overlay(fieldPart, covered, OverlayNG.DIFFERENCE);
+
+        TileResult result = new TileResult();
+        result.covered = covered;
+        result.doubled = doubled;
+        result.skipped = skipped;
+        result.total = stats(null, fieldPart, covered, doubled);
+        preparedZones.forEach((zone, prepared) -> {
+            Geometry zonePart = clip(rectangle, prepared.getGeometry(), prepared);
+            if (zonePart != null) {
+                zonePart = fieldPart == rectangle ? zonePart : OverlayNGRobust.overlay(zonePart, fieldPart, OverlayNG.INTERSECTION);
+                result.zones.put(zone, stats(zone, zonePart, intersection(covered, zonePart), intersection(doubled, zonePart)));
+            }
+        });
+        return result;
+    }
+
+    private static ZoneCoverage stats(String zone, Geometry area, Geometry covered, Geometry doubled) {
+        double total = area.getArea();
+        double coveredArea = covered == null ? 0 : covered.getArea();
+        return new ZoneCoverage(zone, total, coveredArea, Math.max(0, total - coveredArea),
+                doubled == null ? 0 : doubled.getArea());
+    }
+
+    /**
+     * 瓦片与几何求交：不相交返回 null，瓦片被完全包含时直接返回瓦片
+     */
+    private static Geometry clip(Polygon rectangle, Geometry geometry, PreparedGeometry prepared) {
+        if (!prepared.intersects(rectangle)) {
+            return null;
+        }
+        if (prepared.covers(rectangle)) {
+            return rectangle;
+        }
+        Geometry part = OverlayNGRobust.overlay(geometry, rectangle, OverlayNG.INTERSECTION);
+        return part.isEmpty() ? null : part;
+    }
+
+    private static Geometry intersection(Geometry a, Geometry b) {
+        if (a == null || a.isEmpty() || b == null) {
+            return null;
+        }
+        Geometry result = OverlayNGRobust.overlay(a, b, OverlayNG.INTERSECTION);
+        return result.isEmpty() ? null : result;
+    }
+
+    private static void addIfNotEmpty(List<Geometry> target, Geometry geometry) {
+        if (geometry != null && !geometry.isEmpty()) {
+            target.add(geometry);
+        }
+    }
+
+    private static Geometry union(List<Geometry> geometries, GeometryFactory factory) {
+        return geometries.isEmpty() ? factory.createMultiPolygon() : OverlayNGRobust.union(geometries);
+    }
+
+    private static final class TileResult {
+        Geometry covered;
+        Geometry skipped;
+        Geometry doubled;
+        ZoneCoverage total;
+        final Map<String, ZoneCoverage> zones = new LinkedHashMap<>();
+    }
+
+    /**
+     * 以全部地块范围左下角为原点的规则瓦片网格
+     */
+    private static final class TileGrid {
+        final Envelope bounds;
+        final double size;
+        final int columns;
+        final int rows;
+        final GeometryFactory factory;
+        final int mergeBatch;
+        final Map<Long, CoverageTile> tiles = new ConcurrentHashMap<>();
+
+        TileGrid(Envelope bounds, double size, GeometryFactory factory, int mergeBatch) {
+            this.bounds = bounds;
+            this.size = size;
+            this.columns = Math.max(1, (int) Math.ceil(bounds.getWidth() / size));
+            this.rows = Math.max(1, (int) Math.ceil(bounds.getHeight() / size));
+            this.factory = factory;
+            this.mergeBatch = mergeBatch;
+        }
+
+        long key(int ix, int iy) {
+            return ((long) ix << 32) | (iy & 0xFFFFFFFFL);
+        }
+
+        Polygon rectangle(int ix, int iy) {
+            double minX = bounds.getMinX() + ix * size;
+            double minY = bounds.getMinY() + iy * size;
+            return (Polygon) factory.toGeometry(new Envelope(minX, minX + size, minY, minY + size));
+        }
+
+        /**
+         * 与范围相交的瓦片下标 {minX, maxX, minY, maxY}，超出网格的部分截掉
+         */
+        int[] range(Envelope envelope) {
+            return new int[]{
+                    Math.max(0, (int) Math.floor((envelope.getMinX() - bounds.getMinX()) / size)),
+                    Math.min(columns - 1, (int) Math.floor((envelope.getMaxX() - bounds.getMinX()) / size)),
+                    Math.max(0, (int) Math.floor((envelope.getMinY() - bounds.getMinY()) / size)),
+                    Math.min(rows - 1, (int) Math.floor((envelope.getMaxY() - bounds.getMinY()) / size))};
+        }
+
+        /**
+         * 把作业带裁剪到相交的各个瓦片，网格以外的部分不参与统计
+         */
+        void add(Geometry swath) {
+            Envelope envelope = swath.getEnvelopeInternal();
+            int[] range = range(envelope);
+            for (int ix = range[0]; ix <= range[1]; ix++) {
+                for (int iy = range[2]; iy <= range[3]; iy++) {
+                    Polygon rectangle = rectangle(ix, iy);
+                    Geometry piece = rectangle.getEnvelopeInternal().contains(envelope) ? swath
+                            : OverlayNGRobust.overlay(swath, rectangle, OverlayNG.INTERSECTION);
+                    if (!piece.isEmpty() && piece.getDimension() == 2) {
+                        tiles.computeIfAbsent(key(ix, iy), k -> new CoverageTile(rectangle, mergeBatch)).add(piece);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 数据坐标系与计算用的米制坐标系之间的转换；投影坐标系的数据不做转换
+     */
+    private record Projection(MathTransform toWork, MathTransform toSource) {
+
+        static Projection of(CoordinateReferenceSystem crs, Geometry field) {
+            Envelope envelope = field.getEnvelopeInternal();
+            boolean geographic = crs == null
+                    ? envelope.getMinX() >= -180 && envelope.getMaxX() <= 180 && envelope.getMinY() >= -90 && envelope.getMaxY() <= 90
+                    : crs instanceof GeographicCRS;
+            if (!geographic) {
+                return new Projection(null, null);
+            }
+            Point centre = field.getCentroid();
+            int zone = Math.min(60, Math.max(1, (int) Math.floor((centre.getX() + 180) / 6) + 1));
+            int code = (centre.getY() >= 0 ? 32600 : 32700) + zone;
+            try {
+                MathTransform transform = CRS.findMathTransform(crs == null ? DefaultGeographicCRS.WGS84 : crs,
+                        CRS.decode("EPSG:" + code, true), true);
+                return new Projection(transform, transform.inverse());
+            } catch (FactoryException | NoninvertibleTransformException e) {
+                throw new IllegalStateException("投影到 EPSG:" + code + " 失败", e);
+            }
+        }
+
+        Geometry forward(Geometry geometry) {
+            return transform(geometry, toWork);
+        }
+
+        Geometry inverse(Geometry geometry) {
+            return transform(geometry, toSource);
+        }
+
+        private static Geometry transform(Geometry geometry, MathTransform transform) {
+            if (transform == null || geometry.isEmpty()) {
+                return geometry;
+            }
+            try {
+                return JTS.transform(geometry, transform);
+            } catch (TransformException e) {
+                throw new IllegalStateException("坐标转换失败", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.zhangyh.shapefile.shapefile.coverage;
+
+import com.zhangyh.shapefile.shapefile.stream.ShapefileFileWriter;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.MultiPolygon;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 覆盖分析结果：地块内已作业、漏喷（未覆盖）、重喷（重复覆盖）区域及各 ZONE 的统计
+ * 几何使用作业轨迹图层的坐标系，面积单位均为平方米。
+ *
+ * @author zhangyh
+ */
+public class CoverageResult {
+
+    public static final String TYPE_FIELD = "TYPE";
+    public static final String AREA_FIELD = "AREA_M2";
+    public static final String COVERED = "covered";
+    public static final String SKIPPED = "skipped";
+    public static final String DOUBLED = "double";
+
+    private final CoordinateReferenceSystem crs;
+    private final Geometry covered;
+    private final Geometry skipped;
+    private final Geometry doubled;
+    private final ZoneCoverage total;
+    private final List<ZoneCoverage> zones;
+    private final long segments;
+
+    CoverageResult(CoordinateReferenceSystem crs, Geometry covered, Geometry skipped, Geometry doubled,
+                   ZoneCoverage total, List<ZoneCoverage> zones, long segments) {
+        this.crs = crs;
+        this.covered = covered;
+        this.skipped = skipped;
+        this.doubled = doubled;
+        this.total = total;
+        this.zones = Collections.unmodifiableList(zones);
+        this.segments = segments;
+    }
+
+    public Geometry getCovered() {
+        return covered;
+    }
+
+    public Geometry getSkipped() {
+        return skipped;
+    }
+
+    public Geometry getDoubled() {
+        return doubled;
+    }
+
+    /**
+     * 整个地块的统计，zone 为 null
+     */
+    public ZoneCoverage getTotal() {
+        return total;
+    }
+
+    /**
+     * 各 ZONE 的统计（按 ZONE 排序）
+     */
+    public List<ZoneCoverage> getZones() {
+        return zones;
+    }
+
+    /**
+     * 参与计算的轨迹线段数
+     */
+    public long getSegmentCount() {
+        return segments;
+    }
+
+    /**
+     * 输出三类区域，每类一个要素，字段 TYPE（covered/skipped/double）、AREA_M2
+     */
+    public void writeShapefile(Path shpFile) throws IOException {
+        SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+        builder.setName("coverage");
+        builder.setCRS(crs);
+        builder.add("the_geom", MultiPolygon.class);
+        builder.length(10).add(TYPE_FIELD, String.class);
+        builder.add(AREA_FIELD, Double.class);
+        SimpleFeatureType schema = builder.buildFeatureType();
+        try (ShapefileFileWriter writer = new ShapefileFileWriter(shpFile, schema)) {
+            writer.write(covered, new Object[]{COVERED, total.covered()});
+            writer.write(skipped, new Object[]{SKIPPED, total.skipped()});
+            writer.write(doubled, new Object[]{DOUBLED, total.doubled()});
+        }
+    }
+
+    /**
+     * 以 CSV 输出各 ZONE 统计，最后一行为整个地块，不关闭 writer
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write("ZONE,AREA_M2,COVERED_M2,SKIPPED_M2,DOUBLE_M2\n");
+        for (ZoneCoverage zone : zones) {
+            writer.write(row(zone.zone(), zone));
+        }
+        writer.write(row("(field)", total));
+        writer.flush();
+    }
+
+    private static String row(String name, ZoneCoverage zone) {
+        String text = name == null ? "" : name;
+        if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0) {
+            text = '"' + text.replace("\"", "\"\"") + '"';
+        }
+        return String.format(Locale.ROOT, "%s,%.2f,%.2f,%.2f,%.2f%n", text,
+                zone.area(), zone.covered(), zone.skipped(), zone.doubled());
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "CoverageResult{field=%.2f m2, covered=%.2f m2, skipped=%.2f m2, double=%.2f m2, zones=%d}",
+                total.area(), total.covered(), total.skipped(), total.doubled(), zones.size());
+    }
+
+    /**
+     * 一个 ZONE（或整个地块）的覆盖统计，面积单位平方米
+     *
+     * @param area    区域面积（限定在地块内）
+     * @param covered 已作业面积
+     * @param skipped 漏喷面积
+     * @param doubled 重喷面积（两次及以上）
+     */
+    public record ZoneCoverage(String zone, double area, double covered, double skipped, double doubled) {
+
+        ZoneCoverage plus(ZoneCoverage other) {
+            return new ZoneCoverage(zone, area + other.area, covered + other.covered,
+                    skipped + other.skipped, doubled + other.doubled);
+        }
+
+        /**
+         * 已作业面积占比
+         */
+        public double coverageRatio() {
+            return area == 0 ? 0 : covered / area;
+        }
+    }
+}
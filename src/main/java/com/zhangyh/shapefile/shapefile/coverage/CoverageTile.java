@@ -0,0 +1,101 @@
+package com.zhangyh.shapefile.shapefile.coverage;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.util.PolygonExtracter;
+import org.locationtech.jts.operation.overlayng.OverlayNG;
+import org.locationtech.jts.operation.overlayng.OverlayNGRobust;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一个空间瓦片内的覆盖状态：已覆盖区域 C 与重复作业区域 D
+ * 落入瓦片的作业带先进入待合并列表，攒够一批后增量合并：
+ * D = D ∪ (批内两两交集) ∪ (C ∩ 批并集)，C = C ∪ 批并集。
+ * 这样每次合并只涉及本瓦片内的几何，复杂度不随全局作业带数量增长，不同瓦片可以并发合并。
+ *
+ * @author zhangyh
+ */
+final class CoverageTile {
+
+    final Polygon rectangle;
+    private final GeometryFactory geometryFactory;
+    private final int batchSize;
+    private final List<Geometry> pending = new ArrayList<>();
+    private Geometry covered;
+    private Geometry doubled;
+
+    CoverageTile(Polygon rectangle, int batchSize) {
+        this.rectangle = rectangle;
+        this.geometryFactory = rectangle.getFactory();
+        this.batchSize = batchSize;
+        this.covered = geometryFactory.createPolygon();
+        this.doubled = geometryFactory.createPolygon();
+    }
+
+    synchronized void add(Geometry swath) {
+        pending.add(swath);
+        if (pending.size() >= batchSize) {
+            merge();
+        }
+    }
+
+    /**
+     * 合并剩余作业带并返回已覆盖区域
+     */
+    synchronized Geometry covered() {
+        merge();
+        return covered;
+    }
+
+    synchronized Geometry doubled() {
+        merge();
+        return doubled;
+    }
+
+    private void merge() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Geometry> overlaps = new ArrayList<>();
+        for (int i = 0; i < pending.size(); i++) {
+            Envelope envelope = pending.get(i).getEnvelopeInternal();
+            for (int j = i + 1; j < pending.size(); j++) {
+                if (envelope.intersects(pending.get(j).getEnvelopeInternal())) {
+                    addPolygonal(overlaps, OverlayNGRobust.overlay(pending.get(i), pending.get(j), OverlayNG.INTERSECTION));
+                }
+            }
+        }
+        Geometry union = OverlayNGRobust.union(pending);
+        pending.clear();
+        if (!covered.isEmpty() && covered.getEnvelopeInternal().intersects(union.getEnvelopeInternal())) {
+            addPolygonal(overlaps, OverlayNGRobust.overlay(covered, union, OverlayNG.INTERSECTION));
+        }
+        if (!overlaps.isEmpty()) {
+            if (!doubled.isEmpty()) {
+                overlaps.add(doubled);
+            }
+            doubled = OverlayNGRobust.union(overlaps);
+        }
+        covered = covered.isEmpty() ? union : OverlayNGRobust.overlay(covered, union, OverlayNG.UNION);
+    }
+
+    /**
+     * 只保留面状部分，相切产生的线和点不算重复作业
+     */
+    private static void addPolygonal(List<Geometry> target, Geometry geometry) {
+        if (geometry.isEmpty()) {
+            return;
+        }
+        if (geometry.getDimension() == 2 && geometry.getNumGeometries() == 1) {
+            target.add(geometry);
+            return;
+        }
+        for (Object polygon : PolygonExtracter.getPolygons(geometry)) {
+            target.add((Geometry) polygon);
+        }
+    }
+}
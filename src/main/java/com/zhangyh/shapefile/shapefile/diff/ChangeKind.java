@@ -0,0 +1,25 @@
+package com.zhangyh.shapefile.shapefile.diff;
+
+/**
+ * 修改记录的变化类型
+ *
+ * @author zhangyh
+ */
+public enum ChangeKind {
+    /** 只有几何变化 */
+    GEOMETRY,
+    /** 只有属性变化（如 DOSE） */
+    ATTRIBUTES,
+    /** 几何和属性都变化 */
+    BOTH;
+
+    static ChangeKind of(boolean geometryChanged, boolean attributesChanged) {
+        if (geometryChanged && attributesChanged) {
+            return BOTH;
+        }
+        if (geometryChanged) {
+            return GEOMETRY;
+        }
+        return attributesChanged ? ATTRIBUTES : null;
+    }
+}
@@ -0,0 +1,309 @@
+package com.zhangyh.shapefile.shapefile.diff;
+
+import com.zhangyh.shapefile.shapefile.stream.ShapefileFileWriter;
+import com.zhangyh.shapefile.shapefile.stream.ShapefileRecord;
+import com.zhangyh.shapefile.shapefile.stream.ShapefileStreamReader;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.api.feature.type.AttributeDescriptor;
+import org.geotools.api.feature.type.GeometryDescriptor;
+import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geojson.feature.FeatureJSON;
+import org.locationtech.jts.geom.Geometry;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 差异比较结果：新增、删除、修改的记录序号（按文件中的顺序，从 1 开始）
+ * 补丁输出时只重新读取差异记录，两个文件各顺序扫描一遍。
+ * 补丁中的每条要素带三个附加字段：DIFF_OP（added/removed/modified）、DIFF_KIND（修改类型）、DIFF_FLDS（变化的字段）。
+ *
+ * @author zhangyh
+ */
+public class DiffResult {
+
+    public static final String OP_FIELD = "DIFF_OP";
+    public static final String KIND_FIELD = "DIFF_KIND";
+    public static final String FIELDS_FIELD = "DIFF_FLDS";
+
+    private final Path oldFile;
+    private final Path newFile;
+    private final String keyField;
+    private final List<Integer> added;
+    private final List<Integer> removed;
+    private final List<Modification> modified;
+    private final int oldCount;
+    private final int newCount;
+
+    DiffResult(Path oldFile, Path newFile, String keyField, List<Integer> added, List<Integer> removed,
+               List<Modification> modified, int oldCount, int newCount) {
+        this.oldFile = oldFile;
+        this.newFile = newFile;
+        this.keyField = keyField;
+        this.added = Collections.unmodifiableList(added);
+        this.removed = Collections.unmodifiableList(removed);
+        this.modified = Collections.unmodifiableList(modified);
+        this.oldCount = oldCount;
+        this.newCount = newCount;
+    }
+
+    /**
+     * 新增记录在新文件中的记录号
+     */
+    public List<Integer> getAdded() {
+        return added;
+    }
+
+    /**
+     * 删除记录在旧文件中的记录号
+     */
+    public List<Integer> getRemoved() {
+        return removed;
+    }
+
+    public List<Modification> getModified() {
+        return modified;
+    }
+
+    /**
+     * 旧文件中参与比较的记录数（不含 .dbf 中已删除的记录），下同
+     */
+    public int getOldCount() {
+        return oldCount;
+    }
+
+    public int getNewCount() {
+        return newCount;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && modified.isEmpty();
+    }
+
+    /**
+     * 以 GeoJSON FeatureCollection 输出补丁，不关闭输出流
+     */
+    public void writeGeoJson(OutputStream out) throws IOException {
+        FeatureJSON featureJSON = new FeatureJSON();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write("{\"type\":\"FeatureCollection\",\"features\":[");
+        boolean[] first = {true};
+        emit(patchSchema(), feature -> {
+            if (!first[0]) {
+                writer.write(',');
+            }
+            first[0] = false;
+            writer.write(featureJSON.toString(feature));
+        });
+        writer.write("]}");
+        writer.flush();
+    }
+
+    /**
+     * 以 Shapefile 输出补丁
+     */
+    public void writeShapefile(Path shpFile) throws IOException {
+        SimpleFeatureType schema = patchSchema();
+        try (ShapefileFileWriter writer = new ShapefileFileWriter(shpFile, schema)) {
+            emit(schema, writer::write);
+        }
+    }
+
+    /**
+     * 先扫描旧文件输出删除记录、缓存修改记录的旧属性，再扫描新文件输出新增和修改记录
+     */
+    private void emit(SimpleFeatureType schema, FeatureSink sink) throws IOException {
+        BitSet removedSet = toBitSet(removed);
+        Map<Integer, Modification> modifiedByOld = new HashMap<>();
+        Map<Integer, Modification> modifiedByNew = new HashMap<>();
+        for (Modification modification : modified) {
+            modifiedByOld.put(modification.oldNumber(), modification);
+            modifiedByNew.put(modification.newNumber(), modification);
+        }
+
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(schema);
+
+        Map<Integer, Map<String, Object>> oldValues = new HashMap<>();
+        try (ShapefileStreamReader reader = ShapefileStreamReader.open(oldFile)) {
+            int number = 0;
+            while (reader.hasNext()) {
+                ShapefileRecord record = reader.next();
+                number++;
+                if (removedSet.get(number)) {
+                    sink.accept(build(builder, record.getGeometry(), valuesByName(reader, record),
+                            "removed", null, null, "old." + number));
+                } else if (modifiedByOld.containsKey(number)) {
+                    oldValues.put(number, valuesByName(reader, record));
+                }
+            }
+        }
+
+        BitSet addedSet = toBitSet(added);
+        try (ShapefileStreamReader reader = ShapefileStreamReader.open(newFile)) {
+            int number = 0;
+            while (reader.hasNext()) {
+                ShapefileRecord record = reader.next();
+                number++;
+                if (addedSet.get(number)) {
+                    sink.accept(build(builder, record.getGeometry(), valuesByName(reader, record),
+                            "added", null, null, "new." + number));
+                    continue;
+                }
+                Modification modification = modifiedByNew.get(number);
+                if (modification != null) {
+                    Map<String, Object> values = valuesByName(reader, record);
+                    List<String> changed = changedFields(oldValues.remove(modification.oldNumber()), values);
+                    sink.accept(build(builder, record.getGeometry(), values, "modified",
+                            modification.kind(), changed, "new." + number));
+                }
+            }
+        }
+    }
+
+    private static List<String> changedFields(Map<String, Object> oldValues, Map<String, Object> newValues) {
+        List<String> changed = new ArrayList<>();
+        if (oldValues == null) {
+            return changed;
+        }
+        for (Map.Entry<String, Object> entry : newValues.entrySet()) {
+            if (!Objects.equals(entry.getValue(), oldValues.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String name : oldValues.keySet()) {
+            if (!newValues.containsKey(name)) {
+                changed.add(name);
+            }
+        }
+        return changed;
+    }
+
+    private static Map<String, Object> valuesByName(ShapefileStreamReader reader, ShapefileRecord record) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        DbaseFileHeader header = reader.getDbaseHeader();
+        if (header != null) {
+            Object[] attributes = record.getAttributes();
+            for (int i = 0; i < attributes.length; i++) {
+                values.put(header.getFieldName(i), attributes[i]);
+            }
+        }
+        return values;
+    }
+
+    private SimpleFeature build(SimpleFeatureBuilder builder, Geometry geometry, Map<String, Object> values,
+                                String op, ChangeKind kind, List<String> fields, String id) {
+        builder.set("the_geom", geometry);
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            AttributeDescriptor descriptor = descriptor(builder.getFeatureType(), entry.getKey());
+            if (descriptor != null) {
+                builder.set(descriptor.getLocalName(), entry.getValue());
+            }
+        }
+        builder.set(OP_FIELD, op);
+        builder.set(KIND_FIELD, kind == null ? null : kind.name());
+        builder.set(FIELDS_FIELD, fields == null ? null : String.join(",", fields));
+        return builder.buildFeature(id);
+    }
+
+    /**
+     * 补丁结构：两个版本字段的并集（新文件字段在前，旧文件独有的字段追加在后）加上三个差异字段
+     * 删除记录只在旧文件中存在，必须能写出旧文件独有的字段；同名字段或几何的类型在两个版本中不同时无法合并，抛出 IOException。
+     */
+    private SimpleFeatureType patchSchema() throws IOException {
+        SimpleFeatureType newSchema;
+        SimpleFeatureType oldSchema;
+        try (ShapefileStreamReader newReader = ShapefileStreamReader.open(newFile);
+             ShapefileStreamReader oldReader = ShapefileStreamReader.open(oldFile)) {
+            newSchema = newReader.getSchema();
+            oldSchema = oldReader.getSchema();
+        }
+        GeometryDescriptor newGeometry = newSchema.getGeometryDescriptor();
+        GeometryDescriptor oldGeometry = oldSchema.getGeometryDescriptor();
+        if (newGeometry != null && oldGeometry != null
+                && !newGeometry.getType().getBinding().equals(oldGeometry.getType().getBinding())) {
+            throw new IOException(String.format("两个版本的几何类型不同（%s / %s），无法输出补丁",
+                    oldGeometry.getType().getBinding().getSimpleName(), newGeometry.getType().getBinding().getSimpleName()));
+        }
+
+        SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+        builder.init(newSchema);
+        builder.setName(newSchema.getTypeName() + "_diff");
+        for (AttributeDescriptor descriptor : oldSchema.getAttributeDescriptors()) {
+            if (descriptor instanceof GeometryDescriptor) {
+                continue;
+            }
+            AttributeDescriptor existing = descriptor(newSchema, descriptor.getLocalName());
+            if (existing == null) {
+                builder.add(descriptor);
+            } else if (!existing.getType().getBinding().equals(descriptor.getType().getBinding())) {
+                throw new IOException(String.format("字段 %s 在两个版本中的类型不同（%s / %s），无法输出补丁",
+                        descriptor.getLocalName(), descriptor.getType().getBinding().getSimpleName(),
+                        existing.getType().getBinding().getSimpleName()));
+            }
+        }
+        builder.length(10).add(OP_FIELD, String.class);
+        builder.length(10).add(KIND_FIELD, String.class);
+        builder.length(254).add(FIELDS_FIELD, String.class);
+        return builder.buildFeatureType();
+    }
+
+    /**
+     * 按名称（不区分大小写，与 dBase 一致）查找非几何字段
+     */
+    private static AttributeDescriptor descriptor(SimpleFeatureType schema, String name) {
+        for (AttributeDescriptor descriptor : schema.getAttributeDescriptors()) {
+            if (!(descriptor instanceof GeometryDescriptor) && descriptor.getLocalName().equalsIgnoreCase(name)) {
+                return descriptor;
+            }
+        }
+        return null;
+    }
+
+    private static BitSet toBitSet(List<Integer> numbers) {
+        BitSet set = new BitSet();
+        for (int number : numbers) {
+            set.set(number);
+        }
+        return set;
+    }
+
+    public String getKeyField() {
+        return keyField;
+    }
+
+    @Override
+    public String toString() {
+        return "DiffResult{added=" + added.size() + ", removed=" + removed.size()
+                + ", modified=" + modified.size() + ", old=" + oldCount + ", new=" + newCount + "}";
+    }
+
+    /**
+     * 一条修改记录
+     *
+     * @param oldNumber 旧文件中的记录号
+     * @param newNumber 新文件中的记录号
+     */
+    public record Modification(int oldNumber, int newNumber, ChangeKind kind) {
+    }
+
+    @FunctionalInterface
+    private interface FeatureSink {
+        void accept(SimpleFeature feature) throws IOException;
+    }
+}
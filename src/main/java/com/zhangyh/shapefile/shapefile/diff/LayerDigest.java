@@ -0,0 +1,138 @@
+package com.zhangyh.shapefile.shapefile.diff;
+
+import com.zhangyh.shapefile.shapefile.stream.ShapefileCodec;
+import com.zhangyh.shapefile.shapefile.stream.ShapefileRecord;
+import com.zhangyh.shapefile.shapefile.stream.ShapefileStreamReader;
+import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+/**
+ * 一个图层的逐记录摘要：匹配键、几何摘要、属性摘要
+ * 摘要直接对 .shp 记录内容和 .dbf 行的原始字节计算（CRC32C 与 CRC32 拼成 64 位，二者均有硬件加速），
+ * 不解析几何，扫描速度接近磁盘读取速度。
+ * .dbf 中带删除标记的记录不参与比较，记录号仍按文件中的位置计算。
+ *
+ * @author zhangyh
+ */
+final class LayerDigest {
+
+    final Path file;
+    int count;
+    /** 记录在文件中的位置（从 1 开始，含已删除的记录） */
+    int[] numbers = new int[1024];
+    Object[] keys = new Object[1024];
+    long[] geometryHashes = new long[1024];
+    long[] attributeHashes = new long[1024];
+
+    private LayerDigest(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @param keyField     匹配字段，为 null 时按几何摘要匹配
+     * @param commonFields 两侧字段布局不同时参与属性比较的公共字段；为 null 表示布局相同，直接比较原始行
+     */
+    static LayerDigest scan(Path shpFile, String keyField, List<String> commonFields) throws IOException {
+        LayerDigest digest = new LayerDigest(shpFile);
+        CRC32C crc32c = new CRC32C();
+        CRC32 crc32 = new CRC32();
+        try (ShapefileStreamReader reader = ShapefileStreamReader.open(shpFile)) {
+            DbaseFileHeader header = reader.getDbaseHeader();
+            Charset charset = reader.getCharset();
+            int keyIndex = keyField == null ? -1 : ShapefileCodec.fieldIndex(header, keyField);
+            if (keyField != null && keyIndex < 0) {
+                throw new IOException(shpFile.getFileName() + " 中不存在匹配字段: " + keyField);
+            }
+            int keyOffset = keyIndex < 0 ? 0 : fieldOffset(header, keyIndex);
+            int[] commonIndexes = commonFields == null ? null
+                    : commonFields.stream().mapToInt(name -> ShapefileCodec.fieldIndex(header, name)).toArray();
+
+            int number = 0;
+            while (reader.hasNext()) {
+                ShapefileRecord record = reader.next();
+                number++;
+                if (record.isDeleted()) {
+                    continue;
+                }
+                digest.ensureCapacity();
+                int i = digest.count++;
+                digest.numbers[i] = number;
+
+                long geometryHash = hash(record.getContent(), crc32c, crc32);
+                digest.geometryHashes[i] = geometryHash;
+
+                ByteBuffer row = record.getRow();
+                if (row == null) {
+                    digest.attributeHashes[i] = 0;
+                } else if (commonIndexes == null) {
+                    // 跳过首字节删除标记
+                    row.position(1);
+                    digest.attributeHashes[i] = hash(row, crc32c, crc32);
+                } else {
+                    digest.attributeHashes[i] = hashValues(record, commonIndexes, crc32c, crc32);
+                }
+
+                if (keyIndex >= 0 && row == null) {
+                    digest.keys[i] = "";
+                } else if (keyIndex >= 0) {
+                    byte[] bytes = new byte[header.getFieldLength(keyIndex)];
+                    row.get(keyOffset, bytes);
+                    digest.keys[i] = new String(bytes, charset).trim();
+                } else {
+                    digest.keys[i] = geometryHash;
+                }
+            }
+        }
+        return digest;
+    }
+
+    private void ensureCapacity() {
+        if (count == keys.length) {
+            int capacity = count * 2;
+            numbers = Arrays.copyOf(numbers, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            geometryHashes = Arrays.copyOf(geometryHashes, capacity);
+            attributeHashes = Arrays.copyOf(attributeHashes, capacity);
+        }
+    }
+
+    /**
+     * 字段在行内的字节偏移（首字节为删除标记）
+     */
+    private static int fieldOffset(DbaseFileHeader header, int index) {
+        int offset = 1;
+        for (int i = 0; i < index; i++) {
+            offset += header.getFieldLength(i);
+        }
+        return offset;
+    }
+
+    private static long hash(ByteBuffer buffer, CRC32C crc32c, CRC32 crc32) {
+        crc32c.reset();
+        crc32.reset();
+        crc32c.update(buffer.duplicate());
+        crc32.update(buffer);
+        return (crc32c.getValue() << 32) | crc32.getValue();
+    }
+
+    /**
+     * 字段布局不同时按解码后的值计算摘要，只比较两侧都有的字段
+     */
+    private static long hashValues(ShapefileRecord record, int[] indexes, CRC32C crc32c, CRC32 crc32) {
+        Object[] values = record.getAttributes();
+        StringBuilder text = new StringBuilder();
+        for (int index : indexes) {
+            text.append(index < 0 ? null : values[index]).append('\u0001');
+        }
+        return hash(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)), crc32c, crc32);
+    }
+}
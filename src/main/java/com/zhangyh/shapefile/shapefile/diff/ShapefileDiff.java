@@ -0,0 +1,163 @@
+package com.zhangyh.shapefile.shapefile.diff;
+
+import com.zhangyh.shapefile.shapefile.stream.ShapefileCodec;
+import com.zhangyh.shapefile.shapefile.stream.ShapefileStreamReader;
+import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 两个版本 Shapefile 的记录级差异比较
+ * 原理：
+ * 1. 两个文件在两个线程上同时流式扫描，对每条记录的 .shp 原始字节和 .dbf 原始行计算摘要（见 {@link LayerDigest}）。
+ * 2. 按匹配字段（如 ZONE）或几何摘要配对记录，摘要不同即为修改，只在一侧出现即为新增/删除。
+ * 3. 只有差异记录会在输出补丁时被重新读取和解析，见 {@link DiffResult}。
+ * <p>
+ * 按几何匹配时，几何发生变化的记录无法配对，会表现为一删一增。
+ *
+ * @author zhangyh
+ */
+public class ShapefileDiff {
+
+    private final String keyField;
+
+    private ShapefileDiff(String keyField) {
+        this.keyField = keyField;
+    }
+
+    /**
+     * 按属性字段匹配记录（如处方图中的 ZONE）
+     */
+    public static ShapefileDiff byKey(String keyField) {
+        return new ShapefileDiff(keyField);
+    }
+
+    /**
+     * 按几何摘要匹配记录，适用于没有稳定主键的图层
+     */
+    public static ShapefileDiff byGeometry() {
+        return new ShapefileDiff(null);
+    }
+
+    public DiffResult compare(Path oldShp, Path newShp) throws IOException {
+        List<String> commonFields = commonFields(oldShp, newShp);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        LayerDigest oldDigest;
+        LayerDigest newDigest;
+        try {
+            CompletableFuture<LayerDigest> oldScan = CompletableFuture.supplyAsync(() -> scan(oldShp, commonFields), executor);
+            CompletableFuture<LayerDigest> newScan = CompletableFuture.supplyAsync(() -> scan(newShp, commonFields), executor);
+            oldDigest = oldScan.join();
+            newDigest = newScan.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+        return match(oldDigest, newDigest);
+    }
+
+    private LayerDigest scan(Path shpFile, List<String> commonFields) {
+        try {
+            return LayerDigest.scan(shpFile, keyField, commonFields);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * 两侧字段布局完全一致时返回 null（直接比较原始行），否则返回按名称匹配的公共字段
+     */
+    private static List<String> commonFields(Path oldShp, Path newShp) throws IOException {
+        DbaseFileHeader oldHeader;
+        DbaseFileHeader newHeader;
+        try (ShapefileStreamReader oldReader = ShapefileStreamReader.open(oldShp);
+             ShapefileStreamReader newReader = ShapefileStreamReader.open(newShp)) {
+            oldHeader = oldReader.getDbaseHeader();
+            newHeader = newReader.getDbaseHeader();
+            if (sameLayout(oldHeader, newHeader) && oldReader.getCharset().equals(newReader.getCharset())) {
+                return null;
+            }
+        }
+        List<String> fields = new ArrayList<>();
+        if (oldHeader != null && newHeader != null) {
+            for (int i = 0; i < oldHeader.getFieldCount(); i++) {
+                if (ShapefileCodec.fieldIndex(newHeader, oldHeader.getFieldName(i)) >= 0) {
+                    fields.add(oldHeader.getFieldName(i));
+                }
+            }
+        }
+        return fields;
+    }
+
+    private static boolean sameLayout(DbaseFileHeader a, DbaseFileHeader b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        if (a.getFieldCount() != b.getFieldCount()) {
+            return false;
+        }
+        for (int i = 0; i < a.getFieldCount(); i++) {
+            if (!a.getFieldName(i).equalsIgnoreCase(b.getFieldName(i))
+                    || a.getFieldType(i) != b.getFieldType(i)
+                    || a.getFieldLength(i) != b.getFieldLength(i)
+                    || a.getFieldDecimalCount(i) != b.getFieldDecimalCount(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private DiffResult match(LayerDigest oldDigest, LayerDigest newDigest) {
+        // 键 -> 第一条旧记录，重复键通过 next 链接，按出现顺序依次配对
+        Map<Object, Integer> heads = new HashMap<>(oldDigest.count * 4 / 3 + 1);
+        int[] next = new int[oldDigest.count];
+        for (int i = oldDigest.count - 1; i >= 0; i--) {
+            Integer head = heads.put(oldDigest.keys[i], i);
+            next[i] = head == null ? -1 : head;
+        }
+
+        BitSet matched = new BitSet(oldDigest.count);
+        List<Integer> added = new ArrayList<>();
+        List<DiffResult.Modification> modified = new ArrayList<>();
+        for (int j = 0; j < newDigest.count; j++) {
+            Object key = newDigest.keys[j];
+            Integer i = heads.get(key);
+            if (i == null) {
+                added.add(newDigest.numbers[j]);
+                continue;
+            }
+            if (next[i] < 0) {
+                heads.remove(key);
+            } else {
+                heads.put(key, next[i]);
+            }
+            matched.set(i);
+            ChangeKind kind = ChangeKind.of(oldDigest.geometryHashes[i] != newDigest.geometryHashes[j],
+                    oldDigest.attributeHashes[i] != newDigest.attributeHashes[j]);
+            if (kind != null) {
+                modified.add(new DiffResult.Modification(oldDigest.numbers[i], newDigest.numbers[j], kind));
+            }
+        }
+
+        List<Integer> removed = new ArrayList<>();
+        for (int i = matched.nextClearBit(0); i < oldDigest.count; i = matched.nextClearBit(i + 1)) {
+            removed.add(oldDigest.numbers[i]);
+        }
+        return new DiffResult(oldDigest.file, newDigest.file, keyField, added, removed, modified,
+                oldDigest.count, newDigest.count);
+    }
+}
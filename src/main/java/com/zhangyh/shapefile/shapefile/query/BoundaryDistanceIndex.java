@@ -0,0 +1,205 @@
+package com.zhangyh.shapefile.shapefile.query;
+
+import com.zhangyh.shapefile.shapefile.stream.ShapefileStreamReader;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.util.PolygonExtracter;
+import org.locationtech.jts.operation.overlayng.OverlayNGRobust;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 地块边界距离索引，回答“这个点离地块边界多远、在不在地块内”
+ * 边界只预处理一次：所有环拆成线段，转换到米制坐标系后打包成静态 R 树，之后的查询全部复用这份结构，
+ * 不再对每个点构造 JTS 几何或重新建立边界索引。
+ * 1. 距离：分支限界找最近线段，包围盒距离大于当前最近线段时整棵子树被剪掉。
+ * 2. 点在面内：水平射线只与纵坐标范围跨过该点的节点求交，奇数次相交即在地块内，洞内的点视为在地块外。
+ * 经纬度边界的距离按查询点的 UTM 比例因子换算成实地距离（见 {@link MetricFrame}）。
+ * 高频调用方用 {@link #newQuery()} 拿到可复用的 {@link Query}，稳定后单次查询不分配内存；批量查询按 parallelism 并行。
+ *
+ * @author zhangyh
+ */
+public class BoundaryDistanceIndex {
+
+    private final CoordinateReferenceSystem crs;
+    private final Geometry boundary;
+    private final MetricFrame frame;
+    /** 线段端点，x0, y0, x1, y1 依次排列 */
+    private final double[] segments;
+    private final PackedRTree tree;
+    private final PackedRTree.ItemDistance segmentDistance;
+    private final PackedRTree.RayCrossing segmentCrossing;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private BoundaryDistanceIndex(Geometry boundary, CoordinateReferenceSystem crs) {
+        this.crs = crs;
+        this.boundary = boundary;
+        this.frame = MetricFrame.of(crs, boundary.getEnvelopeInternal());
+        double[] buffer = new double[256];
+        int count = 0;
+        for (Object item : PolygonExtracter.getPolygons(frame.forward(boundary))) {
+            Polygon polygon = (Polygon) item;
+            List<LinearRing> rings = new ArrayList<>();
+            rings.add(polygon.getExteriorRing());
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                rings.add(polygon.getInteriorRingN(i));
+            }
+            for (LinearRing ring : rings) {
+                CoordinateSequence sequence = ring.getCoordinateSequence();
+                for (int i = 0; i < sequence.size() - 1; i++) {
+                    if (count * 4 + 4 > buffer.length) {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    }
+                    buffer[4 * count] = sequence.getX(i);
+                    buffer[4 * count + 1] = sequence.getY(i);
+                    buffer[4 * count + 2] = sequence.getX(i + 1);
+                    buffer[4 * count + 3] = sequence.getY(i + 1);
+                    count++;
+                }
+            }
+        }
+        this.segments = Arrays.copyOf(buffer, count * 4);
+        double[] boxes = new double[count * 4];
+        for (int i = 0; i < count; i++) {
+            boxes[4 * i] = Math.min(segments[4 * i], segments[4 * i + 2]);
+            boxes[4 * i + 1] = Math.min(segments[4 * i + 1], segments[4 * i + 3]);
+            boxes[4 * i + 2] = Math.max(segments[4 * i], segments[4 * i + 2]);
+            boxes[4 * i + 3] = Math.max(segments[4 * i + 1], segments[4 * i + 3]);
+        }
+        this.tree = new PackedRTree(boxes);
+        this.segmentDistance = (i, x, y) -> FlatGeometries.segmentDistanceSquared(x, y,
+                segments[4 * i], segments[4 * i + 1], segments[4 * i + 2], segments[4 * i + 3]);
+        this.segmentCrossing = (i, x, y) -> FlatGeometries.crosses(x, y,
+                segments[4 * i], segments[4 * i + 1], segments[4 * i + 2], segments[4 * i + 3]);
+    }
+
+    /**
+     * 读取地块边界图层，全部面合并后建立索引（相邻地块的公共边不算边界）
+     */
+    public static BoundaryDistanceIndex load(Path shpFile) throws IOException {
+        List<Geometry> polygons = new ArrayList<>();
+        try (ShapefileStreamReader reader = ShapefileStreamReader.open(shpFile)) {
+            while (reader.hasNext()) {
+                Geometry geometry = reader.next().getGeometry();
+                if (geometry != null && geometry.getDimension() == 2) {
+                    polygons.add(geometry);
+                }
+            }
+            if (polygons.isEmpty()) {
+                throw new IOException("边界图层中没有面要素: " + shpFile);
+            }
+            return new BoundaryDistanceIndex(OverlayNGRobust.union(polygons), reader.getCrs());
+        }
+    }
+
+    /**
+     * 用已有的边界几何建立索引，只使用其中的面
+     *
+     * @param crs 几何的坐标系，经纬度时距离按 UTM 投影后计算；为 null 时按坐标范围判断
+     */
+    public static BoundaryDistanceIndex of(Geometry boundary, CoordinateReferenceSystem crs) {
+        if (boundary == null || boundary.isEmpty() || boundary.getDimension() != 2) {
+            throw new IllegalArgumentException("边界必须是非空的面");
+        }
+        return new BoundaryDistanceIndex(boundary, crs);
+    }
+
+    /**
+     * 批量查询的并发线程数
+     */
+    public BoundaryDistanceIndex parallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    public CoordinateReferenceSystem getCrs() {
+        return crs;
+    }
+
+    /**
+     * 边界几何（图层坐标系）
+     */
+    public Geometry getBoundary() {
+        return boundary;
+    }
+
+    public int getSegmentCount() {
+        return segments.length / 4;
+    }
+
+    public Query newQuery() {
+        return new Query();
+    }
+
+    /**
+     * 批量计算到边界的距离，按 parallelism 并行
+     *
+     * @param signed 为 true 时地块外的点返回负值
+     * @return 与 points 一一对应的距离，单位米（投影坐标系时为坐标单位）
+     */
+    public double[] distances(Coordinate[] points, boolean signed) {
+        double[] result = new double[points.length];
+        ParallelBatch.run(points.length, parallelism, (from, to) -> {
+            Query query = newQuery();
+            for (int i = from; i < to; i++) {
+                result[i] = signed ? query.signedDistance(points[i].getX(), points[i].getY())
+                        : query.distance(points[i].getX(), points[i].getY());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 可复用的单线程查询对象，坐标使用图层坐标系
+     */
+    public final class Query {
+
+        private final PackedRTree.Searcher searcher = new PackedRTree.Searcher(tree, 1);
+        private final double[] point = new double[2];
+
+        private Query() {
+        }
+
+        /**
+         * 到边界的最短距离，单位米（投影坐标系时为坐标单位）
+         */
+        public double distance(double x, double y) {
+            frame.forward(x, y, point);
+            return nearestSegment() / frame.scale(x, y);
+        }
+
+        /**
+         * 点是否在地块内（不含洞），正好落在边界上的点按射线规则归到一侧
+         */
+        public boolean contains(double x, double y) {
+            frame.forward(x, y, point);
+            return inside();
+        }
+
+        /**
+         * 带符号距离：地块内为正，地块外为负，可直接用于判断是否进入地头区
+         */
+        public double signedDistance(double x, double y) {
+            frame.forward(x, y, point);
+            double distance = nearestSegment() / frame.scale(x, y);
+            return inside() ? distance : -distance;
+        }
+
+        private double nearestSegment() {
+            int found = searcher.nearest(point[0], point[1], 1, Double.POSITIVE_INFINITY, segmentDistance);
+            return found == 0 ? Double.NaN : searcher.resultDistances[0];
+        }
+
+        private boolean inside() {
+            return (searcher.crossings(point[0], point[1], segmentCrossing) & 1) == 1;
+        }
+    }
+}
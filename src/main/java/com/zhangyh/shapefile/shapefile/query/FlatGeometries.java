@@ -0,0 +1,174 @@
+package com.zhangyh.shapefile.shapefile.query;
+
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+
+import java.util.Arrays;
+
+/**
+ * 预处理后的几何集合：所有坐标展开到一个 double[] 中，每个条目由若干条路径（点、线、环）组成
+ * 距离与点在面内判断直接遍历数组，不创建 JTS 对象，可被多个线程同时读取。
+ *
+ * @author zhangyh
+ */
+final class FlatGeometries {
+
+    /** 全部坐标，x、y 交替 */
+    private final double[] coords;
+    /** 每条路径第一个坐标的序号，末尾多一个哨兵 */
+    private final int[] paths;
+    /** 每个条目第一条路径的序号，末尾多一个哨兵 */
+    private final int[] items;
+    private final boolean[] polygonal;
+    /** 每个条目的包围盒，minX, minY, maxX, maxY 依次排列 */
+    final double[] boxes;
+
+    private FlatGeometries(Builder builder) {
+        this.coords = Arrays.copyOf(builder.coords, builder.coordCount * 2);
+        this.paths = Arrays.copyOf(builder.paths, builder.pathCount + 1);
+        this.paths[builder.pathCount] = builder.coordCount;
+        this.items = Arrays.copyOf(builder.items, builder.itemCount + 1);
+        this.items[builder.itemCount] = builder.pathCount;
+        this.polygonal = Arrays.copyOf(builder.polygonal, builder.itemCount);
+        this.boxes = Arrays.copyOf(builder.boxes, builder.itemCount * 4);
+    }
+
+    int size() {
+        return polygonal.length;
+    }
+
+    /**
+     * 点到条目的距离平方；面状条目内部的点距离为 0
+     */
+    double distanceSquared(int item, double x, double y) {
+        if (polygonal[item] && (crossings(item, x, y) & 1) == 1) {
+            return 0;
+        }
+        double best = Double.POSITIVE_INFINITY;
+        for (int path = items[item]; path < items[item + 1]; path++) {
+            int start = paths[path];
+            int end = paths[path + 1];
+            if (end - start == 1) {
+                double dx = coords[2 * start] - x;
+                double dy = coords[2 * start + 1] - y;
+                best = Math.min(best, dx * dx + dy * dy);
+                continue;
+            }
+            for (int i = start; i < end - 1; i++) {
+                best = Math.min(best, segmentDistanceSquared(x, y,
+                        coords[2 * i], coords[2 * i + 1], coords[2 * i + 2], coords[2 * i + 3]));
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 水平射线 [x, +∞) × {y} 与条目所有环的交点个数
+     */
+    int crossings(int item, double x, double y) {
+        int count = 0;
+        for (int path = items[item]; path < items[item + 1]; path++) {
+            for (int i = paths[path]; i < paths[path + 1] - 1; i++) {
+                count += crosses(x, y, coords[2 * i], coords[2 * i + 1], coords[2 * i + 2], coords[2 * i + 3]);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 射线与线段是否相交；按半开区间判断纵坐标，保证经过顶点时只计一次
+     */
+    static int crosses(double x, double y, double x0, double y0, double x1, double y1) {
+        if ((y0 > y) == (y1 > y)) {
+            return 0;
+        }
+        double crossX = x0 + (y - y0) * (x1 - x0) / (y1 - y0);
+        return crossX >= x ? 1 : 0;
+    }
+
+    static double segmentDistanceSquared(double x, double y, double x0, double y0, double x1, double y1) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        double length2 = dx * dx + dy * dy;
+        double t = length2 == 0 ? 0 : ((x - x0) * dx + (y - y0) * dy) / length2;
+        t = Math.max(0, Math.min(1, t));
+        double ex = x0 + t * dx - x;
+        double ey = y0 + t * dy - y;
+        return ex * ex + ey * ey;
+    }
+
+    static final class Builder {
+
+        private double[] coords = new double[1024];
+        private int coordCount;
+        private int[] paths = new int[64];
+        private int pathCount;
+        private int[] items = new int[64];
+        private boolean[] polygonal = new boolean[64];
+        private double[] boxes = new double[256];
+        private int itemCount;
+
+        /**
+         * 添加一个条目，返回条目编号；几何应已转换到米制坐标系，空几何作为无路径的条目保留编号
+         */
+        int add(Geometry geometry) {
+            if (itemCount + 1 >= items.length) {
+                items = Arrays.copyOf(items, items.length * 2);
+                polygonal = Arrays.copyOf(polygonal, polygonal.length * 2);
+                boxes = Arrays.copyOf(boxes, boxes.length * 2);
+            }
+            int item = itemCount++;
+            items[item] = pathCount;
+            Envelope envelope = geometry == null ? new Envelope() : geometry.getEnvelopeInternal();
+            // 空几何的包围盒放在无穷远处，永远不会成为近邻
+            boxes[4 * item] = envelope.isNull() ? Double.POSITIVE_INFINITY : envelope.getMinX();
+            boxes[4 * item + 1] = envelope.isNull() ? Double.POSITIVE_INFINITY : envelope.getMinY();
+            boxes[4 * item + 2] = envelope.isNull() ? Double.POSITIVE_INFINITY : envelope.getMaxX();
+            boxes[4 * item + 3] = envelope.isNull() ? Double.POSITIVE_INFINITY : envelope.getMaxY();
+            if (geometry == null) {
+                return item;
+            }
+            polygonal[item] = geometry.getDimension() == 2;
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                Geometry part = geometry.getGeometryN(i);
+                if (part instanceof Polygon polygon) {
+                    addPath(polygon.getExteriorRing().getCoordinateSequence());
+                    for (int j = 0; j < polygon.getNumInteriorRing(); j++) {
+                        addPath(polygon.getInteriorRingN(j).getCoordinateSequence());
+                    }
+                } else if (part instanceof LineString line) {
+                    addPath(line.getCoordinateSequence());
+                } else if (part instanceof Point point) {
+                    addPath(point.getCoordinateSequence());
+                }
+            }
+            return item;
+        }
+
+        private void addPath(CoordinateSequence sequence) {
+            if (sequence.size() == 0) {
+                return;
+            }
+            if (pathCount + 1 >= paths.length) {
+                paths = Arrays.copyOf(paths, paths.length * 2);
+            }
+            paths[pathCount++] = coordCount;
+            if ((coordCount + sequence.size()) * 2 > coords.length) {
+                coords = Arrays.copyOf(coords, Math.max(coords.length * 2, (coordCount + sequence.size()) * 2));
+            }
+            for (int i = 0; i < sequence.size(); i++) {
+                coords[2 * coordCount] = sequence.getX(i);
+                coords[2 * coordCount + 1] = sequence.getY(i);
+                coordCount++;
+            }
+        }
+
+        FlatGeometries build() {
+            return new FlatGeometries(this);
+        }
+    }
+}
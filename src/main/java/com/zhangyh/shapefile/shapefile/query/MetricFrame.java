@@ -0,0 +1,106 @@
+package com.zhangyh.shapefile.shapefile.query;
+
+import org.geotools.api.referencing.FactoryException;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.api.referencing.crs.GeographicCRS;
+import org.geotools.api.referencing.operation.MathTransform;
+import org.geotools.api.referencing.operation.TransformException;
+import org.geotools.geometry.jts.JTS;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+
+/**
+ * 索引内部使用的米制坐标系：经纬度图层按图层中心所在的 WGS84 UTM 带投影，投影坐标系的图层不做转换
+ * 查询点以图层坐标系给出，距离结果单位为米（投影坐标系时为坐标单位）。
+ * UTM 平面距离等于实地距离乘以点比例因子，离中央经线越远越大（偏 3° 约 0.1%，偏 9° 约 1%）：
+ * 经纬度图层的每次查询按查询点的比例因子（{@link #scale}）换算，近距离结果与椭球面距离一致；
+ * 跨越超过 {@value #MAX_ZONES} 个 UTM 带的经纬度图层误差过大，直接拒绝。
+ *
+ * @author zhangyh
+ */
+record MetricFrame(MathTransform toWork, double centralMeridian) {
+
+    static final int MAX_ZONES = 2;
+
+    private static final double K0 = 0.9996;
+    /** WGS84 第二偏心率的平方 */
+    private static final double SECOND_ECCENTRICITY_SQUARED = 0.006739496742;
+
+    static MetricFrame of(CoordinateReferenceSystem crs, Envelope bounds) {
+        boolean geographic = crs == null
+                ? bounds.getMinX() >= -180 && bounds.getMaxX() <= 180 && bounds.getMinY() >= -90 && bounds.getMaxY() <= 90
+                : crs instanceof GeographicCRS;
+        if (!geographic || bounds.isNull()) {
+            return new MetricFrame(null, 0);
+        }
+        int zones = zone(bounds.getMaxX()) - zone(bounds.getMinX()) + 1;
+        if (zones > MAX_ZONES) {
+            throw new IllegalArgumentException(String.format(
+                    "经纬度图层跨越 %d 个 UTM 带（经度 %.3f ~ %.3f），超过 %d 个带时距离误差过大，请先投影到合适的坐标系",
+                    zones, bounds.getMinX(), bounds.getMaxX(), MAX_ZONES));
+        }
+        double centreX = (bounds.getMinX() + bounds.getMaxX()) / 2;
+        double centreY = (bounds.getMinY() + bounds.getMaxY()) / 2;
+        int zone = zone(centreX);
+        int code = (centreY >= 0 ? 32600 : 32700) + zone;
+        try {
+            return new MetricFrame(CRS.findMathTransform(crs == null ? DefaultGeographicCRS.WGS84 : crs,
+                    CRS.decode("EPSG:" + code, true), true), zone * 6 - 183);
+        } catch (FactoryException e) {
+            throw new IllegalStateException("投影到 EPSG:" + code + " 失败", e);
+        }
+    }
+
+    private static int zone(double longitude) {
+        return Math.min(60, Math.max(1, (int) Math.floor((longitude + 180) / 6) + 1));
+    }
+
+    Geometry forward(Geometry geometry) {
+        if (toWork == null || geometry.isEmpty()) {
+            return geometry;
+        }
+        try {
+            return JTS.transform(geometry, toWork);
+        } catch (TransformException e) {
+            throw new IllegalStateException("坐标转换失败", e);
+        }
+    }
+
+    /**
+     * 把一个点转换到米制坐标系，结果写入 target[0..1]，不创建对象
+     */
+    void forward(double x, double y, double[] target) {
+        target[0] = x;
+        target[1] = y;
+        if (toWork == null) {
+            return;
+        }
+        try {
+            toWork.transform(target, 0, target, 0, 1);
+        } catch (TransformException e) {
+            throw new IllegalStateException("坐标转换失败", e);
+        }
+    }
+
+    /**
+     * 经纬度点 (x, y) 处的 UTM 点比例因子（平面距离 / 椭球面距离），投影坐标系的图层为 1
+     * 横轴墨卡托比例因子的级数展开（Snyder, Map Projections, 式 8-11），带内误差小于 1e-8。
+     */
+    double scale(double x, double y) {
+        if (toWork == null) {
+            return 1;
+        }
+        double latitude = Math.toRadians(y);
+        double cos = Math.cos(latitude);
+        double tan = Math.tan(latitude);
+        double c = SECOND_ECCENTRICITY_SQUARED * cos * cos;
+        double t = tan * tan;
+        double a = cos * Math.toRadians(x - centralMeridian);
+        double a2 = a * a;
+        return K0 * (1 + (1 + c) * a2 / 2
+                + (5 - 4 * t + 42 * c + 13 * c * c - 28 * SECOND_ECCENTRICITY_SQUARED) * a2 * a2 / 24
+                + (61 - 148 * t + 16 * t * t) * a2 * a2 * a2 / 720);
+    }
+}
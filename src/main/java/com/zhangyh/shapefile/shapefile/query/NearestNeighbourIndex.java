@@ -0,0 +1,260 @@
+package com.zhangyh.shapefile.shapefile.query;
+
+import com.zhangyh.shapefile.shapefile.stream.ShapefileRecord;
+import com.zhangyh.shapefile.shapefile.stream.ShapefileStreamReader;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * 图层要素的 k 近邻索引，回答“离这里最近的 N 个 ZONE/点”
+ * 1. 加载时把全部几何转换到米制坐标系并展开成平坦数组（见 {@link FlatGeometries}），按 Hilbert 顺序打包成静态 R 树。
+ * 2. 查询用分支限界：按点到节点包围盒的距离从近到远展开，只有包围盒距离小于当前第 k 个候选时才计算精确距离，
+ * 面状要素内部的点距离为 0。经纬度图层的距离按查询点的 UTM 比例因子换算成实地距离（见 {@link MetricFrame}）。
+ * 3. 高频调用方通过 {@link #newQuery(int)} 拿到可复用的 {@link Query}，结果写在 Query 自带的数组里，稳定后单次查询不分配内存；
+ * 批量查询按 parallelism 切块并行，每个线程一个 Query。
+ * 索引构建后只读，可被多个线程共享；Query 只能被一个线程使用。
+ *
+ * @author zhangyh
+ */
+public class NearestNeighbourIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(NearestNeighbourIndex.class.getName());
+
+    private final CoordinateReferenceSystem crs;
+    private final SimpleFeatureType schema;
+    private final List<Geometry> geometries;
+    private final List<Object[]> attributes;
+    private final MetricFrame frame;
+    private final FlatGeometries flat;
+    private final PackedRTree tree;
+    private final PackedRTree.ItemDistance itemDistance;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private NearestNeighbourIndex(CoordinateReferenceSystem crs, SimpleFeatureType schema,
+                                  List<Geometry> geometries, List<Object[]> attributes) {
+        this.crs = crs;
+        this.schema = schema;
+        this.geometries = geometries;
+        this.attributes = attributes;
+        Envelope bounds = new Envelope();
+        for (Geometry geometry : geometries) {
+            if (geometry != null) {
+                bounds.expandToInclude(geometry.getEnvelopeInternal());
+            }
+        }
+        this.frame = MetricFrame.of(crs, bounds);
+        FlatGeometries.Builder builder = new FlatGeometries.Builder();
+        for (Geometry geometry : geometries) {
+            builder.add(geometry == null ? null : frame.forward(geometry));
+        }
+        this.flat = builder.build();
+        this.tree = new PackedRTree(flat.boxes);
+        this.itemDistance = flat::distanceSquared;
+    }
+
+    /**
+     * 读取整个图层建立索引，保留几何与属性
+     */
+    public static NearestNeighbourIndex load(Path shpFile) throws IOException {
+        List<Geometry> geometries = new ArrayList<>();
+        List<Object[]> attributes = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        try (ShapefileStreamReader reader = ShapefileStreamReader.open(shpFile)) {
+            while (reader.hasNext()) {
+                ShapefileRecord record = reader.next();
+                geometries.add(record.getGeometry());
+                attributes.add(record.getAttributes());
+            }
+            NearestNeighbourIndex index = new NearestNeighbourIndex(reader.getCrs(), reader.getSchema(), geometries, attributes);
+            LOGGER.info(String.format("近邻索引 %s: %d 个要素，耗时 %d ms", shpFile.getFileName(), geometries.size(),
+                    System.currentTimeMillis() - start));
+            return index;
+        }
+    }
+
+    /**
+     * 用内存中的几何建立索引，条目编号即列表下标
+     *
+     * @param crs 几何的坐标系，经纬度时距离按 UTM 投影后计算；为 null 时按坐标范围判断
+     */
+    public static NearestNeighbourIndex of(List<? extends Geometry> geometries, CoordinateReferenceSystem crs) {
+        return new NearestNeighbourIndex(crs, null, new ArrayList<>(geometries), null);
+    }
+
+    /**
+     * 批量查询的并发线程数
+     */
+    public NearestNeighbourIndex parallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    public int size() {
+        return geometries.size();
+    }
+
+    public CoordinateReferenceSystem getCrs() {
+        return crs;
+    }
+
+    /**
+     * 图层属性结构，{@link #of} 建立的索引为 null
+     */
+    public SimpleFeatureType getSchema() {
+        return schema;
+    }
+
+    /**
+     * 条目的原始几何（图层坐标系）
+     */
+    public Geometry getGeometry(int item) {
+        return geometries.get(item);
+    }
+
+    /**
+     * 条目的属性值，顺序与 schema 中非几何字段一致；{@link #of} 建立的索引为 null
+     */
+    public Object[] getAttributes(int item) {
+        return attributes == null ? null : attributes.get(item);
+    }
+
+    /**
+     * 创建一个可复用的查询对象，最多返回 k 个近邻
+     *
+     * @throws IllegalArgumentException k 小于 1
+     */
+    public Query newQuery(int k) {
+        checkK(k);
+        return new Query(k);
+    }
+
+    /**
+     * 单点查询，按距离升序返回最多 k 个近邻
+     */
+    public List<Neighbour> nearest(double x, double y, int k) {
+        Query query = newQuery(k);
+        int count = query.nearest(x, y);
+        List<Neighbour> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new Neighbour(query.item(i), query.distance(i)));
+        }
+        return result;
+    }
+
+    public Neighbour[][] nearest(Coordinate[] points, int k) {
+        return nearest(points, k, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * 批量查询，按 parallelism 并行
+     *
+     * @param maxDistance 最大搜索距离（米），超出的要素不返回
+     * @return 与 points 一一对应的近邻数组，按距离升序
+     */
+    public Neighbour[][] nearest(Coordinate[] points, int k, double maxDistance) {
+        checkK(k);
+        Neighbour[][] result = new Neighbour[points.length][];
+        ParallelBatch.run(points.length, parallelism, (from, to) -> answer(points, k, maxDistance, result, from, to));
+        return result;
+    }
+
+    private static void checkK(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("近邻个数必须大于 0: " + k);
+        }
+    }
+
+    private void answer(Coordinate[] points, int k, double maxDistance, Neighbour[][] result, int from, int to) {
+        Query query = newQuery(k);
+        for (int i = from; i < to; i++) {
+            int count = query.nearest(points[i].getX(), points[i].getY(), maxDistance);
+            Neighbour[] neighbours = new Neighbour[count];
+            for (int j = 0; j < count; j++) {
+                neighbours[j] = new Neighbour(query.item(j), query.distance(j));
+            }
+            result[i] = neighbours;
+        }
+    }
+
+    /**
+     * 可复用的单线程查询对象
+     * <pre>
+     * NearestNeighbourIndex.Query query = index.newQuery(3);
+     * int count = query.nearest(lon, lat);
+     * for (int i = 0; i &lt; count; i++) {
+     *     int item = query.item(i);
+     *     double metres = query.distance(i);
+     * }
+     * </pre>
+     */
+    public final class Query {
+
+        private final int k;
+        private final PackedRTree.Searcher searcher;
+        private final double[] point = new double[2];
+        private int count;
+        /** 本次查询点的比例因子，平面距离除以它得到实地距离 */
+        private double scale = 1;
+
+        private Query(int k) {
+            this.k = k;
+            this.searcher = new PackedRTree.Searcher(tree, k);
+        }
+
+        public int nearest(double x, double y) {
+            return nearest(x, y, Double.POSITIVE_INFINITY);
+        }
+
+        /**
+         * 查询离 (x, y) 最近的 k 个要素，坐标使用图层坐标系
+         *
+         * @return 找到的个数，结果通过 {@link #item(int)}、{@link #distance(int)} 读取，下一次查询前有效
+         */
+        public int nearest(double x, double y, double maxDistance) {
+            frame.forward(x, y, point);
+            scale = frame.scale(x, y);
+            count = searcher.nearest(point[0], point[1], k, maxDistance * scale, itemDistance);
+            return count;
+        }
+
+        /**
+         * 第 i 近的条目编号
+         */
+        public int item(int i) {
+            checkIndex(i);
+            return searcher.resultItems[i];
+        }
+
+        /**
+         * 第 i 近的距离，单位米（投影坐标系时为坐标单位）
+         */
+        public double distance(int i) {
+            checkIndex(i);
+            return searcher.resultDistances[i] / scale;
+        }
+
+        private void checkIndex(int i) {
+            if (i < 0 || i >= count) {
+                throw new IndexOutOfBoundsException("结果序号 " + i + " 超出范围 [0, " + count + ")");
+            }
+        }
+    }
+
+    /**
+     * 一个近邻结果
+     *
+     * @param item     条目编号（图层中的记录顺序，从 0 开始）
+     * @param distance 距离，单位米（投影坐标系时为坐标单位）
+     */
+    public record Neighbour(int item, double distance) {
+    }
+}
@@ -0,0 +1,351 @@
+package com.zhangyh.shapefile.shapefile.query;
+
+import java.util.Arrays;
+
+/**
+ * 静态打包 R 树：按包围盒中心的 Hilbert 值排序后自底向上每 {@value #NODE_SIZE} 个节点打包一层
+ * 所有节点保存在平坦的 double[]/int[] 数组中，查询时不创建对象；搜索状态放在调用方持有的 {@link Searcher} 中复用，
+ * 稳定运行后单次查询不分配内存。
+ * <p>
+ * 节点 i 的包围盒为 boxes[4i..4i+3]（minX, minY, maxX, maxY）；前 size 个节点是叶子，indices 为条目编号，
+ * 其余为内部节点，indices 为第一个子节点的下标。
+ *
+ * @author zhangyh
+ */
+final class PackedRTree {
+
+    static final int NODE_SIZE = 16;
+
+    final int size;
+    final double[] boxes;
+    final int[] indices;
+    /** 每层节点下标的结束位置（不含） */
+    final int[] levelBounds;
+
+    /**
+     * @param itemBoxes 每个条目的包围盒，按 minX, minY, maxX, maxY 依次排列
+     */
+    PackedRTree(double[] itemBoxes) {
+        this.size = itemBoxes.length / 4;
+        int n = size;
+        int numNodes = n;
+        int[] bounds = new int[32];
+        int levels = 0;
+        bounds[levels++] = n * 4;
+        do {
+            n = (n + NODE_SIZE - 1) / NODE_SIZE;
+            numNodes += n;
+            bounds[levels++] = numNodes * 4;
+        } while (n > 1);
+        this.levelBounds = Arrays.copyOf(bounds, levels);
+        this.boxes = new double[numNodes * 4];
+        this.indices = new int[numNodes];
+        if (size == 0) {
+            Arrays.fill(boxes, Double.NaN);
+            return;
+        }
+
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            if (Double.isInfinite(itemBoxes[4 * i])) {
+                continue;
+            }
+            minX = Math.min(minX, itemBoxes[4 * i]);
+            minY = Math.min(minY, itemBoxes[4 * i + 1]);
+            maxX = Math.max(maxX, itemBoxes[4 * i + 2]);
+            maxY = Math.max(maxY, itemBoxes[4 * i + 3]);
+        }
+        double width = maxX - minX > 0 ? maxX - minX : 1;
+        double height = maxY - minY > 0 ? maxY - minY : 1;
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            double cx = (itemBoxes[4 * i] + itemBoxes[4 * i + 2]) / 2;
+            double cy = (itemBoxes[4 * i + 1] + itemBoxes[4 * i + 3]) / 2;
+            int hx = (int) Math.max(0, Math.min(0xFFFF, 0xFFFF * (cx - minX) / width));
+            int hy = (int) Math.max(0, Math.min(0xFFFF, 0xFFFF * (cy - minY) / height));
+            // 高 32 位为 Hilbert 值，低 32 位为条目编号，排序后即得条目顺序
+            keys[i] = ((long) (hilbert(hx, hy) >>> 1) << 32) | i;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < size; i++) {
+            int item = (int) keys[i];
+            System.arraycopy(itemBoxes, 4 * item, boxes, 4 * i, 4);
+            indices[i] = item;
+        }
+
+        int pos = 0;
+        int node = size;
+        for (int level = 0; level < levelBounds.length - 1; level++) {
+            int end = levelBounds[level] / 4;
+            while (pos < end) {
+                int first = pos;
+                double nodeMinX = Double.POSITIVE_INFINITY;
+                double nodeMinY = Double.POSITIVE_INFINITY;
+                double nodeMaxX = Double.NEGATIVE_INFINITY;
+                double nodeMaxY = Double.NEGATIVE_INFINITY;
+                for (int j = 0; j < NODE_SIZE && pos < end; j++, pos++) {
+                    nodeMinX = Math.min(nodeMinX, boxes[4 * pos]);
+                    nodeMinY = Math.min(nodeMinY, boxes[4 * pos + 1]);
+                    nodeMaxX = Math.max(nodeMaxX, boxes[4 * pos + 2]);
+                    nodeMaxY = Math.max(nodeMaxY, boxes[4 * pos + 3]);
+                }
+                boxes[4 * node] = nodeMinX;
+                boxes[4 * node + 1] = nodeMinY;
+                boxes[4 * node + 2] = nodeMaxX;
+                boxes[4 * node + 3] = nodeMaxY;
+                indices[node] = first;
+                node++;
+            }
+        }
+    }
+
+    int root() {
+        return indices.length - 1;
+    }
+
+    boolean isLeaf(int node) {
+        return node < size;
+    }
+
+    /**
+     * 内部节点的子节点范围结束位置（不含）
+     */
+    int childrenEnd(int node) {
+        int first = indices[node];
+        int levelEnd = 0;
+        for (int bound : levelBounds) {
+            if (bound / 4 > first) {
+                levelEnd = bound / 4;
+                break;
+            }
+        }
+        return Math.min(first + NODE_SIZE, levelEnd);
+    }
+
+    /**
+     * 点到节点包围盒的距离平方，点在盒内为 0
+     */
+    double boxDistanceSquared(int node, double x, double y) {
+        double dx = axisDistance(x, boxes[4 * node], boxes[4 * node + 2]);
+        double dy = axisDistance(y, boxes[4 * node + 1], boxes[4 * node + 3]);
+        return dx * dx + dy * dy;
+    }
+
+    private static double axisDistance(double value, double min, double max) {
+        return value < min ? min - value : value > max ? value - max : 0;
+    }
+
+    /**
+     * 16 位坐标的 Hilbert 曲线序号
+     */
+    private static int hilbert(int x, int y) {
+        int a = x ^ y;
+        int b = 0xFFFF ^ a;
+        int c = 0xFFFF ^ (x | y);
+        int d = x & (y ^ 0xFFFF);
+
+        int A = a | (b >> 1);
+        int B = (a >> 1) ^ a;
+        int C = ((c >> 1) ^ (b & (d >> 1))) ^ c;
+        int D = ((a & (c >> 1)) ^ (d >> 1)) ^ d;
+
+        a = A; b = B; c = C; d = D;
+        A = (a & (a >> 2)) ^ (b & (b >> 2));
+        B = (a & (b >> 2)) ^ (b & ((a ^ b) >> 2));
+        C ^= (a & (c >> 2)) ^ (b & (d >> 2));
+        D ^= (b & (c >> 2)) ^ ((a ^ b) & (d >> 2));
+
+        a = A; b = B; c = C; d = D;
+        A = (a & (a >> 4)) ^ (b & (b >> 4));
+        B = (a & (b >> 4)) ^ (b & ((a ^ b) >> 4));
+        C ^= (a & (c >> 4)) ^ (b & (d >> 4));
+        D ^= (b & (c >> 4)) ^ ((a ^ b) & (d >> 4));
+
+        a = A; b = B; c = C; d = D;
+        C ^= (a & (c >> 8)) ^ (b & (d >> 8));
+        D ^= (b & (c >> 8)) ^ ((a ^ b) & (d >> 8));
+
+        a = C ^ (C >> 1);
+        b = D ^ (D >> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xFFFF ^ (i0 | a));
+
+        i0 = (i0 | (i0 << 8)) & 0x00FF00FF;
+        i0 = (i0 | (i0 << 4)) & 0x0F0F0F0F;
+        i0 = (i0 | (i0 << 2)) & 0x33333333;
+        i0 = (i0 | (i0 << 1)) & 0x55555555;
+
+        i1 = (i1 | (i1 << 8)) & 0x00FF00FF;
+        i1 = (i1 | (i1 << 4)) & 0x0F0F0F0F;
+        i1 = (i1 | (i1 << 2)) & 0x33333333;
+        i1 = (i1 | (i1 << 1)) & 0x55555555;
+
+        return (i1 << 1) | i0;
+    }
+
+    /**
+     * 条目的精确距离（平方），可被多个线程同时调用
+     */
+    @FunctionalInterface
+    interface ItemDistance {
+        double distanceSquared(int item, double x, double y);
+    }
+
+    /**
+     * 一次查询的可复用状态：最小堆与遍历栈，只能被一个线程使用
+     * 分支限界：按“到包围盒的距离”从近到远展开节点，条目弹出时再计算精确距离并以精确值重新入堆，
+     * 精确值先于所有更远的下界弹出时即为确定的近邻，其余分支被剪掉。
+     */
+    static final class Searcher {
+
+        private static final int NODE = 0;
+        private static final int ITEM_BOUND = 1;
+        private static final int ITEM_EXACT = 2;
+
+        private final PackedRTree tree;
+        private double[] heapKeys = new double[64];
+        private int[] heapValues = new int[64];
+        private int heapSize;
+        private int[] stack = new int[64];
+
+        final int[] resultItems;
+        final double[] resultDistances;
+
+        Searcher(PackedRTree tree, int k) {
+            this.tree = tree;
+            this.resultItems = new int[Math.max(1, k)];
+            this.resultDistances = new double[Math.max(1, k)];
+        }
+
+        /**
+         * k 近邻，结果按距离升序写入 resultItems/resultDistances
+         *
+         * @param maxDistance 最大搜索距离，超出的条目不返回
+         * @return 找到的个数
+         */
+        int nearest(double x, double y, int k, double maxDistance, ItemDistance distance) {
+            k = Math.min(k, resultItems.length);
+            if (tree.size == 0 || k <= 0) {
+                return 0;
+            }
+            double maxSquared = maxDistance * maxDistance;
+            heapSize = 0;
+            int found = 0;
+            push(tree.boxDistanceSquared(tree.root(), x, y), tree.root() * 4 + NODE);
+            while (heapSize > 0 && found < k) {
+                double key = heapKeys[0];
+                int value = pop();
+                if (key > maxSquared || key == Double.POSITIVE_INFINITY) {
+                    // 堆顶已超出范围，剩余条目只会更远；空几何的距离为无穷大
+                    break;
+                }
+                int type = value & 3;
+                int index = value >>> 2;
+                if (type == ITEM_EXACT) {
+                    resultItems[found] = index;
+                    resultDistances[found] = Math.sqrt(key);
+                    found++;
+                } else if (type == ITEM_BOUND) {
+                    push(distance.distanceSquared(index, x, y), index * 4 + ITEM_EXACT);
+                } else if (tree.isLeaf(index)) {
+                    push(key, tree.indices[index] * 4 + ITEM_BOUND);
+                } else {
+                    int end = tree.childrenEnd(index);
+                    for (int child = tree.indices[index]; child < end; child++) {
+                        double childKey = tree.boxDistanceSquared(child, x, y);
+                        if (childKey <= maxSquared) {
+                            push(childKey, child * 4 + NODE);
+                        }
+                    }
+                }
+            }
+            return found;
+        }
+
+        /**
+         * 水平射线 [x, +∞) × {y} 与条目的交点个数之和，用于点在多边形内判断
+         */
+        int crossings(double x, double y, RayCrossing crossing) {
+            if (tree.size == 0) {
+                return 0;
+            }
+            int count = 0;
+            int top = 0;
+            stack[top++] = tree.root();
+            while (top > 0) {
+                int node = stack[--top];
+                double[] boxes = tree.boxes;
+                if (boxes[4 * node + 2] < x || boxes[4 * node + 1] > y || boxes[4 * node + 3] < y) {
+                    continue;
+                }
+                if (tree.isLeaf(node)) {
+                    count += crossing.crossings(tree.indices[node], x, y);
+                    continue;
+                }
+                int end = tree.childrenEnd(node);
+                for (int child = tree.indices[node]; child < end; child++) {
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top++] = child;
+                }
+            }
+            return count;
+        }
+
+        private void push(double key, int value) {
+            if (heapSize == heapKeys.length) {
+                heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+                heapValues = Arrays.copyOf(heapValues, heapSize * 2);
+            }
+            int i = heapSize++;
+            while (i > 0) {
+                int parent = (i - 1) >> 1;
+                if (heapKeys[parent] <= key) {
+                    break;
+                }
+                heapKeys[i] = heapKeys[parent];
+                heapValues[i] = heapValues[parent];
+                i = parent;
+            }
+            heapKeys[i] = key;
+            heapValues[i] = value;
+        }
+
+        private int pop() {
+            int top = heapValues[0];
+            heapSize--;
+            if (heapSize > 0) {
+                double key = heapKeys[heapSize];
+                int value = heapValues[heapSize];
+                int i = 0;
+                while (true) {
+                    int left = 2 * i + 1;
+                    if (left >= heapSize) {
+                        break;
+                    }
+                    int right = left + 1;
+                    int smallest = right < heapSize && heapKeys[right] < heapKeys[left] ? right : left;
+                    if (heapKeys[smallest] >= key) {
+                        break;
+                    }
+                    heapKeys[i] = heapKeys[smallest];
+                    heapValues[i] = heapValues[smallest];
+                    i = smallest;
+                }
+                heapKeys[i] = key;
+                heapValues[i] = value;
+            }
+            return top;
+        }
+    }
+
+    @FunctionalInterface
+    interface RayCrossing {
+        int crossings(int item, double x, double y);
+    }
+}
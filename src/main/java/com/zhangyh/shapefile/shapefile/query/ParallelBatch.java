@@ -0,0 +1,119 @@
+package com.zhangyh.shapefile.shapefile.query;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 批量查询的并行执行：按固定块大小切分下标区间，调用线程和共享线程池中的若干个帮手轮流领取块，块内由任务自己复用查询对象
+ * 线程池在第一次批量查询时创建、随 JVM 存活（守护线程，大小为 CPU 核数），各索引与各次调用共用，不再每次调用新建线程池。
+ * 调用线程自己也领取块，线程池被其他批次占满时由调用线程做完剩余的块，嵌套调用也不会死锁。
+ *
+ * @author zhangyh
+ */
+final class ParallelBatch {
+
+    static final int CHUNK = 1024;
+
+    private ParallelBatch() {
+    }
+
+    static void run(int count, int parallelism, RangeTask task) {
+        int chunks = (count + CHUNK - 1) / CHUNK;
+        if (chunks <= 1 || parallelism == 1) {
+            task.run(0, count);
+            return;
+        }
+        Batch batch = new Batch(count, chunks, task);
+        int helpers = Math.min(parallelism, chunks) - 1;
+        for (int i = 0; i < helpers; i++) {
+            try {
+                Workers.EXECUTOR.execute(batch::drain);
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+        batch.drain();
+        batch.await();
+    }
+
+    @FunctionalInterface
+    interface RangeTask {
+        void run(int from, int to);
+    }
+
+    /**
+     * 共享线程池，按需初始化
+     */
+    private static final class Workers {
+        private static final AtomicInteger COUNTER = new AtomicInteger();
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), runnable -> {
+                    Thread thread = new Thread(runnable, "query-batch-" + COUNTER.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * 一次批量查询：块号由计数器分配，每个块无论成功与否都计数一次，全部计完即结束
+     */
+    private static final class Batch {
+        private final int count;
+        private final int chunks;
+        private final RangeTask task;
+        private final AtomicInteger next = new AtomicInteger();
+        private final CountDownLatch done;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Batch(int count, int chunks, RangeTask task) {
+            this.count = count;
+            this.chunks = chunks;
+            this.task = task;
+            this.done = new CountDownLatch(chunks);
+        }
+
+        /**
+         * 领取并执行剩余的块；已经失败时只领取不执行
+         */
+        void drain() {
+            int chunk;
+            while ((chunk = next.getAndIncrement()) < chunks) {
+                try {
+                    if (failure.get() == null) {
+                        int from = chunk * CHUNK;
+                        task.run(from, Math.min(count, from + CHUNK));
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        }
+
+        void await() {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                // 让帮手停止执行剩余的块
+                failure.compareAndSet(null, e);
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("批量查询被中断", e);
+            }
+            Throwable error = failure.get();
+            if (error instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (error instanceof Error fatal) {
+                throw fatal;
+            }
+            if (error != null) {
+                throw new IllegalStateException("批量查询失败", error);
+            }
+        }
+    }
+}
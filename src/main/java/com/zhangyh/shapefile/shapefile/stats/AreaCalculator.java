@@ -0,0 +1,168 @@
+package com.zhangyh.shapefile.shapefile.stats;
+
+import org.geotools.api.referencing.FactoryException;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.api.referencing.crs.GeographicCRS;
+import org.geotools.api.referencing.datum.Ellipsoid;
+import org.geotools.api.referencing.operation.MathTransform;
+import org.geotools.api.referencing.operation.TransformException;
+import org.geotools.geometry.jts.JTS;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygon;
+import si.uom.SI;
+
+import javax.measure.Unit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * 按图层坐标系把几何面积换算为平方米，实例线程安全，可被多个统计线程共享
+ * 原理：
+ * 1. 投影坐标系：平面面积 × 坐标单位换算系数的平方。
+ * 2. 经纬度 + GEODESIC：把纬度 φ 换成等积纬度 β，在半径 R<sub>q</sub> 的等积球上用球面梯形公式
+ * A = R<sub>q</sub>² / 2 · Σ (λ<sub>i+1</sub> − λ<sub>i−1</sub>) · sin β<sub>i</sub> 计算。
+ * 等积映射保持面积不变，田块尺度下误差远小于 0.01%。
+ * 3. 经纬度 + AUTO_UTM：按要素中心选择 WGS84 UTM 带（EPSG:326xx/327xx）投影后取平面面积。
+ *
+ * @author zhangyh
+ */
+final class AreaCalculator {
+
+    private static final Logger LOGGER = Logger.getLogger(AreaCalculator.class.getName());
+
+    private final CoordinateReferenceSystem crs;
+    private final AreaMethod method;
+    /** 投影坐标系：坐标单位到米的换算系数；经纬度坐标系为 NaN */
+    private final double unitToMetre;
+
+    /** 椭球第一偏心率及其平方 */
+    private final double e;
+    private final double e2;
+    /** 极点处的 q 值与等积球半径平方 */
+    private final double qp;
+    private final double authalicRadius2;
+
+    private final Map<Integer, MathTransform> utmTransforms = new ConcurrentHashMap<>();
+
+    private AreaCalculator(CoordinateReferenceSystem crs, AreaMethod method, double unitToMetre, Ellipsoid ellipsoid) {
+        this.crs = crs;
+        this.method = method;
+        this.unitToMetre = unitToMetre;
+        double a = ellipsoid.getSemiMajorAxis();
+        double b = ellipsoid.getSemiMinorAxis();
+        this.e2 = 1 - (b * b) / (a * a);
+        this.e = Math.sqrt(e2);
+        this.qp = e2 == 0 ? 2 : q(1.0);
+        this.authalicRadius2 = a * a * qp / 2;
+    }
+
+    /**
+     * @param crs    图层坐标系，为 null 时按范围推断：落在经纬度取值范围内视为 WGS84，否则视为以米为单位的投影坐标
+     * @param bounds 图层范围，仅在 crs 为 null 时使用
+     */
+    static AreaCalculator of(CoordinateReferenceSystem crs, Envelope bounds, AreaMethod method) {
+        if (crs == null) {
+            boolean lonLat = bounds == null || bounds.isNull()
+                    || (bounds.getMinX() >= -180 && bounds.getMaxX() <= 180 && bounds.getMinY() >= -90 && bounds.getMaxY() <= 90);
+            LOGGER.warning("图层没有 .prj，按" + (lonLat ? " WGS84 经纬度" : "以米为单位的投影坐标") + "计算面积");
+            if (!lonLat) {
+                return new AreaCalculator(null, method, 1.0, DefaultGeographicCRS.WGS84.getDatum().getEllipsoid());
+            }
+            crs = DefaultGeographicCRS.WGS84;
+        }
+        if (crs instanceof GeographicCRS geographic) {
+            return new AreaCalculator(crs, method, Double.NaN, geographic.getDatum().getEllipsoid());
+        }
+        return new AreaCalculator(crs, method, unitToMetre(crs), DefaultGeographicCRS.WGS84.getDatum().getEllipsoid());
+    }
+
+    private static double unitToMetre(CoordinateReferenceSystem crs) {
+        Unit<?> unit = crs.getCoordinateSystem().getAxis(0).getUnit();
+        try {
+            return unit == null ? 1.0 : unit.getConverterToAny(SI.METRE).convert(1.0);
+        } catch (Exception e) {
+            LOGGER.warning("无法识别坐标单位 " + unit + "，按米计算面积");
+            return 1.0;
+        }
+    }
+
+    /**
+     * 面积（平方米），非面状几何返回 0
+     */
+    double area(Geometry geometry) {
+        if (geometry == null || geometry.isEmpty() || geometry.getDimension() < 2) {
+            return 0;
+        }
+        if (!Double.isNaN(unitToMetre)) {
+            return geometry.getArea() * unitToMetre * unitToMetre;
+        }
+        if (method == AreaMethod.AUTO_UTM) {
+            return utmArea(geometry);
+        }
+        double area = 0;
+        for (int i = 0; i < geometry.getNumGeometries(); i++) {
+            Geometry part = geometry.getGeometryN(i);
+            if (part instanceof Polygon polygon) {
+                area += Math.abs(ringArea(polygon.getExteriorRing().getCoordinateSequence()));
+                for (int j = 0; j < polygon.getNumInteriorRing(); j++) {
+                    area -= Math.abs(ringArea(polygon.getInteriorRingN(j).getCoordinateSequence()));
+                }
+            } else if (part != geometry) {
+                area += area(part);
+            }
+        }
+        return area;
+    }
+
+    private double ringArea(CoordinateSequence ring) {
+        int n = ring.size();
+        if (n < 4) {
+            return 0;
+        }
+        // 闭合环首尾相同，下标按 n - 1 取模
+        int m = n - 1;
+        double sum = 0;
+        for (int i = 0; i < m; i++) {
+            double lonPrev = ring.getX((i + m - 1) % m);
+            double lonNext = ring.getX((i + 1) % m);
+            sum += Math.toRadians(lonNext - lonPrev) * sinAuthalic(ring.getY(i));
+        }
+        return sum * authalicRadius2 / 2;
+    }
+
+    /**
+     * sin β = q(φ) / q<sub>p</sub>
+     */
+    private double sinAuthalic(double latitude) {
+        double sinPhi = Math.sin(Math.toRadians(latitude));
+        return e2 == 0 ? sinPhi : q(sinPhi) / qp;
+    }
+
+    private double q(double sinPhi) {
+        double esin = e * sinPhi;
+        return (1 - e2) * (sinPhi / (1 - esin * esin) - Math.log((1 - esin) / (1 + esin)) / (2 * e));
+    }
+
+    private double utmArea(Geometry geometry) {
+        Envelope envelope = geometry.getEnvelopeInternal();
+        double lon = (envelope.getMinX() + envelope.getMaxX()) / 2;
+        double lat = (envelope.getMinY() + envelope.getMaxY()) / 2;
+        int zone = Math.min(60, Math.max(1, (int) Math.floor((lon + 180) / 6) + 1));
+        int code = (lat >= 0 ? 32600 : 32700) + zone;
+        try {
+            MathTransform transform = utmTransforms.get(code);
+            if (transform == null) {
+                transform = CRS.findMathTransform(crs, CRS.decode("EPSG:" + code, true), true);
+                utmTransforms.put(code, transform);
+            }
+            return JTS.transform(geometry, transform).getArea();
+        } catch (FactoryException | TransformException e) {
+            throw new IllegalStateException("投影到 EPSG:" + code + " 失败", e);
+        }
+    }
+}
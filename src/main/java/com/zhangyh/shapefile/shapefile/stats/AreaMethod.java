@@ -0,0 +1,13 @@
+package com.zhangyh.shapefile.shapefile.stats;
+
+/**
+ * 经纬度图层的面积计算方式，投影坐标系的图层始终按平面面积计算
+ *
+ * @author zhangyh
+ */
+public enum AreaMethod {
+    /** 椭球面积：按等积（authalic）纬度映射到等积球面上计算，不需要投影 */
+    GEODESIC,
+    /** 按每个要素中心所在的 UTM 带投影后计算平面面积 */
+    AUTO_UTM
+}
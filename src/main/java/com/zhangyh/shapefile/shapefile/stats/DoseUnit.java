@@ -0,0 +1,115 @@
+package com.zhangyh.shapefile.shapefile.stats;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 处方剂量单位（DOSE_UNIT），形如“用量单位/面积单位”，如 kg/ha、L/ac、seeds/m2、公斤/亩
+ * 产品用量统一换算为基本单位：质量为 kg，体积为 L，计数（种子、株）为个。
+ *
+ * @param text           原始单位文本
+ * @param baseUnit       产品用量的基本单位
+ * @param perSquareMetre 剂量为 1 时每平方米的用量（基本单位）
+ * @author zhangyh
+ */
+public record DoseUnit(String text, String baseUnit, double perSquareMetre) {
+
+    private static final Map<String, Double> MASS = new HashMap<>();
+    private static final Map<String, Double> VOLUME = new HashMap<>();
+    private static final Map<String, Double> COUNT = new HashMap<>();
+    private static final Map<String, Double> AREA = new HashMap<>();
+
+    static {
+        MASS.put("g", 0.001);
+        MASS.put("克", 0.001);
+        MASS.put("kg", 1.0);
+        MASS.put("千克", 1.0);
+        MASS.put("公斤", 1.0);
+        MASS.put("斤", 0.5);
+        MASS.put("t", 1000.0);
+        MASS.put("吨", 1000.0);
+        MASS.put("lb", 0.45359237);
+        MASS.put("lbs", 0.45359237);
+        MASS.put("oz", 0.028349523125);
+
+        VOLUME.put("ml", 0.001);
+        VOLUME.put("毫升", 0.001);
+        VOLUME.put("l", 1.0);
+        VOLUME.put("升", 1.0);
+        VOLUME.put("gal", 3.785411784);
+        VOLUME.put("qt", 0.946352946);
+        VOLUME.put("pt", 0.473176473);
+        VOLUME.put("floz", 0.0295735295625);
+
+        COUNT.put("seed", 1.0);
+        COUNT.put("seeds", 1.0);
+        COUNT.put("粒", 1.0);
+        COUNT.put("plant", 1.0);
+        COUNT.put("plants", 1.0);
+        COUNT.put("株", 1.0);
+        COUNT.put("ks", 1000.0);
+        COUNT.put("kseeds", 1000.0);
+
+        AREA.put("m2", 1.0);
+        AREA.put("平方米", 1.0);
+        AREA.put("ha", 10000.0);
+        AREA.put("公顷", 10000.0);
+        AREA.put("ac", 4046.8564224);
+        AREA.put("acre", 4046.8564224);
+        AREA.put("亩", 10000.0 / 15);
+        AREA.put("mu", 10000.0 / 15);
+        AREA.put("km2", 1_000_000.0);
+    }
+
+    /** ConcurrentHashMap 不能缓存 null，用占位值表示无法识别 */
+    private static final DoseUnit UNKNOWN = new DoseUnit("", "", Double.NaN);
+
+    private static final Map<String, DoseUnit> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 解析单位文本，无法识别时返回 null
+     */
+    public static DoseUnit parse(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        return CACHE.computeIfAbsent(text, DoseUnit::doParse).orNull();
+    }
+
+    private static DoseUnit doParse(String text) {
+        String normalized = text.trim().toLowerCase(Locale.ROOT)
+                .replace(" ", "").replace("²", "2").replace("/per", "/").replace("per", "/");
+        int slash = normalized.indexOf('/');
+        if (slash <= 0) {
+            return UNKNOWN;
+        }
+        Double area = AREA.get(normalized.substring(slash + 1));
+        String quantity = normalized.substring(0, slash);
+        if (area == null) {
+            return UNKNOWN;
+        }
+        if (MASS.containsKey(quantity)) {
+            return new DoseUnit(text, "kg", MASS.get(quantity) / area);
+        }
+        if (VOLUME.containsKey(quantity)) {
+            return new DoseUnit(text, "L", VOLUME.get(quantity) / area);
+        }
+        if (COUNT.containsKey(quantity)) {
+            return new DoseUnit(text, "count", COUNT.get(quantity) / area);
+        }
+        return UNKNOWN;
+    }
+
+    private DoseUnit orNull() {
+        return this == UNKNOWN ? null : this;
+    }
+
+    /**
+     * 给定剂量与面积（平方米）下的产品用量（基本单位）
+     */
+    public double quantity(double dose, double areaSquareMetre) {
+        return dose * perSquareMetre * areaSquareMetre;
+    }
+}
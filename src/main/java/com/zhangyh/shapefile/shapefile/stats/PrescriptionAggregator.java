@@ -0,0 +1,245 @@
+package com.zhangyh.shapefile.shapefile.stats;
+
+import com.zhangyh.shapefile.shapefile.stream.ShapefileCodec;
+import com.zhangyh.shapefile.shapefile.stream.ShapefileRecord;
+import com.zhangyh.shapefile.shapefile.stream.ShapefileStreamReader;
+import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 处方图流式汇总：每个 ZONE 的面积、每个 PRODUCT 的用量（面积 × DOSE，按 DOSE_UNIT 换算）
+ * 原理：
+ * 1. 调用线程顺序读取 .shp/.dbf，只搬运原始字节，每 {@value #BATCH_SIZE} 条记录组成一批放入有界队列。
+ * 2. 若干统计线程从队列取批次，解析几何与属性、计算面积（见 {@link AreaCalculator}），累加到各自的局部汇总。
+ * 3. 全部读取完成后合并局部汇总。内存占用只与队列容量有关，与图层大小无关。
+ * .dbf 中带删除标记的记录不计入汇总。
+ * <p>
+ * 多个文件（如全国一批处方图）可以一次传入，共用同一组统计线程，结果汇总在一起。
+ *
+ * @author zhangyh
+ */
+public class PrescriptionAggregator {
+
+    private static final int BATCH_SIZE = 1024;
+
+    private String zoneField = "ZONE";
+    private String productField = "PRODUCT";
+    private String doseField = "DOSE";
+    private String unitField = "DOSE_UNIT";
+    private String defaultUnit;
+    private AreaMethod areaMethod = AreaMethod.GEODESIC;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    public PrescriptionAggregator zoneField(String zoneField) {
+        this.zoneField = zoneField;
+        return this;
+    }
+
+    public PrescriptionAggregator productField(String productField) {
+        this.productField = productField;
+        return this;
+    }
+
+    public PrescriptionAggregator doseField(String doseField) {
+        this.doseField = doseField;
+        return this;
+    }
+
+    public PrescriptionAggregator unitField(String unitField) {
+        this.unitField = unitField;
+        return this;
+    }
+
+    /**
+     * 图层没有单位字段或单位为空时使用的剂量单位，如 kg/ha
+     */
+    public PrescriptionAggregator defaultUnit(String defaultUnit) {
+        this.defaultUnit = defaultUnit;
+        return this;
+    }
+
+    public PrescriptionAggregator areaMethod(AreaMethod areaMethod) {
+        this.areaMethod = areaMethod;
+        return this;
+    }
+
+    public PrescriptionAggregator parallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    public PrescriptionSummary aggregate(Path... shpFiles) throws IOException {
+        return aggregate(List.of(shpFiles));
+    }
+
+    public PrescriptionSummary aggregate(Collection<Path> shpFiles) throws IOException {
+        try (Pipeline pipeline = new Pipeline()) {
+            for (Path shpFile : shpFiles) {
+                try (ShapefileStreamReader reader = ShapefileStreamReader.open(shpFile)) {
+                    pipeline.feed(reader);
+                }
+            }
+            return pipeline.finish();
+        }
+    }
+
+    /**
+     * 汇总一个已打开的图层（如 zip 包中的图层），不关闭 reader
+     */
+    public PrescriptionSummary aggregate(ShapefileStreamReader reader) throws IOException {
+        try (Pipeline pipeline = new Pipeline()) {
+            pipeline.feed(reader);
+            return pipeline.finish();
+        }
+    }
+
+    /**
+     * 一个图层的面积计算方式与字段位置
+     */
+    private record Layer(AreaCalculator calculator, int zone, int product, int dose, int unit) {
+    }
+
+    private record Batch(Layer layer, List<ShapefileRecord> records) {
+    }
+
+    private static final Batch END = new Batch(null, List.of());
+
+    private final class Pipeline implements AutoCloseable {
+
+        private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(parallelism * 2);
+        private final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        private final List<Future<PrescriptionSummary>> workers = new ArrayList<>();
+
+        Pipeline() {
+            for (int i = 0; i < parallelism; i++) {
+                workers.add(executor.submit(this::work));
+            }
+        }
+
+        void feed(ShapefileStreamReader reader) throws IOException {
+            DbaseFileHeader header = reader.getDbaseHeader();
+            Layer layer = new Layer(AreaCalculator.of(reader.getCrs(), reader.getBounds(), areaMethod),
+                    ShapefileCodec.fieldIndex(header, zoneField), ShapefileCodec.fieldIndex(header, productField),
+                    ShapefileCodec.fieldIndex(header, doseField), ShapefileCodec.fieldIndex(header, unitField));
+            List<ShapefileRecord> records = new ArrayList<>(BATCH_SIZE);
+            while (reader.hasNext()) {
+                ShapefileRecord record = reader.next();
+                if (record.isDeleted()) {
+                    continue;
+                }
+                records.add(record);
+                if (records.size() == BATCH_SIZE) {
+                    put(new Batch(layer, records));
+                    records = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (!records.isEmpty()) {
+                put(new Batch(layer, records));
+            }
+        }
+
+        PrescriptionSummary finish() throws IOException {
+            for (int i = 0; i < parallelism; i++) {
+                put(END);
+            }
+            PrescriptionSummary summary = new PrescriptionSummary();
+            for (Future<PrescriptionSummary> worker : workers) {
+                summary.merge(result(worker));
+            }
+            return summary;
+        }
+
+        /**
+         * 队列满时等待；统计线程异常退出后不再等待，直接抛出其异常
+         */
+        private void put(Batch batch) throws IOException {
+            try {
+                while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                    for (Future<PrescriptionSummary> worker : workers) {
+                        if (worker.isDone()) {
+                            result(worker);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("汇总被中断");
+            }
+        }
+
+        private PrescriptionSummary result(Future<PrescriptionSummary> worker) throws IOException {
+            try {
+                return worker.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("汇总被中断");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+
+        private PrescriptionSummary work() throws InterruptedException {
+            PrescriptionSummary summary = new PrescriptionSummary();
+            while (true) {
+                Batch batch = queue.take();
+                if (batch == END) {
+                    return summary;
+                }
+                Layer layer = batch.layer();
+                for (ShapefileRecord record : batch.records()) {
+                    Object[] values = record.getAttributes();
+                    String unit = text(values, layer.unit());
+                    summary.add(text(values, layer.zone()), text(values, layer.product()),
+                            unit == null || unit.isEmpty() ? defaultUnit : unit,
+                            number(values, layer.dose()),
+                            layer.calculator().area(record.getGeometry()));
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String text(Object[] values, int index) {
+        if (index < 0 || index >= values.length || values[index] == null) {
+            return null;
+        }
+        return values[index].toString().trim();
+    }
+
+    private static Double number(Object[] values, int index) {
+        if (index < 0 || index >= values.length || values[index] == null) {
+            return null;
+        }
+        if (values[index] instanceof Number number) {
+            return number.doubleValue();
+        }
+        try {
+            return Double.valueOf(values[index].toString().trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
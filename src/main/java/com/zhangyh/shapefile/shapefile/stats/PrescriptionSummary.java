@@ -0,0 +1,207 @@
+package com.zhangyh.shapefile.shapefile.stats;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 处方图汇总：每个 ZONE 的面积、每个 PRODUCT 的施用面积与用量
+ * 每个统计线程持有一个局部汇总，扫描结束后通过 {@link #merge} 合并，统计过程中无需加锁。
+ *
+ * @author zhangyh
+ */
+public class PrescriptionSummary {
+
+    private final Map<String, Totals> zones = new HashMap<>();
+    private final Map<ProductKey, Totals> products = new HashMap<>();
+    private long records;
+    private long unresolved;
+    private double area;
+
+    /**
+     * 累加一条记录
+     *
+     * @param unitText 原始剂量单位
+     * @param dose     剂量，缺失时为 null
+     * @param area     面积（平方米）
+     */
+    void add(String zone, String product, String unitText, Double dose, double area) {
+        records++;
+        this.area += area;
+        zones.computeIfAbsent(zone, k -> new Totals()).add(area, 0);
+
+        DoseUnit unit = DoseUnit.parse(unitText);
+        double quantity;
+        if (unit == null) {
+            quantity = Double.NaN;
+            unresolved++;
+        } else if (dose == null) {
+            quantity = 0;
+            unresolved++;
+        } else {
+            quantity = unit.quantity(dose, area);
+        }
+        ProductKey key = new ProductKey(product, unit == null ? unitText : unit.baseUnit());
+        products.computeIfAbsent(key, k -> new Totals()).add(area, quantity);
+    }
+
+    void merge(PrescriptionSummary other) {
+        records += other.records;
+        unresolved += other.unresolved;
+        area += other.area;
+        other.zones.forEach((zone, totals) -> zones.computeIfAbsent(zone, k -> new Totals()).merge(totals));
+        other.products.forEach((key, totals) -> products.computeIfAbsent(key, k -> new Totals()).merge(totals));
+    }
+
+    public long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * 总面积（平方米）
+     */
+    public double getTotalArea() {
+        return area;
+    }
+
+    /**
+     * 缺少剂量或剂量单位无法识别、因而没有计入用量的记录数
+     */
+    public long getUnresolvedCount() {
+        return unresolved;
+    }
+
+    /**
+     * 按 ZONE 排序的面积汇总
+     */
+    public List<ZoneTotal> getZones() {
+        List<ZoneTotal> result = new ArrayList<>(zones.size());
+        zones.forEach((zone, totals) -> result.add(new ZoneTotal(zone, totals.records, totals.area)));
+        result.sort(Comparator.comparing(ZoneTotal::zone, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return result;
+    }
+
+    /**
+     * 按 PRODUCT、单位排序的用量汇总
+     */
+    public List<ProductTotal> getProducts() {
+        List<ProductTotal> result = new ArrayList<>(products.size());
+        products.forEach((key, totals) ->
+                result.add(new ProductTotal(key.product(), key.unit(), totals.records, totals.area, totals.quantity)));
+        result.sort(Comparator.comparing(ProductTotal::product, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(ProductTotal::unit, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return result;
+    }
+
+    /**
+     * 以 CSV 输出汇总表，两段分别为 ZONE 与 PRODUCT，不关闭 writer
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write("ZONE,RECORDS,AREA_M2,AREA_HA\n");
+        for (ZoneTotal zone : getZones()) {
+            writer.write(csv(zone.zone()) + "," + zone.records() + "," + number(zone.area()) + ","
+                    + number(zone.hectares()) + "\n");
+        }
+        writer.write("\nPRODUCT,UNIT,RECORDS,AREA_HA,QUANTITY\n");
+        for (ProductTotal product : getProducts()) {
+            writer.write(csv(product.product()) + "," + csv(product.unit()) + "," + product.records() + ","
+                    + number(product.hectares()) + "," + number(product.quantity()) + "\n");
+        }
+        writer.flush();
+    }
+
+    /**
+     * 便于在日志或控制台中查看的文本表格
+     */
+    public String toTable() {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format(Locale.ROOT, "%-20s %10s %16s%n", "ZONE", "RECORDS", "AREA_HA"));
+        for (ZoneTotal zone : getZones()) {
+            table.append(String.format(Locale.ROOT, "%-20s %10d %16.4f%n", text(zone.zone()), zone.records(), zone.hectares()));
+        }
+        table.append(String.format(Locale.ROOT, "%n%-20s %-8s %10s %16s %18s%n", "PRODUCT", "UNIT", "RECORDS", "AREA_HA", "QUANTITY"));
+        for (ProductTotal product : getProducts()) {
+            table.append(String.format(Locale.ROOT, "%-20s %-8s %10d %16.4f %18s%n", text(product.product()),
+                    text(product.unit()), product.records(), product.hectares(), number(product.quantity())));
+        }
+        table.append(String.format(Locale.ROOT, "%n记录数 %d，总面积 %.4f ha，未计入用量 %d%n",
+                records, area / 10000, unresolved));
+        return table.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "PrescriptionSummary{records=" + records + ", area=" + area + ", zones=" + zones.size()
+                + ", products=" + products.size() + ", unresolved=" + unresolved + "}";
+    }
+
+    private static String text(String value) {
+        return value == null || value.isEmpty() ? "-" : value;
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) ? "" : String.format(Locale.ROOT, "%.4f", value);
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * 一个 ZONE 的汇总
+     *
+     * @param area 面积（平方米）
+     */
+    public record ZoneTotal(String zone, long records, double area) {
+
+        public double hectares() {
+            return area / 10000;
+        }
+    }
+
+    /**
+     * 一种产品的汇总
+     *
+     * @param unit     用量的基本单位（kg、L、count），剂量单位无法识别时为原始单位文本
+     * @param area     施用面积（平方米）
+     * @param quantity 用量，剂量单位无法识别时为 NaN
+     */
+    public record ProductTotal(String product, String unit, long records, double area, double quantity) {
+
+        public double hectares() {
+            return area / 10000;
+        }
+    }
+
+    private record ProductKey(String product, String unit) {
+    }
+
+    private static final class Totals {
+        long records;
+        double area;
+        double quantity;
+
+        void add(double area, double quantity) {
+            records++;
+            this.area += area;
+            this.quantity += quantity;
+        }
+
+        void merge(Totals other) {
+            records += other.records;
+            area += other.area;
+            quantity += other.quantity;
+        }
+    }
+}
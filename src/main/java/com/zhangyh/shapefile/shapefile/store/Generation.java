@@ -0,0 +1,101 @@
+package com.zhangyh.shapefile.shapefile.store;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 图层的一个版本（一整套 .shp/.shx/.dbf/.prj/.cpg，位于 gen-000001 这样的目录中）
+ * 引用计数：作为当前版本时持有 1 个引用，每个未关闭的快照各持有 1 个；计数归零后版本不可再被获取。
+ * 租约：版本成为当前版本之前登记一次读取租约（见 {@link GenerationLeases}），计数归零后由回收方释放，
+ * 其他进程的回收方据此判断版本是否还在被读取；获取和关闭快照都不碰租约。
+ *
+ * @author zhangyh
+ */
+final class Generation {
+
+    final String layer;
+    final long number;
+    final Path directory;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final AtomicBoolean leased = new AtomicBoolean();
+
+    Generation(String layer, long number, Path directory) {
+        this.layer = layer;
+        this.number = number;
+        this.directory = directory;
+    }
+
+    /**
+     * 计数大于 0 时加 1；已归零（已被回收）时返回 false
+     */
+    boolean retain() {
+        while (true) {
+            int count = references.get();
+            if (count == 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return 计数是否归零
+     */
+    boolean release() {
+        int count = references.decrementAndGet();
+        if (count < 0) {
+            throw new IllegalStateException("版本 " + number + " 引用计数小于 0");
+        }
+        return count == 0;
+    }
+
+    int references() {
+        return references.get();
+    }
+
+    /**
+     * @return false 表示版本已被（其他进程）回收
+     */
+    boolean openLease() throws IOException {
+        if (!GenerationLeases.share(directory, shpFile())) {
+            return false;
+        }
+        leased.set(true);
+        return true;
+    }
+
+    /**
+     * 释放租约，可重复调用
+     */
+    void closeLease() {
+        if (leased.compareAndSet(true, false)) {
+            GenerationLeases.unshare(directory);
+        }
+    }
+
+    Path shpFile() {
+        return directory.resolve(layer + ".shp");
+    }
+
+    static String directoryName(long number) {
+        return String.format("gen-%06d", number);
+    }
+
+    /**
+     * 从目录名解析版本号，不是版本目录时返回 -1
+     */
+    static long parseNumber(String directoryName) {
+        if (!directoryName.startsWith("gen-")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(directoryName.substring(4));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
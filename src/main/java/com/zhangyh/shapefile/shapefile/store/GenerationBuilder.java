@@ -0,0 +1,111 @@
+package com.zhangyh.shapefile.shapefile.store;
+
+import com.zhangyh.shapefile.shapefile.stream.ShapefileFileWriter;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 正在构建的新版本，文件写在暂存目录中，发布前对读取方不可见
+ * 用法：
+ * <pre>
+ * try (GenerationBuilder builder = store.begin("prescription")) {
+ *     try (ShapefileFileWriter writer = builder.newWriter(schema)) { ... }
+ *     builder.publish();
+ * }
+ * </pre>
+ * 未调用 {@link #publish()} 就关闭时丢弃暂存目录。
+ *
+ * @author zhangyh
+ */
+public final class GenerationBuilder implements Closeable {
+
+    private final VersionedLayerStore store;
+    private final String layer;
+    private final Path directory;
+    private final List<ShapefileFileWriter> writers = new ArrayList<>();
+    private boolean finished;
+
+    GenerationBuilder(VersionedLayerStore store, String layer, Path directory) {
+        this.store = store;
+        this.layer = layer;
+        this.directory = directory;
+    }
+
+    public String getLayer() {
+        return layer;
+    }
+
+    /**
+     * 暂存目录，也可以直接把文件（如 ShapefileDataStore 的输出）写到这里
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 新版本 .shp 在暂存目录中的路径，文件名必须是 图层名.shp
+     */
+    public Path getShpFile() {
+        return directory.resolve(layer + ".shp");
+    }
+
+    public ShapefileFileWriter newWriter(SimpleFeatureType schema) throws IOException {
+        return newWriter(schema, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 在暂存目录中创建写入器，发布时若尚未关闭会自动关闭
+     */
+    public ShapefileFileWriter newWriter(SimpleFeatureType schema, Charset charset) throws IOException {
+        ensureOpen();
+        ShapefileFileWriter writer = new ShapefileFileWriter(getShpFile(), schema, charset);
+        writers.add(writer);
+        return writer;
+    }
+
+    /**
+     * 原子发布为当前版本
+     *
+     * @return 新版本号
+     */
+    public long publish() throws IOException {
+        ensureOpen();
+        for (ShapefileFileWriter writer : writers) {
+            writer.close();
+        }
+        long number = store.publish(this);
+        finished = true;
+        return number;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("版本已发布或已放弃: " + directory);
+        }
+    }
+
+    /**
+     * 未发布时放弃本次构建
+     */
+    @Override
+    public void close() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            for (ShapefileFileWriter writer : writers) {
+                writer.close();
+            }
+        } finally {
+            store.abort(directory);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.zhangyh.shapefile.shapefile.store;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * 版本目录的读取租约：持有版本的进程对 .lease 加共享锁，回收方必须拿到排他锁才能删除版本
+ * 租约在版本发布或刷新为当前版本时登记、在引用计数归零后释放，获取快照的路径不会调用这里。
+ * 文件锁属于进程，并且在 POSIX 上关闭同一文件的任意一个通道都会释放本进程在该文件上的全部锁，
+ * 所以一个 JVM 内每个 .lease 只打开一个通道：第一个存储实例加共享锁，之后的存储实例只增加计数，
+ * 进程内的回收方看到计数不为 0 就直接放弃，不会打开第二个通道。
+ *
+ * @author zhangyh
+ */
+final class GenerationLeases {
+
+    private static final Logger LOGGER = Logger.getLogger(GenerationLeases.class.getName());
+
+    static final String LEASE = ".lease";
+
+    /** 本进程打开的租约文件，键为版本目录的绝对路径 */
+    private static final Map<Path, Lease> OPEN = new HashMap<>();
+
+    private GenerationLeases() {
+    }
+
+    /**
+     * 登记一个持有该版本的存储实例，本进程第一个登记方在 .lease 上加共享锁
+     * 加锁后再确认 .shp 仍然存在：回收方持有排他锁期间先删版本文件、最后删 .lease，
+     * 所以加锁成功且文件还在，就不会再被任何进程删除。
+     *
+     * @return false 表示版本正在或已经被回收
+     */
+    static boolean share(Path directory, Path shpFile) throws IOException {
+        Path key = directory.toAbsolutePath().normalize();
+        synchronized (OPEN) {
+            Lease lease = OPEN.get(key);
+            if (lease != null) {
+                if (lease.holders < 0) {
+                    return false;
+                }
+                lease.holders++;
+                return true;
+            }
+            FileChannel channel = open(directory);
+            if (channel == null) {
+                return false;
+            }
+            try {
+                FileLock lock = channel.tryLock(0, Long.MAX_VALUE, true);
+                if (lock == null || !Files.exists(shpFile)) {
+                    channel.close();
+                    return false;
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            OPEN.put(key, new Lease(channel, 1));
+            return true;
+        }
+    }
+
+    /**
+     * 注销一个登记方，本进程最后一个登记方关闭通道、释放共享锁
+     */
+    static void unshare(Path directory) {
+        Path key = directory.toAbsolutePath().normalize();
+        synchronized (OPEN) {
+            Lease lease = OPEN.get(key);
+            if (lease == null || lease.holders <= 0) {
+                throw new IllegalStateException("版本目录 " + directory + " 没有持有租约");
+            }
+            if (--lease.holders == 0) {
+                OPEN.remove(key);
+                close(lease.channel, directory);
+            }
+        }
+    }
+
+    /**
+     * 没有任何进程持有租约时删除版本目录
+     * 删除顺序：拿排他锁 → 删版本文件 → 删 .lease → 释放锁 → 删目录。
+     *
+     * @return 版本是否已不存在；还有读取方时返回 false
+     */
+    static boolean delete(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return true;
+        }
+        Path key = directory.toAbsolutePath().normalize();
+        Lease lease;
+        synchronized (OPEN) {
+            if (OPEN.containsKey(key)) {
+                return false;
+            }
+            FileChannel channel = open(directory);
+            if (channel == null) {
+                return true;
+            }
+            try {
+                if (channel.tryLock() == null) {
+                    channel.close();
+                    return false;
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            // 标记为删除中，进程内的读取方不再登记
+            lease = new Lease(channel, -1);
+            OPEN.put(key, lease);
+        }
+        try {
+            Path leaseFile = directory.resolve(LEASE);
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    if (!path.equals(leaseFile) && !path.equals(directory)) {
+                        Files.deleteIfExists(path);
+                    }
+                }
+            }
+            Files.deleteIfExists(leaseFile);
+        } finally {
+            synchronized (OPEN) {
+                OPEN.remove(key);
+                close(lease.channel, directory);
+            }
+        }
+        try {
+            Files.deleteIfExists(directory);
+        } catch (DirectoryNotEmptyException e) {
+            // 读取方在删除期间补建了 .lease，它会发现 .shp 已不存在，下一次回收再删目录
+        }
+        return true;
+    }
+
+    /**
+     * 打开 .lease，不存在时补建（早于租约机制发布的版本）；版本目录已被删除时返回 null
+     */
+    private static FileChannel open(Path directory) throws IOException {
+        try {
+            return FileChannel.open(directory.resolve(LEASE), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static void close(FileChannel channel, Path directory) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "释放版本目录 " + directory + " 的租约失败", e);
+        }
+    }
+
+    private static final class Lease {
+        final FileChannel channel;
+        /** 本进程登记该版本的存储实例个数，-1 表示本进程正在删除该版本 */
+        int holders;
+
+        Lease(FileChannel channel, int holders) {
+            this.channel = channel;
+            this.holders = holders;
+        }
+    }
+}
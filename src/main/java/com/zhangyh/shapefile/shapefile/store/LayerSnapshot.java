@@ -0,0 +1,65 @@
+package com.zhangyh.shapefile.shapefile.store;
+
+import com.zhangyh.shapefile.shapefile.stream.ShapefileStreamReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 图层某个版本的只读快照
+ * 快照关闭前，对应版本的文件不会被删除，期间发布的新版本也不会影响它；用完必须关闭（try-with-resources）。
+ *
+ * @author zhangyh
+ */
+public final class LayerSnapshot implements Closeable {
+
+    private final VersionedLayerStore store;
+    private final Generation generation;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    LayerSnapshot(VersionedLayerStore store, Generation generation) {
+        this.store = store;
+        this.generation = generation;
+    }
+
+    public String getLayer() {
+        return generation.layer;
+    }
+
+    /**
+     * 版本号，从 1 开始递增
+     */
+    public long getGeneration() {
+        return generation.number;
+    }
+
+    /**
+     * 版本目录，其中的文件只读
+     */
+    public Path getDirectory() {
+        return generation.directory;
+    }
+
+    /**
+     * .shp 路径，可交给 {@link ShapefileStreamReader#open} 或 ShapefileDataStore 读取
+     */
+    public Path getShpFile() {
+        return generation.shpFile();
+    }
+
+    /**
+     * 打开流式读取器，调用方负责关闭读取器（须在快照关闭之前）
+     */
+    public ShapefileStreamReader openReader() throws IOException {
+        return ShapefileStreamReader.open(getShpFile());
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            store.release(generation);
+        }
+    }
+}
@@ -0,0 +1,509 @@
+package com.zhangyh.shapefile.shapefile.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * 多版本图层存储：写入方在旁边构建新版本并原子发布，读取方持有一致的快照
+ * <p>
+ * 目录结构：
+ * <pre>
+ * root/prescription/CURRENT          当前版本号，原子替换
+ * root/prescription/gen-000007/      已发布的版本，发布后只读
+ * root/prescription/gen-000007/.lease 读取租约，持有该版本的进程对其加共享锁
+ * root/prescription/.staging-xxxx/   正在构建的版本
+ * </pre>
+ * 原理：
+ * 1. 写入：所有文件写在暂存目录，发布时 fsync 后把目录原子重命名为 gen-N，再原子替换 CURRENT，
+ * 读取方不会看到写了一半的 .dbf/.shx。同一图层的发布在进程内加锁、跨进程加文件锁，互相串行。
+ * 2. 读取：{@link #acquire} 只读取内存中的当前版本并对其引用计数做 CAS，不做文件操作、不加锁；
+ * 发布在锁外的暂存目录中完成，长时间的导入不会阻塞查询。
+ * 3. 跨进程保护：版本成为本存储的当前版本之前先在 .lease 上登记共享锁（见 {@link GenerationLeases}），
+ * 直到引用计数归零才释放，所以获取快照时不需要再加锁；回收方必须先拿到排他锁才能删除版本。
+ * 4. 感知其他进程的发布：后台线程每隔 refreshInterval 比较一次 CURRENT 的文件标识和修改时间，
+ * 变化时执行 {@link #refresh}；需要立即看到新版本时可以直接调用 {@link #refresh}。
+ * 5. 回收：旧版本不再是当前版本、引用计数归零且没有任何进程持有租约时删除；
+ * 回收在发布线程或后台线程执行，被其他进程的快照挡住的版本由后台线程定期重试。
+ *
+ * @author zhangyh
+ */
+public class VersionedLayerStore implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(VersionedLayerStore.class.getName());
+
+    private static final String CURRENT = "CURRENT";
+    private static final String LOCK = ".lock";
+    private static final String STAGING_PREFIX = ".staging-";
+    /** 刷新时版本被其他进程回收后的重试次数 */
+    private static final int REFRESH_ATTEMPTS = 8;
+    /** 超过该时间的暂存目录视为中断的导入留下的残留 */
+    private static final Duration STALE_STAGING = Duration.ofHours(24);
+    public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofSeconds(1);
+
+    private final Path root;
+    private final ConcurrentHashMap<String, LayerState> layers = new ConcurrentHashMap<>();
+    private final Set<Path> activeStaging = ConcurrentHashMap.newKeySet();
+    /** 刷新与回收线程，获取快照的线程从不执行这两项工作 */
+    private final ScheduledExecutorService maintenance;
+    private volatile boolean closed;
+
+    public VersionedLayerStore(Path root) throws IOException {
+        this(root, DEFAULT_REFRESH_INTERVAL);
+    }
+
+    /**
+     * @param refreshInterval 后台检查其他进程发布的间隔，即跨进程发布最长的可见延迟
+     */
+    public VersionedLayerStore(Path root, Duration refreshInterval) throws IOException {
+        if (refreshInterval.isNegative() || refreshInterval.isZero()) {
+            throw new IllegalArgumentException("refreshInterval 必须大于 0");
+        }
+        this.root = root;
+        Files.createDirectories(root);
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "layer-store-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = refreshInterval.toMillis();
+        maintenance.scheduleWithFixedDelay(this::maintain, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取当前版本的快照：读取当前版本并对引用计数做 CAS，不加锁、不访问文件
+     * 其他进程发布的版本由后台线程在 refreshInterval 内发现；只有图层在本存储中还没有任何版本时才同步读取一次 CURRENT。
+     *
+     * @throws NoSuchFileException 图层还没有发布过任何版本
+     */
+    public LayerSnapshot acquire(String layer) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("存储已关闭");
+        }
+        LayerState state = layers.get(layer);
+        if (state == null) {
+            state = state(layer);
+        }
+        while (true) {
+            Generation generation = state.current.get();
+            if (generation == null) {
+                if (closed) {
+                    throw new IllegalStateException("存储已关闭");
+                }
+                // 冷路径：图层还没有版本，确认其他进程是否刚发布了第一个版本
+                refresh(layer);
+                generation = state.current.get();
+                if (generation == null) {
+                    throw new NoSuchFileException(layerDirectory(layer).toString(), null, "图层尚未发布");
+                }
+            }
+            if (generation.retain()) {
+                return new LayerSnapshot(this, generation);
+            }
+            // 计数已归零说明该版本刚被替换，替换前新版本已经可见，重新读取即可
+        }
+    }
+
+    /**
+     * 当前版本号，没有版本时返回 0
+     */
+    public long getCurrentGeneration(String layer) {
+        Generation generation = state(layer).current.get();
+        return generation == null ? 0 : generation.number;
+    }
+
+    /**
+     * 开始构建新版本
+     */
+    public GenerationBuilder begin(String layer) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("存储已关闭");
+        }
+        Path staging = layerDirectory(layer).resolve(STAGING_PREFIX + UUID.randomUUID());
+        Files.createDirectories(staging);
+        activeStaging.add(staging);
+        return new GenerationBuilder(this, layer, staging);
+    }
+
+    /**
+     * 立即重新读取 CURRENT，感知其他进程发布的版本；后台线程也会定期执行
+     */
+    public void refresh(String layer) throws IOException {
+        LayerState state = state(layer);
+        if (reload(layer, state)) {
+            collectGarbage(layer);
+        }
+    }
+
+    /**
+     * 删除可回收的旧版本，以及之前的进程遗留的旧版本和中断的暂存目录
+     */
+    public void collectGarbage() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path directory : stream) {
+                String layer = directory.getFileName().toString();
+                if (!layer.startsWith(".")) {
+                    collectGarbage(layer);
+                }
+            }
+        }
+    }
+
+    /**
+     * 停止后台线程并交出各图层当前版本的引用；未关闭的快照仍然可读，关闭时释放各自版本的租约
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        maintenance.shutdownNow();
+        for (LayerState state : layers.values()) {
+            state.publishLock.lock();
+            try {
+                Generation current = state.current.getAndSet(null);
+                if (current != null && current.release()) {
+                    current.closeLease();
+                }
+                for (Generation generation : state.retired) {
+                    if (generation.references() == 0) {
+                        generation.closeLease();
+                    }
+                }
+            } finally {
+                state.publishLock.unlock();
+            }
+        }
+    }
+
+    long publish(GenerationBuilder builder) throws IOException {
+        String layer = builder.getLayer();
+        if (!Files.exists(builder.getShpFile())) {
+            throw new NoSuchFileException(builder.getShpFile().toString(), null, "暂存目录中没有 " + layer + ".shp");
+        }
+        Path lease = builder.getDirectory().resolve(GenerationLeases.LEASE);
+        if (!Files.exists(lease)) {
+            Files.createFile(lease);
+        }
+        sync(builder.getDirectory());
+
+        Path layerDirectory = layerDirectory(layer);
+        LayerState state = state(layer);
+        long number;
+        state.publishLock.lock();
+        try (FileChannel lockChannel = FileChannel.open(layerDirectory.resolve(LOCK),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = lockChannel.lock()) {
+            if (closed) {
+                throw new IllegalStateException("存储已关闭");
+            }
+            number = nextNumber(layerDirectory);
+            Path target = layerDirectory.resolve(Generation.directoryName(number));
+            Files.move(builder.getDirectory(), target, StandardCopyOption.ATOMIC_MOVE);
+            activeStaging.remove(builder.getDirectory());
+            // 写 CURRENT 之前登记租约：此时版本号大于 CURRENT，其他进程的回收方不会删除它
+            Generation next = new Generation(layer, number, target);
+            if (!next.openLease()) {
+                throw new IOException("无法登记版本 " + target + " 的租约");
+            }
+            try {
+                writeCurrent(layerDirectory, number);
+                state.stamp = CurrentStamp.of(layerDirectory);
+            } catch (IOException | RuntimeException e) {
+                next.closeLease();
+                throw e;
+            }
+            swap(state, next);
+        } finally {
+            state.publishLock.unlock();
+        }
+        LOGGER.info("图层 " + layer + " 发布版本 " + number);
+        collectGarbage(layer);
+        return number;
+    }
+
+    /**
+     * 放弃构建，删除暂存目录
+     */
+    void abort(Path staging) throws IOException {
+        try {
+            deleteRecursively(staging);
+        } finally {
+            activeStaging.remove(staging);
+        }
+    }
+
+    /**
+     * 快照关闭时调用；计数归零时把回收交给后台线程，关闭快照的线程不会被阻塞
+     */
+    void release(Generation generation) {
+        if (!generation.release()) {
+            return;
+        }
+        try {
+            maintenance.execute(() -> collectQuietly(generation.layer));
+        } catch (RejectedExecutionException e) {
+            // 存储已关闭：只释放租约，目录留给之后的回收
+            generation.closeLease();
+        }
+    }
+
+    /**
+     * 重新读取 CURRENT，有更新的版本时先登记租约再替换
+     *
+     * @return 是否替换了当前版本
+     */
+    private boolean reload(String layer, LayerState state) throws IOException {
+        Path layerDirectory = layerDirectory(layer);
+        state.publishLock.lock();
+        try {
+            for (int attempt = 0; attempt < REFRESH_ATTEMPTS; attempt++) {
+                // 先记录 CURRENT 的标识再读内容，读完后若又被替换，下一次检查还会发现
+                state.stamp = CurrentStamp.of(layerDirectory);
+                long number = readCurrent(layerDirectory);
+                Generation current = state.current.get();
+                if (closed || number <= 0 || (current != null && current.number >= number)) {
+                    return false;
+                }
+                Generation next = new Generation(layer, number, layerDirectory.resolve(Generation.directoryName(number)));
+                if (next.openLease()) {
+                    swap(state, next);
+                    return true;
+                }
+                // 该版本已被其他进程替换并回收，重新读取 CURRENT
+            }
+        } finally {
+            state.publishLock.unlock();
+        }
+        throw new IOException("图层 " + layer + " 的版本在刷新期间被反复替换，请重试");
+    }
+
+    /**
+     * 后台任务：发现其他进程的发布，并重试被挡住的回收；异常只记录，不能中断定时任务
+     */
+    private void maintain() {
+        for (Map.Entry<String, LayerState> entry : layers.entrySet()) {
+            String layer = entry.getKey();
+            LayerState state = entry.getValue();
+            try {
+                if (!Objects.equals(state.stamp, CurrentStamp.of(layerDirectory(layer)))) {
+                    refresh(layer);
+                } else if (!state.retired.isEmpty()) {
+                    collectGarbage(layer);
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "刷新图层 " + layer + " 失败", e);
+            }
+        }
+    }
+
+    private void collectQuietly(String layer) {
+        try {
+            collectGarbage(layer);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "回收图层 " + layer + " 旧版本失败", e);
+        }
+    }
+
+    /**
+     * 替换当前版本，旧版本交出“当前版本”持有的引用
+     */
+    private void swap(LayerState state, Generation next) {
+        Generation previous = state.current.getAndSet(next);
+        if (previous != null) {
+            state.retired.add(previous);
+            previous.release();
+        }
+    }
+
+    private void collectGarbage(String layer) throws IOException {
+        LayerState state = state(layer);
+        state.gcLock.lock();
+        try {
+            collect(layer, state);
+        } finally {
+            state.gcLock.unlock();
+        }
+    }
+
+    private void collect(String layer, LayerState state) throws IOException {
+        for (Generation generation : state.retired) {
+            if (generation.references() != 0) {
+                continue;
+            }
+            // 计数归零后版本不会再被获取，先交出本存储的租约再尝试删除
+            generation.closeLease();
+            if (GenerationLeases.delete(generation.directory)) {
+                state.retired.remove(generation);
+            }
+        }
+
+        Path layerDirectory = layerDirectory(layer);
+        if (!Files.isDirectory(layerDirectory)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long currentNumber = readCurrent(layerDirectory);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(layerDirectory, Files::isDirectory)) {
+            for (Path directory : stream) {
+                String name = directory.getFileName().toString();
+                long number = Generation.parseNumber(name);
+                // 其他进程或之前的进程留下的旧版本：是否仍有读取方由租约锁判断
+                if (number > 0 && number < currentNumber && !isKnown(state, number)) {
+                    GenerationLeases.delete(directory);
+                } else if (name.startsWith(STAGING_PREFIX) && !activeStaging.contains(directory)
+                        && olderThan(directory, STALE_STAGING, now)) {
+                    deleteRecursively(directory);
+                }
+            }
+        }
+    }
+
+    private static boolean isKnown(LayerState state, long number) {
+        Generation current = state.current.get();
+        if (current != null && current.number == number) {
+            return true;
+        }
+        for (Generation generation : state.retired) {
+            if (generation.number == number) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean olderThan(Path path, Duration age, long now) throws IOException {
+        return now - Files.getLastModifiedTime(path).toMillis() >= age.toMillis();
+    }
+
+    private LayerState state(String layer) {
+        return layers.computeIfAbsent(layer, name -> {
+            try {
+                return load(name);
+            } catch (IOException e) {
+                throw new UncheckedIOException("读取图层 " + name + " 的当前版本失败", e);
+            }
+        });
+    }
+
+    private LayerState load(String layer) throws IOException {
+        Path layerDirectory = layerDirectory(layer);
+        Files.createDirectories(layerDirectory);
+        LayerState state = new LayerState();
+        reload(layer, state);
+        return state;
+    }
+
+    private Path layerDirectory(String layer) {
+        if (layer.isEmpty() || layer.contains("/") || layer.contains("\\") || layer.startsWith(".")) {
+            throw new IllegalArgumentException("非法图层名: " + layer);
+        }
+        return root.resolve(layer);
+    }
+
+    private static long readCurrent(Path layerDirectory) throws IOException {
+        Path file = layerDirectory.resolve(CURRENT);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        String text = Files.readString(file, StandardCharsets.US_ASCII).trim();
+        return text.isEmpty() ? 0 : Long.parseLong(text);
+    }
+
+    private static void writeCurrent(Path layerDirectory, long number) throws IOException {
+        Path temp = layerDirectory.resolve(CURRENT + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(Long.toString(number).getBytes(StandardCharsets.US_ASCII)));
+            channel.force(true);
+        }
+        Files.move(temp, layerDirectory.resolve(CURRENT), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long nextNumber(Path layerDirectory) throws IOException {
+        long max = readCurrent(layerDirectory);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(layerDirectory, Files::isDirectory)) {
+            for (Path directory : stream) {
+                max = Math.max(max, Generation.parseNumber(directory.getFileName().toString()));
+            }
+        }
+        return max + 1;
+    }
+
+    /**
+     * 发布前把暂存文件刷到磁盘，避免掉电后 CURRENT 指向不完整的文件
+     */
+    private static void sync(Path directory) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isRegularFile)) {
+            for (Path file : stream) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+            }
+        }
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * CURRENT 文件的标识（POSIX 上为 inode）与修改时间；CURRENT 每次发布都通过重命名原子替换，标识必然变化
+     */
+    private record CurrentStamp(Object fileKey, long modified) {
+
+        static CurrentStamp of(Path layerDirectory) throws IOException {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(layerDirectory.resolve(CURRENT), BasicFileAttributes.class);
+                return new CurrentStamp(attributes.fileKey(), attributes.lastModifiedTime().toMillis());
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final class LayerState {
+        final AtomicReference<Generation> current = new AtomicReference<>();
+        /** 上一次读取 CURRENT 时的文件标识，后台线程据此判断是否需要刷新 */
+        volatile CurrentStamp stamp;
+        final Set<Generation> retired = ConcurrentHashMap.newKeySet();
+        final ReentrantLock publishLock = new ReentrantLock();
+        final ReentrantLock gcLock = new ReentrantLock();
+    }
+}
@@ -0,0 +1,382 @@
+package com.zhangyh.shapefile.shapefile.stream;
+
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.api.feature.type.AttributeDescriptor;
+import org.geotools.api.feature.type.GeometryDescriptor;
+import org.geotools.api.referencing.FactoryException;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+import org.geotools.data.shapefile.shp.ShapeType;
+import org.geotools.data.shapefile.shp.ShapefileException;
+import org.geotools.feature.FeatureTypes;
+import org.geotools.referencing.CRS;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Shapefile 底层编解码工具
+ * 直接按 README 中描述的二进制结构读写 .shp 文件头、记录头和 .dbf 行，
+ * 几何内容的编解码复用 GeoTools 的 {@link org.geotools.data.shapefile.shp.ShapeHandler}。
+ *
+ * @author zhangyh
+ */
+public final class ShapefileCodec {
+
+    /** .shp / .shx 文件头固定 100 字节 */
+    public static final int HEADER_LENGTH = 100;
+    /** 每条记录头 8 字节：记录号 + 内容长度（均为大端） */
+    public static final int RECORD_HEADER_LENGTH = 8;
+    /** .shp 文件标识 */
+    public static final int FILE_CODE = 9994;
+    public static final int VERSION = 1000;
+    /** .dbf 未声明编码（没有 .cpg）时 GeoTools 的默认编码 */
+    public static final Charset DEFAULT_CHARSET = StandardCharsets.ISO_8859_1;
+
+    private static final Logger LOGGER = Logger.getLogger(ShapefileCodec.class.getName());
+
+    private ShapefileCodec() {
+    }
+
+    /**
+     * 解析 100 字节的文件头
+     */
+    public static Header readHeader(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        int fileCode = buffer.getInt(0);
+        if (fileCode != FILE_CODE) {
+            throw new ShapefileException("不是有效的 Shapefile 文件头, File Code = " + fileCode);
+        }
+        // 文件长度以 16 位字为单位
+        long fileLength = (buffer.getInt(24) & 0xFFFFFFFFL) * 2;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        ShapeType shapeType = ShapeType.forID(buffer.getInt(32));
+        Envelope bounds = new Envelope(buffer.getDouble(36), buffer.getDouble(52), buffer.getDouble(44), buffer.getDouble(60));
+        return new Header(shapeType, fileLength, bounds);
+    }
+
+    /**
+     * 生成 100 字节的文件头
+     *
+     * @param fileLength 文件总长度（字节）
+     */
+    public static ByteBuffer writeHeader(ShapeType shapeType, long fileLength, Envelope bounds) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(0, FILE_CODE);
+        buffer.putInt(24, (int) (fileLength / 2));
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(28, VERSION);
+        buffer.putInt(32, shapeType == null ? ShapeType.NULL.id : shapeType.id);
+        boolean empty = bounds == null || bounds.isNull();
+        buffer.putDouble(36, empty ? 0 : bounds.getMinX());
+        buffer.putDouble(44, empty ? 0 : bounds.getMinY());
+        buffer.putDouble(52, empty ? 0 : bounds.getMaxX());
+        buffer.putDouble(60, empty ? 0 : bounds.getMaxY());
+        // Z、M 范围保持为 0
+        buffer.position(0);
+        return buffer;
+    }
+
+    /**
+     * 解码一条记录内容（不含 8 字节记录头，首 4 字节为几何类型）
+     */
+    public static Geometry decodeGeometry(ByteBuffer content, GeometryFactory geometryFactory) throws IOException {
+        ByteBuffer buffer = content.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(0);
+        ShapeType type = ShapeType.forID(buffer.getInt());
+        if (type == ShapeType.NULL || type == ShapeType.UNDEFINED) {
+            return null;
+        }
+        return (Geometry) type.getShapeHandler(geometryFactory).read(buffer, type, false);
+    }
+
+    /**
+     * 根据 Schema 的几何字段推断 Shapefile 几何类型，通用 Geometry 返回 null（由第一条非空几何决定）
+     */
+    public static ShapeType shapeTypeOf(Class<?> binding) {
+        if (binding == null) {
+            return null;
+        }
+        if (Point.class.isAssignableFrom(binding)) {
+            return ShapeType.POINT;
+        }
+        if (MultiPoint.class.isAssignableFrom(binding)) {
+            return ShapeType.MULTIPOINT;
+        }
+        if (LineString.class.isAssignableFrom(binding) || MultiLineString.class.isAssignableFrom(binding)) {
+            return ShapeType.ARC;
+        }
+        if (Polygon.class.isAssignableFrom(binding) || MultiPolygon.class.isAssignableFrom(binding)) {
+            return ShapeType.POLYGON;
+        }
+        return null;
+    }
+
+    /**
+     * 与 GeoTools ShapefileDataStore 一致：读取时线、面统一为 Multi 类型
+     */
+    public static Class<? extends Geometry> geometryBinding(ShapeType type) {
+        if (type == null) {
+            return Geometry.class;
+        }
+        if (type.isPointType()) {
+            return Point.class;
+        }
+        if (type.isMultiPointType()) {
+            return MultiPoint.class;
+        }
+        if (type.isLineType()) {
+            return MultiLineString.class;
+        }
+        if (type.isPolygonType()) {
+            return MultiPolygon.class;
+        }
+        return Geometry.class;
+    }
+
+    /**
+     * 根据 Schema 创建 dBase 表头，字段映射规则与 GeoTools ShapefileDataStore 相同
+     */
+    public static DbaseFileHeader createDbaseHeader(SimpleFeatureType schema) throws IOException {
+        DbaseFileHeader header = new DbaseFileHeader();
+        for (AttributeDescriptor descriptor : schema.getAttributeDescriptors()) {
+            if (descriptor instanceof GeometryDescriptor) {
+                continue;
+            }
+            String name = descriptor.getLocalName();
+            Class<?> binding = descriptor.getType().getBinding();
+            int fieldLength = FeatureTypes.getFieldLength(descriptor);
+            if (Integer.class == binding || Short.class == binding || Byte.class == binding) {
+                header.addColumn(name, 'N', 9, 0);
+            } else if (Long.class == binding || BigInteger.class == binding) {
+                header.addColumn(name, 'N', 19, 0);
+            } else if (Number.class.isAssignableFrom(binding)) {
+                header.addColumn(name, 'N', 33, 15);
+            } else if (Date.class.isAssignableFrom(binding)) {
+                header.addColumn(name, 'D', 8, 0);
+            } else if (Boolean.class == binding) {
+                header.addColumn(name, 'L', 1, 0);
+            } else if (CharSequence.class.isAssignableFrom(binding) || UUID.class == binding) {
+                header.addColumn(name, 'C', fieldLength > 0 ? Math.min(fieldLength, 254) : 254, 0);
+            } else {
+                header.addColumn(name, 'C', 254, 0);
+            }
+        }
+        return header;
+    }
+
+    /**
+     * 将 dBase 表头序列化为字节（用于写出完成后按实际记录数回填）
+     */
+    public static ByteBuffer encodeDbaseHeader(DbaseFileHeader header) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(header.getHeaderLength());
+        header.writeHeader(new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                int n = src.remaining();
+                buffer.put(src);
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 按字段名（不区分大小写）查找 dBase 字段序号，表头或字段名为 null、字段不存在时返回 -1
+     */
+    public static int fieldIndex(DbaseFileHeader header, String name) {
+        if (header == null || name == null) {
+            return -1;
+        }
+        for (int i = 0; i < header.getFieldCount(); i++) {
+            if (header.getFieldName(i).equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 解码一行 dBase 记录（首字节为删除标记）
+     * 删除标记不影响解码结果，是否跳过已删除的行由调用方决定，见 {@link #isDeleted(byte[])}。
+     */
+    public static Object[] decodeRow(DbaseFileHeader header, byte[] row, Charset charset) {
+        int fieldCount = header.getFieldCount();
+        Object[] values = new Object[fieldCount];
+        int offset = 1;
+        for (int i = 0; i < fieldCount; i++) {
+            int length = header.getFieldLength(i);
+            String text = new String(row, offset, length, charset).trim();
+            offset += length;
+            values[i] = decodeField(header, i, text);
+        }
+        return values;
+    }
+
+    /**
+     * dBase 行首字节为 '*' 表示该行已被删除
+     */
+    public static boolean isDeleted(byte[] row) {
+        return row.length > 0 && row[0] == '*';
+    }
+
+    private static Object decodeField(DbaseFileHeader header, int index, String text) {
+        char type = Character.toUpperCase(header.getFieldType(index));
+        switch (type) {
+            case 'C':
+                return text;
+            case 'N':
+            case 'F':
+                if (text.isEmpty() || text.charAt(0) == '*') {
+                    return null;
+                }
+                return parseNumber(header.getFieldClass(index), text);
+            case 'D':
+                if (text.length() != 8) {
+                    return null;
+                }
+                try {
+                    LocalDate date = LocalDate.parse(text, DateTimeFormatter.BASIC_ISO_DATE);
+                    return Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+                } catch (RuntimeException e) {
+                    return null;
+                }
+            case 'L':
+                if (text.isEmpty()) {
+                    return null;
+                }
+                char c = Character.toUpperCase(text.charAt(0));
+                if (c == 'T' || c == 'Y') {
+                    return Boolean.TRUE;
+                }
+                return c == 'F' || c == 'N' ? Boolean.FALSE : null;
+            default:
+                return text;
+        }
+    }
+
+    private static Object parseNumber(Class<?> binding, String text) {
+        try {
+            if (binding == Integer.class) {
+                return Integer.valueOf(text);
+            }
+            if (binding == Long.class) {
+                return Long.valueOf(text);
+            }
+            if (binding == BigInteger.class) {
+                return new BigInteger(text);
+            }
+            if (binding == BigDecimal.class) {
+                return new BigDecimal(text);
+            }
+            return Double.valueOf(text);
+        } catch (NumberFormatException e) {
+            // 整数溢出等情况退化为 Double
+            try {
+                return Double.valueOf(text);
+            } catch (NumberFormatException ignore) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 解析 .prj 内容，为空或无法解析时返回 null
+     */
+    public static CoordinateReferenceSystem parseCrs(String wkt) {
+        if (wkt == null || wkt.isBlank()) {
+            return null;
+        }
+        try {
+            return CRS.parseWKT(wkt.trim());
+        } catch (FactoryException e) {
+            LOGGER.warning("无法解析 .prj: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 解析 .cpg 内容，为空或不支持时返回 ISO-8859-1
+     */
+    public static Charset parseCharset(String name) {
+        if (name == null || name.isBlank()) {
+            return DEFAULT_CHARSET;
+        }
+        try {
+            return Charset.forName(name.trim());
+        } catch (RuntimeException e) {
+            LOGGER.warning("不支持的 .cpg 编码: " + name.trim() + "，使用 " + DEFAULT_CHARSET);
+            return DEFAULT_CHARSET;
+        }
+    }
+
+    /**
+     * 从通道中读满缓冲区
+     *
+     * @return false 表示在读取任何字节之前就已到达流末尾
+     */
+    public static boolean readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        boolean first = true;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer);
+            if (n < 0) {
+                if (first) {
+                    return false;
+                }
+                throw new EOFException("数据意外结束，剩余 " + buffer.remaining() + " 字节未读取");
+            }
+            if (n > 0) {
+                first = false;
+            }
+        }
+        return true;
+    }
+
+    public static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * .shp 文件头信息
+     *
+     * @param fileLength 文件总长度（字节）
+     */
+    public record Header(ShapeType shapeType, long fileLength, Envelope bounds) {
+    }
+}
@@ -0,0 +1,139 @@
+package com.zhangyh.shapefile.shapefile.stream;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.locationtech.jts.geom.Geometry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 将 {@link ShapefileStreamWriter} 的输出写到磁盘文件
+ * 记录直接顺序写入 .shp/.dbf，关闭时在文件开头原地回填文件头，并根据内存中的偏移生成 .shx，
+ * 内存占用与文件大小无关（每条记录只保留 8 字节的 .shx 元数据）。
+ *
+ * @author zhangyh
+ */
+public class ShapefileFileWriter implements Closeable {
+
+    private final Path shpFile;
+    private final Charset charset;
+    private final FileChannel shp;
+    private final FileChannel dbf;
+    private final ShapefileStreamWriter writer;
+    private boolean closed;
+
+    public ShapefileFileWriter(Path shpFile, SimpleFeatureType schema) throws IOException {
+        this(shpFile, schema, StandardCharsets.UTF_8);
+    }
+
+    public ShapefileFileWriter(Path shpFile, SimpleFeatureType schema, Charset charset) throws IOException {
+        this.shpFile = shpFile;
+        this.charset = charset;
+        this.shp = FileChannel.open(shpFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel dbfChannel = null;
+        try {
+            dbfChannel = FileChannel.open(sibling(shpFile, "dbf"), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.dbf = dbfChannel;
+            this.writer = new ShapefileStreamWriter(schema, charset, shp, dbfChannel);
+        } catch (IOException | RuntimeException e) {
+            shp.close();
+            if (dbfChannel != null) {
+                dbfChannel.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 同名边车文件，如 a.shp -> a.dbf
+     */
+    public static Path sibling(Path shpFile, String extension) {
+        String name = shpFile.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot < 0 ? name : name.substring(0, dot);
+        return shpFile.resolveSibling(base + "." + extension);
+    }
+
+    public void write(SimpleFeature feature) throws IOException {
+        writer.write(feature);
+    }
+
+    public void write(Geometry geometry, Object[] attributes) throws IOException {
+        writer.write(geometry, attributes);
+    }
+
+    /**
+     * 写入后 .shp 或 .dbf 会超过 maxLength 字节时不写入并返回 false
+     */
+    public boolean write(Geometry geometry, Object[] attributes, long maxLength) throws IOException {
+        return writer.write(geometry, attributes, maxLength);
+    }
+
+    public Path getShpFile() {
+        return shpFile;
+    }
+
+    public int getRecordCount() {
+        return writer.getRecordCount();
+    }
+
+    public long getShpLength() {
+        return writer.getShpLength();
+    }
+
+    public long getDbaseLength() {
+        return writer.getDbaseLength();
+    }
+
+    public ShapefileStreamWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * 回填文件头、生成 .shx/.prj/.cpg 并关闭文件
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writer.finish();
+            writeAt(shp, writer.shpHeader());
+            writeAt(dbf, writer.dbaseHeader());
+            try (FileChannel shx = FileChannel.open(sibling(shpFile, "shx"), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writer.writeShx(shx);
+            }
+            String prj = writer.prj();
+            if (prj != null) {
+                Files.writeString(sibling(shpFile, "prj"), prj, StandardCharsets.ISO_8859_1);
+            }
+            Files.writeString(sibling(shpFile, "cpg"), charset.name(), StandardCharsets.US_ASCII);
+        } finally {
+            try {
+                shp.close();
+            } finally {
+                dbf.close();
+            }
+        }
+    }
+
+    private static void writeAt(FileChannel channel, ByteBuffer header) throws IOException {
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+    }
+}
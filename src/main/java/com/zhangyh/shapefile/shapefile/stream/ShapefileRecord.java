@@ -0,0 +1,116 @@
+package com.zhangyh.shapefile.shapefile.stream;
+
+import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+import org.geotools.data.shapefile.shp.ShapeType;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * 流式读取得到的一条记录：.shp 原始几何内容 + .dbf 原始行
+ * 几何与属性均为懒解码，只关心原始字节（如计算摘要）时不会产生解析开销。
+ *
+ * @author zhangyh
+ */
+public final class ShapefileRecord {
+
+    private final int number;
+    private final long offset;
+    private final ByteBuffer content;
+    private final byte[] row;
+    private final DbaseFileHeader dbaseHeader;
+    private final Charset charset;
+    private final GeometryFactory geometryFactory;
+
+    private Geometry geometry;
+    private boolean geometryDecoded;
+    private Object[] attributes;
+
+    ShapefileRecord(int number, long offset, ByteBuffer content, byte[] row,
+                    DbaseFileHeader dbaseHeader, Charset charset, GeometryFactory geometryFactory) {
+        this.number = number;
+        this.offset = offset;
+        this.content = content;
+        this.row = row;
+        this.dbaseHeader = dbaseHeader;
+        this.charset = charset;
+        this.geometryFactory = geometryFactory;
+    }
+
+    /**
+     * 记录号，从 1 开始
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    /**
+     * 记录头在 .shp 中的字节偏移
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public ShapeType getShapeType() {
+        return ShapeType.forID(content.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(0));
+    }
+
+    /**
+     * 记录内容（不含 8 字节记录头）的只读视图
+     */
+    public ByteBuffer getContent() {
+        return content.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * .dbf 原始行（含首字节删除标记），没有 .dbf 时为 null
+     */
+    public ByteBuffer getRow() {
+        return row == null ? null : ByteBuffer.wrap(row).asReadOnlyBuffer();
+    }
+
+    /**
+     * .dbf 行是否带有删除标记（'*'）
+     * 读取器按记录号与 .shp 对齐，不会跳过已删除的行，需要忽略它们的调用方自行过滤。
+     */
+    public boolean isDeleted() {
+        return row != null && ShapefileCodec.isDeleted(row);
+    }
+
+    public Geometry getGeometry() {
+        if (!geometryDecoded) {
+            try {
+                geometry = ShapefileCodec.decodeGeometry(content, geometryFactory);
+            } catch (IOException e) {
+                throw new UncheckedIOException("解析第 " + number + " 条记录的几何失败", e);
+            }
+            geometryDecoded = true;
+        }
+        return geometry;
+    }
+
+    /**
+     * 属性值，顺序与 .dbf 字段一致；没有对应的 .dbf 行时各字段均为 null
+     */
+    public Object[] getAttributes() {
+        if (attributes == null) {
+            attributes = row == null
+                    ? new Object[dbaseHeader == null ? 0 : dbaseHeader.getFieldCount()]
+                    : ShapefileCodec.decodeRow(dbaseHeader, row, charset);
+        }
+        return attributes;
+    }
+
+    /**
+     * 按字段名获取属性值，字段不存在时返回 null
+     */
+    public Object getAttribute(String name) {
+        int index = ShapefileCodec.fieldIndex(dbaseHeader, name);
+        return index < 0 ? null : getAttributes()[index];
+    }
+}
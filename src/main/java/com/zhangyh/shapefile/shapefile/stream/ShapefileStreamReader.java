@@ -0,0 +1,252 @@
+package com.zhangyh.shapefile.shapefile.stream;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+import org.geotools.data.shapefile.shp.ShapeType;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+
+/**
+ * 基于通道的 Shapefile 顺序读取器
+ * 与 {@link org.geotools.api.data.FileDataStoreFinder} 不同，它不要求 .shp/.dbf 是磁盘上的文件，
+ * 任何 {@link ReadableByteChannel}（压缩包条目、网络流等）都可以直接读取，不需要先落盘。
+ *
+ * @author zhangyh
+ */
+public class ShapefileStreamReader implements Closeable {
+
+    private static final GeometryFactory DEFAULT_GEOMETRY_FACTORY = new GeometryFactory();
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final ReadableByteChannel shpChannel;
+    private final ReadableByteChannel dbfChannel;
+    private final Charset charset;
+    private final CoordinateReferenceSystem crs;
+    private final String typeName;
+    private final GeometryFactory geometryFactory;
+
+    private final ShapefileCodec.Header header;
+    private final DbaseFileHeader dbaseHeader;
+    private final ByteBuffer recordHeader = ByteBuffer.allocate(ShapefileCodec.RECORD_HEADER_LENGTH);
+
+    /** 当前在 .shp 中的字节位置 */
+    private long position = ShapefileCodec.HEADER_LENGTH;
+    private int rowsRemaining;
+    private SimpleFeatureType schema;
+
+    /**
+     * @param shp      .shp 通道，必填
+     * @param dbf      .dbf 通道，可为 null（此时只有几何）
+     * @param charset  .dbf 字符编码
+     * @param crs      坐标系，可为 null
+     * @param typeName 图层名
+     */
+    public ShapefileStreamReader(ReadableByteChannel shp, ReadableByteChannel dbf, Charset charset,
+                                 CoordinateReferenceSystem crs, String typeName) throws IOException {
+        this(shp, dbf, charset, crs, typeName, DEFAULT_GEOMETRY_FACTORY);
+    }
+
+    public ShapefileStreamReader(ReadableByteChannel shp, ReadableByteChannel dbf, Charset charset,
+                                 CoordinateReferenceSystem crs, String typeName,
+                                 GeometryFactory geometryFactory) throws IOException {
+        this.shpChannel = shp;
+        this.dbfChannel = dbf;
+        this.charset = charset;
+        this.crs = crs;
+        this.typeName = typeName;
+        this.geometryFactory = geometryFactory;
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(ShapefileCodec.HEADER_LENGTH);
+            if (!ShapefileCodec.readFully(shp, buffer)) {
+                throw new IOException(".shp 文件为空");
+            }
+            this.header = ShapefileCodec.readHeader(buffer);
+            this.dbaseHeader = dbf == null ? null : readDbaseHeader(dbf, charset);
+            this.rowsRemaining = dbaseHeader == null ? 0 : dbaseHeader.getNumRecords();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * 打开磁盘上的 Shapefile：读取 .cpg/.prj，.shp/.dbf 使用带缓冲的顺序通道
+     */
+    public static ShapefileStreamReader open(Path shpFile) throws IOException {
+        Path dbfFile = ShapefileFileWriter.sibling(shpFile, "dbf");
+        Path cpgFile = ShapefileFileWriter.sibling(shpFile, "cpg");
+        Path prjFile = ShapefileFileWriter.sibling(shpFile, "prj");
+        Charset charset = ShapefileCodec.parseCharset(
+                Files.exists(cpgFile) ? Files.readString(cpgFile, StandardCharsets.US_ASCII) : null);
+        CoordinateReferenceSystem crs = ShapefileCodec.parseCrs(
+                Files.exists(prjFile) ? Files.readString(prjFile, StandardCharsets.ISO_8859_1) : null);
+        String name = shpFile.getFileName().toString();
+        String typeName = name.lastIndexOf('.') < 0 ? name : name.substring(0, name.lastIndexOf('.'));
+
+        ReadableByteChannel shp = bufferedChannel(shpFile);
+        ReadableByteChannel dbf = null;
+        try {
+            dbf = Files.exists(dbfFile) ? bufferedChannel(dbfFile) : null;
+            return new ShapefileStreamReader(shp, dbf, charset, crs, typeName);
+        } catch (IOException | RuntimeException e) {
+            shp.close();
+            if (dbf != null) {
+                dbf.close();
+            }
+            throw e;
+        }
+    }
+
+    private static ReadableByteChannel bufferedChannel(Path file) throws IOException {
+        return Channels.newChannel(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+    }
+
+    /**
+     * 先读出完整的表头字节再交给 GeoTools 解析，保证通道恰好停在第一行记录处
+     */
+    private static DbaseFileHeader readDbaseHeader(ReadableByteChannel channel, Charset charset) throws IOException {
+        ByteBuffer prefix = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+        if (!ShapefileCodec.readFully(channel, prefix)) {
+            throw new IOException(".dbf 文件为空");
+        }
+        int headerLength = prefix.getShort(8) & 0xFFFF;
+        byte[] bytes = new byte[headerLength];
+        prefix.flip();
+        prefix.get(bytes, 0, 32);
+        ShapefileCodec.readFully(channel, ByteBuffer.wrap(bytes, 32, headerLength - 32));
+        DbaseFileHeader header = new DbaseFileHeader();
+        header.readHeader(Channels.newChannel(new ByteArrayInputStream(bytes)), charset);
+        return header;
+    }
+
+    public String getTypeName() {
+        return typeName;
+    }
+
+    public ShapeType getShapeType() {
+        return header.shapeType();
+    }
+
+    /**
+     * 文件头中记录的图层范围
+     */
+    public Envelope getBounds() {
+        return new Envelope(header.bounds());
+    }
+
+    /**
+     * .shp 文件总长度（字节）
+     */
+    public long getFileLength() {
+        return header.fileLength();
+    }
+
+    public DbaseFileHeader getDbaseHeader() {
+        return dbaseHeader;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public CoordinateReferenceSystem getCrs() {
+        return crs;
+    }
+
+    /**
+     * 根据文件头推导出的 Schema，几何字段固定为 the_geom
+     */
+    public SimpleFeatureType getSchema() {
+        if (schema == null) {
+            SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+            builder.setName(typeName);
+            builder.setCRS(crs);
+            builder.add("the_geom", ShapefileCodec.geometryBinding(header.shapeType()));
+            if (dbaseHeader != null) {
+                for (int i = 0; i < dbaseHeader.getFieldCount(); i++) {
+                    if (Character.toUpperCase(dbaseHeader.getFieldType(i)) == 'C') {
+                        builder.length(dbaseHeader.getFieldLength(i));
+                    }
+                    builder.add(dbaseHeader.getFieldName(i), dbaseHeader.getFieldClass(i));
+                }
+            }
+            schema = builder.buildFeatureType();
+        }
+        return schema;
+    }
+
+    public boolean hasNext() {
+        return position < header.fileLength();
+    }
+
+    public ShapefileRecord next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("没有更多记录");
+        }
+        recordHeader.clear();
+        if (!ShapefileCodec.readFully(shpChannel, recordHeader)) {
+            // 文件头中的长度大于实际内容，视为读取结束
+            position = header.fileLength();
+            throw new NoSuchElementException("没有更多记录");
+        }
+        recordHeader.order(ByteOrder.BIG_ENDIAN);
+        int number = recordHeader.getInt(0);
+        int contentLength = recordHeader.getInt(4) * 2;
+        ByteBuffer content = ByteBuffer.allocate(contentLength).order(ByteOrder.LITTLE_ENDIAN);
+        ShapefileCodec.readFully(shpChannel, content);
+        content.flip();
+
+        byte[] row = null;
+        if (dbaseHeader != null && rowsRemaining > 0) {
+            row = new byte[dbaseHeader.getRecordLength()];
+            ShapefileCodec.readFully(dbfChannel, ByteBuffer.wrap(row));
+            rowsRemaining--;
+        }
+
+        long offset = position;
+        position += ShapefileCodec.RECORD_HEADER_LENGTH + contentLength;
+        return new ShapefileRecord(number, offset, content, row, dbaseHeader, charset, geometryFactory);
+    }
+
+    /**
+     * 将记录转换为 SimpleFeature，FID 规则与 GeoTools 一致：图层名.记录号
+     */
+    public SimpleFeature toFeature(ShapefileRecord record) {
+        Object[] attributes = record.getAttributes();
+        Object[] values = new Object[attributes.length + 1];
+        values[0] = record.getGeometry();
+        System.arraycopy(attributes, 0, values, 1, attributes.length);
+        return SimpleFeatureBuilder.build(getSchema(), values, typeName + "." + record.getNumber());
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (shpChannel != null) {
+                shpChannel.close();
+            }
+        } finally {
+            if (dbfChannel != null) {
+                dbfChannel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.zhangyh.shapefile.shapefile.stream;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.api.feature.type.GeometryDescriptor;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+import org.geotools.data.shapefile.dbf.DbaseFileWriter;
+import org.geotools.data.shapefile.shp.JTSUtilities;
+import org.geotools.data.shapefile.shp.ShapeHandler;
+import org.geotools.data.shapefile.shp.ShapeType;
+import org.geotools.data.shapefile.shp.ShapefileException;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * 基于通道的 Shapefile 顺序写入器
+ * 记录按顺序直接写入 .shp / .dbf 通道，文件头先写占位内容；
+ * 写入过程中只在内存中保留 .shx 所需的偏移/长度和图层范围等元数据，
+ * 写完后由调用方先调用 {@link #finish()} 写入 .dbf 结束符，再通过 {@link #shpHeader()}、{@link #dbaseHeader()} 回填文件头，
+ * 并用 {@link #writeShx} 生成索引。
+ * <p>
+ * 写入器不持有通道，不负责关闭通道。
+ *
+ * @author zhangyh
+ */
+public class ShapefileStreamWriter {
+
+    /** 规范约定的单文件上限（.shx 中使用 32 位偏移） */
+    public static final long MAX_FILE_LENGTH = Integer.MAX_VALUE;
+
+    /** .dbf 文件结束符 */
+    private static final byte DBASE_EOF = 0x1A;
+
+    private static final GeometryFactory geometryFactory = new GeometryFactory();
+
+    private final SimpleFeatureType schema;
+    private final WritableByteChannel shpChannel;
+    private final WritableByteChannel dbfChannel;
+    private final DbaseFileHeader dbaseHeader;
+    private final DbaseFileWriter dbaseWriter;
+    private final int geometryIndex;
+
+    private ShapeType shapeType;
+    private ShapeHandler handler;
+    private ByteBuffer recordBuffer = ByteBuffer.allocate(1024);
+
+    /** .shx 元数据：每条记录的偏移和内容长度（16 位字） */
+    private int[] offsets = new int[1024];
+    private int[] lengths = new int[1024];
+    private int count;
+    private long shpLength = ShapefileCodec.HEADER_LENGTH;
+    private final Envelope bounds = new Envelope();
+    private boolean finished;
+
+    public ShapefileStreamWriter(SimpleFeatureType schema, Charset charset,
+                                 WritableByteChannel shp, WritableByteChannel dbf) throws IOException {
+        this.schema = schema;
+        this.shpChannel = shp;
+        this.dbfChannel = dbf;
+        GeometryDescriptor geometryDescriptor = schema.getGeometryDescriptor();
+        this.geometryIndex = geometryDescriptor == null ? -1 : schema.indexOf(geometryDescriptor.getName());
+        this.shapeType = geometryDescriptor == null ? null : ShapefileCodec.shapeTypeOf(geometryDescriptor.getType().getBinding());
+        // 先写入占位文件头，结束后按实际内容回填
+        ShapefileCodec.writeFully(shp, ShapefileCodec.writeHeader(shapeType, 0, null));
+        this.dbaseHeader = ShapefileCodec.createDbaseHeader(schema);
+        this.dbaseWriter = new DbaseFileWriter(dbaseHeader, dbf, charset);
+    }
+
+    public SimpleFeatureType getSchema() {
+        return schema;
+    }
+
+    /**
+     * 按 Schema 顺序写入一个要素
+     */
+    public void write(SimpleFeature feature) throws IOException {
+        write((Geometry) feature.getDefaultGeometry(), attributes(feature));
+    }
+
+    /**
+     * 要素的属性值，顺序与 .dbf 字段一致
+     */
+    Object[] attributes(SimpleFeature feature) {
+        Object[] attributes = new Object[dbaseHeader.getFieldCount()];
+        int index = 0;
+        for (int i = 0; i < schema.getAttributeCount(); i++) {
+            if (i != geometryIndex) {
+                attributes[index++] = feature.getAttribute(i);
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * 写入一条记录
+     *
+     * @param geometry   几何，可为 null
+     * @param attributes 属性值，顺序与 .dbf 字段一致（即 Schema 中去掉几何字段）
+     */
+    public void write(Geometry geometry, Object[] attributes) throws IOException {
+        if (!write(geometry, attributes, MAX_FILE_LENGTH)) {
+            throw new ShapefileException(".shp 超过 2GB 上限，当前记录数: " + count);
+        }
+    }
+
+    /**
+     * 写入一条记录，写入后 .shp 或 .dbf 会超过 maxLength 字节时不写入并返回 false（用于分片）
+     */
+    public boolean write(Geometry geometry, Object[] attributes, long maxLength) throws IOException {
+        if (finished) {
+            throw new IOException("写入器已结束，不能继续写入记录");
+        }
+        ShapeType recordType = ShapeType.NULL;
+        Geometry shape = null;
+        int contentLength = 4;
+        if (geometry != null && !geometry.isEmpty()) {
+            if (shapeType == null) {
+                shapeType = ShapefileCodec.shapeTypeOf(geometry.getClass());
+                if (shapeType == null) {
+                    throw new ShapefileException("Shapefile 不支持的几何类型: " + geometry.getGeometryType());
+                }
+            }
+            if (handler == null) {
+                handler = shapeType.getShapeHandler(geometryFactory);
+            }
+            recordType = shapeType;
+            shape = JTSUtilities.convertToCollection(geometry, shapeType);
+            contentLength = handler.getLength(shape);
+        }
+        long recordLength = ShapefileCodec.RECORD_HEADER_LENGTH + contentLength;
+        long limit = Math.min(maxLength, MAX_FILE_LENGTH);
+        if (shpLength + recordLength > limit || getDbaseLength() + dbaseHeader.getRecordLength() > limit) {
+            return false;
+        }
+
+        if (recordBuffer.capacity() < recordLength) {
+            recordBuffer = ByteBuffer.allocate((int) Math.max(recordLength, recordBuffer.capacity() * 2L));
+        }
+        recordBuffer.clear();
+        recordBuffer.order(ByteOrder.BIG_ENDIAN);
+        recordBuffer.putInt(count + 1);
+        recordBuffer.putInt(contentLength / 2);
+        recordBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        recordBuffer.putInt(recordType.id);
+        if (shape != null) {
+            handler.write(recordBuffer, shape);
+            bounds.expandToInclude(shape.getEnvelopeInternal());
+        }
+        recordBuffer.flip();
+        ShapefileCodec.writeFully(shpChannel, recordBuffer);
+        dbaseWriter.write(attributes);
+
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+            lengths = Arrays.copyOf(lengths, count * 2);
+        }
+        offsets[count] = (int) (shpLength / 2);
+        lengths[count] = contentLength / 2;
+        count++;
+        shpLength += recordLength;
+        return true;
+    }
+
+    public int getRecordCount() {
+        return count;
+    }
+
+    /**
+     * 已写入的 .shp 字节数（含文件头）
+     */
+    public long getShpLength() {
+        return shpLength;
+    }
+
+    /**
+     * 写完后 .dbf 的字节数（含表头和 1 字节结束符）
+     */
+    public long getDbaseLength() {
+        return dbaseHeader.getHeaderLength() + (long) dbaseHeader.getRecordLength() * count + 1;
+    }
+
+    /**
+     * .shx 的字节数
+     */
+    public long getShxLength() {
+        return ShapefileCodec.HEADER_LENGTH + 8L * count;
+    }
+
+    public ShapeType getShapeType() {
+        return shapeType == null ? ShapeType.NULL : shapeType;
+    }
+
+    public Envelope getBounds() {
+        return new Envelope(bounds);
+    }
+
+    /**
+     * 结束记录写入：在 .dbf 末尾写入 0x1A 结束符，重复调用无副作用
+     * DbaseFileWriter 只在 close() 时写结束符且会同时关闭通道，而通道需要留给调用方回填表头，所以由这里直接写出。
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        ShapefileCodec.writeFully(dbfChannel, ByteBuffer.wrap(new byte[]{DBASE_EOF}));
+    }
+
+    /**
+     * 回填用的 .shp 文件头
+     */
+    public ByteBuffer shpHeader() {
+        return ShapefileCodec.writeHeader(getShapeType(), shpLength, bounds);
+    }
+
+    /**
+     * 回填用的 .dbf 表头（记录数为实际写入数）
+     */
+    public ByteBuffer dbaseHeader() throws IOException {
+        dbaseHeader.setNumRecords(count);
+        return ShapefileCodec.encodeDbaseHeader(dbaseHeader);
+    }
+
+    /**
+     * 根据内存中的偏移信息生成完整的 .shx
+     */
+    public void writeShx(WritableByteChannel channel) throws IOException {
+        ShapefileCodec.writeFully(channel, ShapefileCodec.writeHeader(getShapeType(), getShxLength(), bounds));
+        ByteBuffer buffer = ByteBuffer.allocate(8 * 1024).order(ByteOrder.BIG_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            if (!buffer.hasRemaining()) {
+                buffer.flip();
+                ShapefileCodec.writeFully(channel, buffer);
+                buffer.clear();
+            }
+            buffer.putInt(offsets[i]);
+            buffer.putInt(lengths[i]);
+        }
+        buffer.flip();
+        ShapefileCodec.writeFully(channel, buffer);
+    }
+
+    /**
+     * .prj 内容，没有坐标系时返回 null
+     */
+    public String prj() {
+        CoordinateReferenceSystem crs = schema.getCoordinateReferenceSystem();
+        return crs == null ? null : crs.toWKT();
+    }
+}
@@ -0,0 +1,380 @@
+package com.zhangyh.shapefile.shapefile.stream;
+
+import org.geotools.data.shapefile.shp.ShapeType;
+import org.locationtech.jts.geom.Envelope;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 分片图层的记录包围盒索引
+ * 构建时只读 .shx（记录偏移与长度）和 .shp 中每条记录内容开头的 bbox（点为坐标本身），不读 .dbf、不解析几何；
+ * 每条记录在平坦数组中只占 4 个 double 和 2 个 int，不创建对象。
+ * 条目按包围盒中心的 Z 序（Morton 码）排序后自底向上每 {@value #NODE_SIZE} 个打包一层，
+ * 查询时只为命中的记录创建 {@link ShardedShapefileReader.RecordRef}。
+ *
+ * @author zhangyh
+ */
+final class ShardBoxIndex {
+
+    static final int NODE_SIZE = 16;
+
+    /** 记录内容中读取包围盒所需的字节数：类型 + 4 个 double */
+    private static final int BOX_LENGTH = 36;
+    private static final int WINDOW_SIZE = 64 * 1024;
+
+    /** 每个分片第一个条目的全局下标，末尾追加条目总数 */
+    private final int[] shardStarts;
+    /** 记录头在 .shp 中的偏移（16 位字） */
+    private final int[] offsets;
+    /** 记录内容长度（16 位字） */
+    private final int[] lengths;
+    private final int size;
+    /** 节点 i 的包围盒为 boxes[4i..4i+3]（minX, minY, maxX, maxY），前 size 个节点是叶子 */
+    private final double[] boxes;
+    /** 叶子为条目下标，内部节点为第一个子节点的下标 */
+    private final int[] indices;
+    /** 每层节点下标的结束位置（不含） */
+    private final int[] levelBounds;
+
+    ShardBoxIndex(List<ShardBoxes> shards) throws IOException {
+        long total = 0;
+        this.shardStarts = new int[shards.size() + 1];
+        for (int i = 0; i < shards.size(); i++) {
+            shardStarts[i] = (int) total;
+            total += shards.get(i).count;
+            if (total > Integer.MAX_VALUE - 8) {
+                throw new IOException("记录数超过空间索引上限: " + total);
+            }
+        }
+        this.size = (int) total;
+        shardStarts[shards.size()] = size;
+
+        int n = size;
+        int numNodes = n;
+        int[] bounds = new int[32];
+        int levels = 0;
+        bounds[levels++] = n;
+        do {
+            n = (n + NODE_SIZE - 1) / NODE_SIZE;
+            numNodes += n;
+            bounds[levels++] = numNodes;
+        } while (n > 1);
+        this.levelBounds = Arrays.copyOf(bounds, levels);
+        this.offsets = new int[size];
+        this.lengths = new int[size];
+        this.boxes = new double[numNodes * 4];
+        this.indices = new int[numNodes];
+
+        double[] itemBoxes = new double[size * 4];
+        for (int i = 0; i < shards.size(); i++) {
+            ShardBoxes shard = shards.get(i);
+            System.arraycopy(shard.offsets, 0, offsets, shardStarts[i], shard.count);
+            System.arraycopy(shard.lengths, 0, lengths, shardStarts[i], shard.count);
+            System.arraycopy(shard.boxes, 0, itemBoxes, shardStarts[i] * 4, shard.count * 4);
+        }
+        pack(itemBoxes);
+    }
+
+    private void pack(double[] itemBoxes) {
+        Envelope extent = new Envelope();
+        for (int i = 0; i < size; i++) {
+            if (itemBoxes[4 * i] <= itemBoxes[4 * i + 2]) {
+                extent.expandToInclude(itemBoxes[4 * i], itemBoxes[4 * i + 1]);
+                extent.expandToInclude(itemBoxes[4 * i + 2], itemBoxes[4 * i + 3]);
+            }
+        }
+        double width = extent.getWidth() > 0 ? extent.getWidth() : 1;
+        double height = extent.getHeight() > 0 ? extent.getHeight() : 1;
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            double cx = (itemBoxes[4 * i] + itemBoxes[4 * i + 2]) / 2;
+            double cy = (itemBoxes[4 * i + 1] + itemBoxes[4 * i + 3]) / 2;
+            // 空几何的中心为 NaN，转换后落在 0
+            int gx = (int) Math.max(0, Math.min(0xFFFF, 0xFFFF * (cx - extent.getMinX()) / width));
+            int gy = (int) Math.max(0, Math.min(0xFFFF, 0xFFFF * (cy - extent.getMinY()) / height));
+            // 高 32 位为 Morton 码，低 32 位为条目下标，排序后即得条目顺序
+            keys[i] = ((long) (interleave(gx) | interleave(gy) << 1) << 32) | i;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < size; i++) {
+            int item = (int) keys[i];
+            System.arraycopy(itemBoxes, 4 * item, boxes, 4 * i, 4);
+            indices[i] = item;
+        }
+
+        int pos = 0;
+        int node = size;
+        for (int level = 0; level < levelBounds.length - 1; level++) {
+            int end = levelBounds[level];
+            while (pos < end) {
+                int first = pos;
+                double minX = Double.POSITIVE_INFINITY;
+                double minY = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY;
+                double maxY = Double.NEGATIVE_INFINITY;
+                for (int j = 0; j < NODE_SIZE && pos < end; j++, pos++) {
+                    minX = Math.min(minX, boxes[4 * pos]);
+                    minY = Math.min(minY, boxes[4 * pos + 1]);
+                    maxX = Math.max(maxX, boxes[4 * pos + 2]);
+                    maxY = Math.max(maxY, boxes[4 * pos + 3]);
+                }
+                boxes[4 * node] = minX;
+                boxes[4 * node + 1] = minY;
+                boxes[4 * node + 2] = maxX;
+                boxes[4 * node + 3] = maxY;
+                indices[node] = first;
+                node++;
+            }
+        }
+        if (size == 0) {
+            Arrays.fill(boxes, Double.NaN);
+        }
+    }
+
+    /**
+     * 16 位整数的各位之间插入 0
+     */
+    private static int interleave(int v) {
+        v = (v | (v << 8)) & 0x00FF00FF;
+        v = (v | (v << 4)) & 0x0F0F0F0F;
+        v = (v | (v << 2)) & 0x33333333;
+        v = (v | (v << 1)) & 0x55555555;
+        return v;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 包围盒与 envelope 相交的记录，按分片、记录号无序返回
+     */
+    List<ShardedShapefileReader.RecordRef> query(Envelope envelope) {
+        List<ShardedShapefileReader.RecordRef> hits = new ArrayList<>();
+        if (size == 0 || envelope.isNull()) {
+            return hits;
+        }
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = indices.length - 1;
+        while (top > 0) {
+            int node = stack[--top];
+            if (boxes[4 * node + 2] < envelope.getMinX() || boxes[4 * node] > envelope.getMaxX()
+                    || boxes[4 * node + 3] < envelope.getMinY() || boxes[4 * node + 1] > envelope.getMaxY()) {
+                continue;
+            }
+            if (node < size) {
+                hits.add(ref(indices[node], node));
+                continue;
+            }
+            int end = childrenEnd(node);
+            for (int child = indices[node]; child < end; child++) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = child;
+            }
+        }
+        return hits;
+    }
+
+    private int childrenEnd(int node) {
+        int first = indices[node];
+        int levelEnd = 0;
+        for (int bound : levelBounds) {
+            if (bound > first) {
+                levelEnd = bound;
+                break;
+            }
+        }
+        return Math.min(first + NODE_SIZE, levelEnd);
+    }
+
+    private ShardedShapefileReader.RecordRef ref(int item, int node) {
+        int shard = Arrays.binarySearch(shardStarts, item);
+        if (shard < 0) {
+            shard = -shard - 2;
+        } else {
+            // 跳过没有记录的分片
+            while (shardStarts[shard + 1] == item) {
+                shard++;
+            }
+        }
+        Envelope bounds = new Envelope(boxes[4 * node], boxes[4 * node + 2], boxes[4 * node + 1], boxes[4 * node + 3]);
+        return new ShardedShapefileReader.RecordRef(shard, item - shardStarts[shard] + 1,
+                offsets[item] * 2L, lengths[item] * 2, bounds);
+    }
+
+    /**
+     * 读取一个分片全部记录的偏移、长度和包围盒
+     * 有 .shx 时按其中的偏移读取；没有时依次读取 .shp 记录头。两种方式都只读每条记录开头的几十个字节，
+     * 相邻记录落在同一个 {@value #WINDOW_SIZE} 字节的窗口内时共用一次读取。
+     */
+    static ShardBoxes read(Path shpFile) throws IOException {
+        Path shxFile = ShapefileFileWriter.sibling(shpFile, "shx");
+        try (FileChannel shp = FileChannel.open(shpFile, StandardOpenOption.READ)) {
+            Window window = new Window(shp);
+            if (Files.exists(shxFile)) {
+                return readWithShx(shxFile, window);
+            }
+            return readRecordHeaders(window);
+        }
+    }
+
+    private static ShardBoxes readWithShx(Path shxFile, Window window) throws IOException {
+        try (FileChannel shx = FileChannel.open(shxFile, StandardOpenOption.READ)) {
+            long count = (shx.size() - ShapefileCodec.HEADER_LENGTH) / 8;
+            if (count < 0 || count > Integer.MAX_VALUE / 4) {
+                throw new IOException(shxFile.getFileName() + " 长度不合法: " + shx.size());
+            }
+            ShardBoxes shard = new ShardBoxes((int) count);
+            ByteBuffer buffer = ByteBuffer.allocate(WINDOW_SIZE).order(ByteOrder.BIG_ENDIAN);
+            long position = ShapefileCodec.HEADER_LENGTH;
+            int i = 0;
+            while (i < count) {
+                buffer.clear();
+                int n = shx.read(buffer, position);
+                if (n < 0) {
+                    throw new IOException(shxFile.getFileName() + " 长度不足");
+                }
+                position += n;
+                buffer.flip();
+                while (buffer.remaining() >= 8 && i < count) {
+                    int offset = buffer.getInt();
+                    int length = buffer.getInt();
+                    shard.add(offset, length, window);
+                    i++;
+                }
+                position -= buffer.remaining();
+            }
+            return shard;
+        }
+    }
+
+    private static ShardBoxes readRecordHeaders(Window window) throws IOException {
+        ByteBuffer header = window.at(0, ShapefileCodec.HEADER_LENGTH);
+        if (header == null) {
+            throw new IOException(".shp 文件头不完整");
+        }
+        long fileLength = Math.min(window.channel.size(),
+                (header.order(ByteOrder.BIG_ENDIAN).getInt(header.position() + 24) & 0xFFFFFFFFL) * 2);
+        ShardBoxes shard = new ShardBoxes(1024);
+        long position = ShapefileCodec.HEADER_LENGTH;
+        while (position + ShapefileCodec.RECORD_HEADER_LENGTH <= fileLength) {
+            ByteBuffer record = window.at(position, ShapefileCodec.RECORD_HEADER_LENGTH);
+            int length = record.order(ByteOrder.BIG_ENDIAN).getInt(record.position() + 4);
+            if (length < 0) {
+                throw new IOException(".shp 记录头不合法，偏移: " + position);
+            }
+            shard.add((int) (position / 2), length, window);
+            position += ShapefileCodec.RECORD_HEADER_LENGTH + length * 2L;
+        }
+        return shard;
+    }
+
+    /**
+     * 一个分片的记录偏移、长度与包围盒，空几何的包围盒为 (+∞, +∞, -∞, -∞)，不会与任何范围相交
+     */
+    static final class ShardBoxes {
+        int count;
+        int[] offsets;
+        int[] lengths;
+        double[] boxes;
+
+        ShardBoxes(int capacity) {
+            this.offsets = new int[capacity];
+            this.lengths = new int[capacity];
+            this.boxes = new double[capacity * 4];
+        }
+
+        void add(int offset, int length, Window window) throws IOException {
+            if (count == offsets.length) {
+                int capacity = Math.max(16, count * 2);
+                offsets = Arrays.copyOf(offsets, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                boxes = Arrays.copyOf(boxes, capacity * 4);
+            }
+            offsets[count] = offset;
+            lengths[count] = length;
+            int box = 4 * count++;
+            boxes[box] = Double.POSITIVE_INFINITY;
+            boxes[box + 1] = Double.POSITIVE_INFINITY;
+            boxes[box + 2] = Double.NEGATIVE_INFINITY;
+            boxes[box + 3] = Double.NEGATIVE_INFINITY;
+
+            int available = (int) Math.min(length * 2L, BOX_LENGTH);
+            if (available < 4) {
+                return;
+            }
+            ByteBuffer content = window.at(offset * 2L + ShapefileCodec.RECORD_HEADER_LENGTH, available);
+            if (content == null) {
+                throw new IOException(".shp 长度与索引不符，记录偏移: " + offset * 2L);
+            }
+            content.order(ByteOrder.LITTLE_ENDIAN);
+            int p = content.position();
+            ShapeType type = ShapeType.forID(content.getInt(p));
+            if (type == ShapeType.NULL || available < (type.isPointType() ? 20 : BOX_LENGTH)) {
+                return;
+            }
+            if (type.isPointType()) {
+                double x = content.getDouble(p + 4);
+                double y = content.getDouble(p + 12);
+                boxes[box] = x;
+                boxes[box + 1] = y;
+                boxes[box + 2] = x;
+                boxes[box + 3] = y;
+            } else {
+                boxes[box] = content.getDouble(p + 4);
+                boxes[box + 1] = content.getDouble(p + 12);
+                boxes[box + 2] = content.getDouble(p + 20);
+                boxes[box + 3] = content.getDouble(p + 28);
+            }
+        }
+    }
+
+    /**
+     * .shp 上的定位读取窗口：请求的字节已在窗口内时直接返回，否则从请求位置重新读取一个窗口
+     */
+    static final class Window {
+        final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(WINDOW_SIZE);
+        private long start;
+        private int length;
+
+        Window(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * @return position 起 count 个字节的视图（position() 指向首字节），文件长度不足时返回 null
+         */
+        ByteBuffer at(long position, int count) throws IOException {
+            if (position < start || position + count > start + length) {
+                buffer.clear();
+                long filePosition = position;
+                while (buffer.hasRemaining()) {
+                    int n = channel.read(buffer, filePosition);
+                    if (n < 0) {
+                        break;
+                    }
+                    filePosition += n;
+                }
+                start = position;
+                length = buffer.position();
+                if (count > length) {
+                    return null;
+                }
+            }
+            return buffer.duplicate().limit((int) (position - start) + count).position((int) (position - start));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.zhangyh.shapefile.shapefile.stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.locationtech.jts.geom.Envelope;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * 分片图层清单（layer.shards.json），与分片文件放在同一目录
+ * 每个分片本身都是完整合法的 Shapefile，清单只记录分片顺序、记录数和范围，
+ * 因此任何一个节点拿到清单和其中一个分片即可独立处理。
+ *
+ * @param layer       图层名
+ * @param shapeType   几何类型（GeoTools ShapeType 名称）
+ * @param charset     .dbf 编码
+ * @param recordCount 全部分片的记录总数
+ * @param shards      按顺序排列的分片
+ * @author zhangyh
+ */
+public record ShardManifest(String layer, String shapeType, String charset, long recordCount, List<Shard> shards) {
+
+    public static final String SUFFIX = ".shards.json";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    public static ShardManifest read(Path manifestFile) throws IOException {
+        return MAPPER.readValue(manifestFile.toFile(), ShardManifest.class);
+    }
+
+    /**
+     * 先写临时文件再原子替换，读取方不会看到写了一半的清单
+     */
+    public void write(Path manifestFile) throws IOException {
+        Path temp = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+        MAPPER.writeValue(temp.toFile(), this);
+        Files.move(temp, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 全部分片范围的并集
+     */
+    public Envelope bounds() {
+        Envelope bounds = new Envelope();
+        for (Shard shard : shards) {
+            bounds.expandToInclude(shard.bounds());
+        }
+        return bounds;
+    }
+
+    /**
+     * 一个分片
+     *
+     * @param file        .shp 文件名（相对清单所在目录）
+     * @param firstRecord 分片第一条记录在整个图层中的序号，从 1 开始
+     * @param records     分片记录数
+     * @param shpLength   .shp 字节数
+     * @param dbfLength   .dbf 字节数
+     */
+    public record Shard(String file, long firstRecord, int records, long shpLength, long dbfLength,
+                        double minX, double minY, double maxX, double maxY) {
+
+        public Envelope bounds() {
+            return records == 0 || minX > maxX ? new Envelope() : new Envelope(minX, maxX, minY, maxY);
+        }
+    }
+}
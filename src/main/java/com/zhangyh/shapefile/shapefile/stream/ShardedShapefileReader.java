@@ -0,0 +1,323 @@
+package com.zhangyh.shapefile.shapefile.stream;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 按清单把多个分片当作一个图层读取
+ * 1. 顺序读取：{@link #forEach} 依次扫描所有分片，记录序号在整个图层中连续。
+ * 2. 并行读取：{@link #scanShards} 每个分片一个任务，分片之间没有共享状态；跨节点处理时各节点用 {@link #openShard} 只读自己的分片。
+ * 3. 空间查询：{@link #index} 并行读取各分片的 .shx 和 .shp 记录内容开头的 bbox（不读 .dbf，不解析几何），
+ * 合并成一个平坦数组上的打包 R 树（见 {@link ShardBoxIndex}），命中后按偏移随机读取记录。
+ *
+ * @author zhangyh
+ */
+public class ShardedShapefileReader implements Closeable {
+
+    private static final GeometryFactory DEFAULT_GEOMETRY_FACTORY = new GeometryFactory();
+
+    private final Path directory;
+    private final ShardManifest manifest;
+    private final ShardFiles[] files;
+    private volatile ShardBoxIndex index;
+    private SimpleFeatureType schema;
+
+    public ShardedShapefileReader(Path manifestFile) throws IOException {
+        this.directory = manifestFile.toAbsolutePath().getParent();
+        this.manifest = ShardManifest.read(manifestFile);
+        this.files = new ShardFiles[manifest.shards().size()];
+    }
+
+    /**
+     * 打开目录下指定图层的清单
+     */
+    public static ShardedShapefileReader open(Path directory, String layer) throws IOException {
+        return new ShardedShapefileReader(ShardedShapefileWriter.manifestFile(directory, layer));
+    }
+
+    public ShardManifest getManifest() {
+        return manifest;
+    }
+
+    public String getLayerName() {
+        return manifest.layer();
+    }
+
+    public long getRecordCount() {
+        return manifest.recordCount();
+    }
+
+    public int getShardCount() {
+        return manifest.shards().size();
+    }
+
+    public Envelope getBounds() {
+        return manifest.bounds();
+    }
+
+    public Path getShardFile(int shard) {
+        return directory.resolve(manifest.shards().get(shard).file());
+    }
+
+    /**
+     * 图层结构取自第一个分片，名称为图层名
+     */
+    public synchronized SimpleFeatureType getSchema() throws IOException {
+        if (schema == null) {
+            try (ShapefileStreamReader reader = openShard(0)) {
+                SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+                builder.init(reader.getSchema());
+                builder.setName(manifest.layer());
+                schema = builder.buildFeatureType();
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * 单独打开一个分片顺序读取，调用方负责关闭
+     */
+    public ShapefileStreamReader openShard(int shard) throws IOException {
+        return ShapefileStreamReader.open(getShardFile(shard));
+    }
+
+    /**
+     * 按顺序读取全部分片
+     */
+    public void forEach(RecordVisitor visitor) throws IOException {
+        for (int i = 0; i < getShardCount(); i++) {
+            long first = manifest.shards().get(i).firstRecord();
+            try (ShapefileStreamReader reader = openShard(i)) {
+                long number = first;
+                while (reader.hasNext()) {
+                    visitor.visit(number++, reader.next());
+                }
+            }
+        }
+    }
+
+    /**
+     * 每个分片一个任务并行扫描，结果按分片顺序返回
+     */
+    public <R> List<R> scanShards(int parallelism, ShardScan<R> scan) throws IOException {
+        return runShards(parallelism, shard -> {
+            try (ShapefileStreamReader reader = openShard(shard)) {
+                return scan.scan(shard, reader);
+            }
+        });
+    }
+
+    private <R> List<R> runShards(int parallelism, ShardTask<R> task) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, getShardCount())));
+        try {
+            List<Future<R>> futures = new ArrayList<>();
+            for (int i = 0; i < getShardCount(); i++) {
+                int shard = i;
+                futures.add(executor.submit(() -> task.run(shard)));
+            }
+            List<R> results = new ArrayList<>(futures.size());
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("分片扫描被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 构建合并空间索引，已构建时直接返回
+     * 每个分片一个任务读取 .shx 与记录包围盒，内存占用约为每条记录 48 字节。
+     */
+    public void index(int parallelism) throws IOException {
+        if (index != null) {
+            return;
+        }
+        synchronized (this) {
+            if (index == null) {
+                index = new ShardBoxIndex(runShards(parallelism, shard -> ShardBoxIndex.read(getShardFile(shard))));
+            }
+        }
+    }
+
+    /**
+     * 包围盒与 envelope 相交的记录（候选集，需再做精确几何判断），首次调用时构建索引
+     */
+    public List<RecordRef> query(Envelope envelope) throws IOException {
+        index(Runtime.getRuntime().availableProcessors());
+        return index.query(envelope);
+    }
+
+    /**
+     * 按引用随机读取一条记录，可被多个线程同时调用
+     */
+    public ShapefileRecord read(RecordRef ref) throws IOException {
+        ShardFiles shard = files(ref.shard());
+        ByteBuffer content = ByteBuffer.allocate(ref.contentLength()).order(ByteOrder.LITTLE_ENDIAN);
+        readAt(shard.shp, content, ref.offset() + ShapefileCodec.RECORD_HEADER_LENGTH);
+        content.flip();
+        byte[] row = null;
+        if (shard.dbaseHeader != null) {
+            row = new byte[shard.dbaseHeader.getRecordLength()];
+            readAt(shard.dbf, ByteBuffer.wrap(row),
+                    shard.dbaseHeader.getHeaderLength() + (long) (ref.number() - 1) * row.length);
+        }
+        return new ShapefileRecord(ref.number(), ref.offset(), content, row, shard.dbaseHeader, shard.charset,
+                DEFAULT_GEOMETRY_FACTORY);
+    }
+
+    /**
+     * 按引用读取要素，FID 为 图层名.全局序号
+     */
+    public SimpleFeature readFeature(RecordRef ref) throws IOException {
+        ShapefileRecord record = read(ref);
+        Object[] attributes = record.getAttributes();
+        Object[] values = new Object[attributes.length + 1];
+        values[0] = record.getGeometry();
+        System.arraycopy(attributes, 0, values, 1, attributes.length);
+        long number = manifest.shards().get(ref.shard()).firstRecord() + ref.number() - 1;
+        return SimpleFeatureBuilder.build(getSchema(), values, manifest.layer() + "." + number);
+    }
+
+    private ShardFiles files(int shard) throws IOException {
+        ShardFiles opened = files[shard];
+        if (opened == null) {
+            synchronized (files) {
+                opened = files[shard];
+                if (opened == null) {
+                    opened = new ShardFiles(getShardFile(shard));
+                    files[shard] = opened;
+                }
+            }
+        }
+        return opened;
+    }
+
+    private static void readAt(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new EOFException("分片文件长度与索引不符");
+            }
+            position += n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        synchronized (files) {
+            for (int i = 0; i < files.length; i++) {
+                if (files[i] != null) {
+                    try {
+                        files[i].close();
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                    files[i] = null;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * 记录在分片中的位置
+     *
+     * @param shard         分片下标，从 0 开始
+     * @param number        分片内记录号，从 1 开始
+     * @param offset        记录头在 .shp 中的字节偏移
+     * @param contentLength 记录内容字节数（不含记录头）
+     * @param bounds        记录内容中的包围盒
+     */
+    public record RecordRef(int shard, int number, long offset, int contentLength, Envelope bounds) {
+    }
+
+    @FunctionalInterface
+    public interface RecordVisitor {
+        /**
+         * @param number 记录在整个图层中的序号，从 1 开始
+         */
+        void visit(long number, ShapefileRecord record) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface ShardScan<R> {
+        R scan(int shard, ShapefileStreamReader reader) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ShardTask<R> {
+        R run(int shard) throws IOException;
+    }
+
+    /**
+     * 随机读取用的分片文件，FileChannel 的定位读取是线程安全的
+     */
+    private static final class ShardFiles implements Closeable {
+        final FileChannel shp;
+        final FileChannel dbf;
+        final DbaseFileHeader dbaseHeader;
+        final Charset charset;
+
+        ShardFiles(Path shpFile) throws IOException {
+            try (ShapefileStreamReader reader = ShapefileStreamReader.open(shpFile)) {
+                this.dbaseHeader = reader.getDbaseHeader();
+                this.charset = reader.getCharset();
+            }
+            this.shp = FileChannel.open(shpFile, StandardOpenOption.READ);
+            try {
+                this.dbf = dbaseHeader == null ? null
+                        : FileChannel.open(ShapefileFileWriter.sibling(shpFile, "dbf"), StandardOpenOption.READ);
+            } catch (IOException e) {
+                shp.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                shp.close();
+            } finally {
+                if (dbf != null) {
+                    dbf.close();
+                }
+            }
+        }
+    }
+}
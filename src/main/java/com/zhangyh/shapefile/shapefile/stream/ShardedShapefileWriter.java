@@ -0,0 +1,159 @@
+package com.zhangyh.shapefile.shapefile.stream;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.data.shapefile.shp.ShapefileException;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 超过 2GB 时自动分片的 Shapefile 写入器
+ * .shx 使用 32 位偏移，单个 .shp/.dbf 不能超过 2GB。写入器在下一条记录会使当前分片超过字节上限、
+ * 或记录数达到上限时，关闭当前分片并新建 layer_00002.shp、layer_00003.shp ……，
+ * 每完成一个分片就更新一次清单（见 {@link ShardManifest}），用 {@link ShardedShapefileReader} 作为一个图层读取。
+ *
+ * @author zhangyh
+ */
+public class ShardedShapefileWriter implements Closeable {
+
+    private final Path directory;
+    private final String layer;
+    private final SimpleFeatureType schema;
+    private final Charset charset;
+    private final long maxShardBytes;
+    private final int maxShardRecords;
+    private final List<ShardManifest.Shard> shards = new ArrayList<>();
+
+    private ShapefileFileWriter current;
+    private String shapeType;
+    private long recordCount;
+    private boolean closed;
+
+    /**
+     * 按 2GB 上限分片，编码 UTF-8
+     */
+    public ShardedShapefileWriter(Path directory, String layer, SimpleFeatureType schema) throws IOException {
+        this(directory, layer, schema, StandardCharsets.UTF_8, ShapefileStreamWriter.MAX_FILE_LENGTH, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxShardBytes   单个分片 .shp/.dbf 的字节上限，不超过 2GB
+     * @param maxShardRecords 单个分片的记录数上限
+     */
+    public ShardedShapefileWriter(Path directory, String layer, SimpleFeatureType schema, Charset charset,
+                                  long maxShardBytes, int maxShardRecords) throws IOException {
+        if (maxShardBytes <= ShapefileCodec.HEADER_LENGTH || maxShardRecords <= 0) {
+            throw new IllegalArgumentException("分片上限过小: " + maxShardBytes + " 字节, " + maxShardRecords + " 条");
+        }
+        this.directory = directory;
+        this.layer = layer;
+        this.schema = schema;
+        this.charset = charset;
+        this.maxShardBytes = Math.min(maxShardBytes, ShapefileStreamWriter.MAX_FILE_LENGTH);
+        this.maxShardRecords = maxShardRecords;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * 清单文件路径：目录/layer.shards.json
+     */
+    public static Path manifestFile(Path directory, String layer) {
+        return directory.resolve(layer + ShardManifest.SUFFIX);
+    }
+
+    public void write(SimpleFeature feature) throws IOException {
+        ensureShard();
+        write((Geometry) feature.getDefaultGeometry(), current.getWriter().attributes(feature));
+    }
+
+    public void write(Geometry geometry, Object[] attributes) throws IOException {
+        ensureShard();
+        if (current.getRecordCount() >= maxShardRecords || !current.write(geometry, attributes, maxShardBytes)) {
+            if (current.getRecordCount() == 0) {
+                throw new ShapefileException("单条记录超过分片上限 " + maxShardBytes + " 字节");
+            }
+            rollOver();
+            if (!current.write(geometry, attributes, maxShardBytes)) {
+                throw new ShapefileException("单条记录超过分片上限 " + maxShardBytes + " 字节");
+            }
+        }
+        recordCount++;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * 已创建的分片数（含正在写入的分片）
+     */
+    public int getShardCount() {
+        return shards.size() + (current == null ? 0 : 1);
+    }
+
+    public Path getManifestFile() {
+        return manifestFile(directory, layer);
+    }
+
+    private void ensureShard() throws IOException {
+        if (closed) {
+            throw new IOException("写入器已关闭");
+        }
+        if (current == null) {
+            current = new ShapefileFileWriter(directory.resolve(shardName(shards.size() + 1)), schema, charset);
+        }
+    }
+
+    private void rollOver() throws IOException {
+        finishShard();
+        writeManifest();
+        ensureShard();
+    }
+
+    private void finishShard() throws IOException {
+        ShapefileFileWriter writer = current;
+        current = null;
+        writer.close();
+        shapeType = writer.getWriter().getShapeType().name;
+        Envelope bounds = writer.getWriter().getBounds();
+        long firstRecord = shards.isEmpty() ? 1 : last().firstRecord() + last().records();
+        shards.add(new ShardManifest.Shard(writer.getShpFile().getFileName().toString(), firstRecord,
+                writer.getRecordCount(), writer.getShpLength(), writer.getDbaseLength(),
+                bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY()));
+    }
+
+    private ShardManifest.Shard last() {
+        return shards.get(shards.size() - 1);
+    }
+
+    private void writeManifest() throws IOException {
+        new ShardManifest(layer, shapeType, charset.name(), recordCount, List.copyOf(shards)).write(getManifestFile());
+    }
+
+    private String shardName(int index) {
+        return String.format("%s_%05d.shp", layer, index);
+    }
+
+    /**
+     * 关闭最后一个分片并写出最终清单；没有写入任何记录时也会生成一个空分片
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        ensureShard();
+        closed = true;
+        finishShard();
+        writeManifest();
+    }
+}
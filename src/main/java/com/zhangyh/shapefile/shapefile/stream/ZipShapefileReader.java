@@ -0,0 +1,431 @@
+package com.zhangyh.shapefile.shapefile.stream;
+
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 直接读取 .zip 压缩包中的 Shapefile，不解压到磁盘
+ * 原理：自行解析 ZIP 中央目录，得到每个条目在压缩包内的数据位置：
+ * <ul>
+ *     <li>STORED（未压缩）条目：直接在压缩包上开一个可定位的只读通道，支持按 .shx 随机访问记录</li>
+ *     <li>DEFLATED 条目：边读边解压的缓冲流，只支持顺序读取</li>
+ * </ul>
+ * 所有通道都基于 {@link FileChannel} 的定位读，同一个压缩包可以被多个读取器并发读取。
+ *
+ * @author zhangyh
+ */
+public class ZipShapefileReader implements Closeable {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    /** 条目名（小写）-> 条目 */
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    public ZipShapefileReader(Path zipFile) throws IOException {
+        this.channel = FileChannel.open(zipFile, StandardOpenOption.READ);
+        try {
+            readCentralDirectory();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 压缩包中的图层名（.shp 去掉扩展名，包含目录前缀）
+     */
+    public List<String> getLayerNames() {
+        List<String> names = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            String lower = entry.name.toLowerCase(Locale.ROOT);
+            if (lower.endsWith(".shp") && !lower.startsWith("__macosx/")) {
+                names.add(entry.name.substring(0, entry.name.length() - 4));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 打开压缩包中的第一个图层
+     */
+    public ShapefileStreamReader open() throws IOException {
+        List<String> layers = getLayerNames();
+        if (layers.isEmpty()) {
+            throw new IOException("压缩包中没有 .shp 文件");
+        }
+        return open(layers.get(0));
+    }
+
+    public ShapefileStreamReader open(String layer) throws IOException {
+        Entry shp = requireEntry(layer, "shp");
+        Entry dbf = entry(layer, "dbf");
+        ReadableByteChannel shpChannel = openChannel(shp);
+        ReadableByteChannel dbfChannel = null;
+        try {
+            dbfChannel = dbf == null ? null : openChannel(dbf);
+            String typeName = layer.substring(layer.lastIndexOf('/') + 1);
+            return new ShapefileStreamReader(shpChannel, dbfChannel, readCharset(layer), readCrs(layer), typeName, geometryFactory);
+        } catch (IOException | RuntimeException e) {
+            shpChannel.close();
+            if (dbfChannel != null) {
+                dbfChannel.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 通过 .shx 随机读取第 index 条（从 0 开始）记录的几何
+     * 要求 .shp 以 STORED 方式存放在压缩包中；.shx 压缩与否均可。
+     */
+    public Geometry readGeometry(String layer, int index) throws IOException {
+        Entry shp = requireEntry(layer, "shp");
+        if (shp.method != METHOD_STORED) {
+            throw new IOException(shp.name + " 为压缩存储，不支持随机访问，请使用 open() 顺序读取");
+        }
+        Entry shx = requireEntry(layer, "shx");
+        ByteBuffer indexEntry = ByteBuffer.allocate(8).order(ByteOrder.BIG_ENDIAN);
+        try (ReadableByteChannel shxChannel = openChannel(shx)) {
+            long position = ShapefileCodec.HEADER_LENGTH + 8L * index;
+            if (shxChannel instanceof SeekableByteChannel seekable) {
+                seekable.position(position);
+            } else {
+                skipFully(shxChannel, position);
+            }
+            if (!ShapefileCodec.readFully(shxChannel, indexEntry)) {
+                throw new IndexOutOfBoundsException("记录序号越界: " + index);
+            }
+        }
+        long offset = (indexEntry.getInt(0) & 0xFFFFFFFFL) * 2;
+        int contentLength = indexEntry.getInt(4) * 2;
+        ByteBuffer content = ByteBuffer.allocate(contentLength).order(ByteOrder.LITTLE_ENDIAN);
+        try (EntryChannel shpChannel = new EntryChannel(channel, shp.dataOffset, shp.size)) {
+            shpChannel.position(offset + ShapefileCodec.RECORD_HEADER_LENGTH);
+            ShapefileCodec.readFully(shpChannel, content);
+        }
+        content.flip();
+        return ShapefileCodec.decodeGeometry(content, geometryFactory);
+    }
+
+    /**
+     * 读取 .prj，缺失或无法解析时返回 null
+     */
+    public CoordinateReferenceSystem readCrs(String layer) throws IOException {
+        return ShapefileCodec.parseCrs(readText(layer, "prj", StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * 读取 .cpg 中声明的编码，缺失时使用 ISO-8859-1
+     */
+    public Charset readCharset(String layer) throws IOException {
+        return ShapefileCodec.parseCharset(readText(layer, "cpg", StandardCharsets.US_ASCII));
+    }
+
+    private String readText(String layer, String extension, Charset charset) throws IOException {
+        Entry entry = entry(layer, extension);
+        if (entry == null) {
+            return null;
+        }
+        try (InputStream in = Channels.newInputStream(openChannel(entry))) {
+            return new String(in.readAllBytes(), charset);
+        }
+    }
+
+    private Entry entry(String layer, String extension) {
+        return entries.get((layer + "." + extension).toLowerCase(Locale.ROOT));
+    }
+
+    private Entry requireEntry(String layer, String extension) throws IOException {
+        Entry entry = entry(layer, extension);
+        if (entry == null) {
+            throw new IOException("压缩包中缺少 " + layer + "." + extension);
+        }
+        return entry;
+    }
+
+    /**
+     * STORED 条目返回可定位通道，DEFLATED 条目返回缓冲的解压流
+     */
+    private ReadableByteChannel openChannel(Entry entry) throws IOException {
+        EntryChannel raw = new EntryChannel(channel, entry.dataOffset, entry.compressedSize);
+        if (entry.method == METHOD_STORED) {
+            return raw;
+        }
+        if (entry.method == METHOD_DEFLATED) {
+            InputStream in = new EntryInflaterStream(Channels.newInputStream(raw));
+            return Channels.newChannel(new BufferedInputStream(in, BUFFER_SIZE));
+        }
+        raw.close();
+        throw new IOException(entry.name + " 使用了不支持的压缩方式: " + entry.method);
+    }
+
+    private static void skipFully(ReadableByteChannel channel, long n) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+        while (n > 0) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), n));
+            int read = channel.read(buffer);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            n -= read;
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // ZIP 结构解析
+    // ------------------------------------------------------------------
+
+    private void readCentralDirectory() throws IOException {
+        long size = channel.size();
+        int tailLength = (int) Math.min(size, 22 + 0xFFFF);
+        ByteBuffer tail = readAt(size - tailLength, tailLength);
+        int end = -1;
+        for (int i = tailLength - 22; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new IOException("不是有效的 zip 文件：找不到中央目录结束标记");
+        }
+        long entryCount = tail.getShort(end + 10) & 0xFFFF;
+        long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+        if (directoryOffset == 0xFFFFFFFFL || entryCount == 0xFFFF) {
+            // ZIP64：通过定位器找到 ZIP64 结束记录
+            int locator = end - 20;
+            if (locator < 0 || tail.getInt(locator) != ZIP64_LOCATOR_SIGNATURE) {
+                throw new IOException("ZIP64 压缩包缺少定位器");
+            }
+            ByteBuffer zip64End = readAt(tail.getLong(locator + 8), 56);
+            if (zip64End.getInt(0) != ZIP64_END_SIGNATURE) {
+                throw new IOException("ZIP64 结束记录损坏");
+            }
+            entryCount = zip64End.getLong(32);
+            directoryOffset = zip64End.getLong(48);
+        }
+
+        long position = directoryOffset;
+        for (long i = 0; i < entryCount; i++) {
+            ByteBuffer header = readAt(position, 46);
+            if (header.getInt(0) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("中央目录损坏，位置: " + position);
+            }
+            int flags = header.getShort(8) & 0xFFFF;
+            int method = header.getShort(10) & 0xFFFF;
+            long compressedSize = header.getInt(20) & 0xFFFFFFFFL;
+            long uncompressedSize = header.getInt(24) & 0xFFFFFFFFL;
+            int nameLength = header.getShort(28) & 0xFFFF;
+            int extraLength = header.getShort(30) & 0xFFFF;
+            int commentLength = header.getShort(32) & 0xFFFF;
+            long localOffset = header.getInt(42) & 0xFFFFFFFFL;
+
+            ByteBuffer variable = readAt(position + 46, nameLength + extraLength);
+            byte[] nameBytes = new byte[nameLength];
+            variable.get(nameBytes);
+            // 第 11 位标记文件名为 UTF-8，否则按单字节读取（只用于匹配扩展名）
+            String name = new String(nameBytes, (flags & 0x800) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+
+            // ZIP64 扩展字段：仅包含在主记录中被置为 0xFFFFFFFF 的值
+            int extraEnd = nameLength + extraLength;
+            int p = nameLength;
+            while (p + 4 <= extraEnd) {
+                int id = variable.getShort(p) & 0xFFFF;
+                int length = variable.getShort(p + 2) & 0xFFFF;
+                if (id == 0x0001) {
+                    int q = p + 4;
+                    if (uncompressedSize == 0xFFFFFFFFL) {
+                        uncompressedSize = variable.getLong(q);
+                        q += 8;
+                    }
+                    if (compressedSize == 0xFFFFFFFFL) {
+                        compressedSize = variable.getLong(q);
+                        q += 8;
+                    }
+                    if (localOffset == 0xFFFFFFFFL) {
+                        localOffset = variable.getLong(q);
+                    }
+                    break;
+                }
+                p += 4 + length;
+            }
+
+            if (!name.endsWith("/")) {
+                ByteBuffer local = readAt(localOffset, 30);
+                if (local.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                    throw new IOException("条目本地头损坏: " + name);
+                }
+                long dataOffset = localOffset + 30 + (local.getShort(26) & 0xFFFF) + (local.getShort(28) & 0xFFFF);
+                entries.put(name.toLowerCase(Locale.ROOT), new Entry(name, method, dataOffset, compressedSize, uncompressedSize));
+            }
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+    }
+
+    private ByteBuffer readAt(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new EOFException("zip 文件被截断");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private record Entry(String name, int method, long dataOffset, long compressedSize, long size) {
+    }
+
+    /**
+     * 压缩包中某一段字节的只读、可定位视图
+     * 使用定位读，不改变底层 FileChannel 的位置，因此多个视图可以并发使用。
+     */
+    private static final class EntryChannel implements SeekableByteChannel {
+
+        private final FileChannel file;
+        private final long start;
+        private final long size;
+        private long position;
+        private boolean open = true;
+
+        EntryChannel(FileChannel file, long start, long size) {
+            this.file = file;
+            this.start = start;
+            this.size = size;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (position >= size) {
+                return -1;
+            }
+            int limit = dst.limit();
+            long remaining = size - position;
+            if (dst.remaining() > remaining) {
+                dst.limit(dst.position() + (int) remaining);
+            }
+            try {
+                int n = file.read(dst, start + position);
+                if (n > 0) {
+                    position += n;
+                }
+                return n;
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) {
+            this.position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+    /**
+     * 解压 ZIP 中的原始 deflate 数据
+     * 与 JDK ZipFile 的做法相同：nowrap 模式下在输入结束时补一个哑字节，并在关闭时释放 Inflater。
+     */
+    private static final class EntryInflaterStream extends InflaterInputStream {
+
+        private boolean eof;
+
+        EntryInflaterStream(InputStream in) {
+            super(in, new Inflater(true), BUFFER_SIZE);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof) {
+                throw new EOFException("压缩数据意外结束");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.zhangyh.shapefile.shapefile.stream;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.locationtech.jts.geom.Geometry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 将 Shapefile 直接写成 .zip 输出流（如 HTTP 响应），不需要先在磁盘上生成完整图层
+ * ZIP 条目只能顺序写出，而 .shp/.dbf 文件头依赖写完后才知道的长度、范围和记录数，
+ * 因此记录内容先写入暂存通道，结束时按 {@link ShapefileStreamWriter} 记录的元数据回填文件头，
+ * 再依次输出 .shp、.shx、.dbf、.prj、.cpg 条目。
+ * <p>
+ * 暂存通道在 {@link #spoolThreshold(int)} 以内保存在堆内存中，超过后整体转存到临时文件，
+ * 所以堆占用有固定上限，大图层只占用临时目录的磁盘空间；临时文件在 {@link #close()} 时删除。
+ * <p>
+ * 使用 STORED 方式输出时，{@link ZipShapefileReader} 可以对结果直接随机访问。
+ *
+ * @author zhangyh
+ */
+public class ZipShapefileWriter implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(ZipShapefileWriter.class.getName());
+
+    /** 默认单个暂存文件（.shp、.shx 或 .dbf）保存在内存中的字节上限 */
+    public static final int DEFAULT_SPOOL_THRESHOLD = 8 * 1024 * 1024;
+
+    /** 字节数组的实际上限，略小于 Integer.MAX_VALUE */
+    private static final int MAX_SPOOL_THRESHOLD = Integer.MAX_VALUE - 8;
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final ZipOutputStream zip;
+    private final String layerName;
+    private final Charset charset;
+    private final boolean stored;
+    private final Spool shp = new Spool("shp");
+    private final Spool shx = new Spool("shx");
+    private final Spool dbf = new Spool("dbf");
+    private final ShapefileStreamWriter writer;
+    private boolean finished;
+
+    public ZipShapefileWriter(OutputStream out, String layerName, SimpleFeatureType schema) throws IOException {
+        this(out, layerName, schema, StandardCharsets.UTF_8, false);
+    }
+
+    /**
+     * @param out       输出流，关闭写入器时一并关闭
+     * @param layerName 压缩包内的文件名（不含扩展名）
+     * @param schema    图层结构
+     * @param charset   .dbf 编码，同时写入 .cpg
+     * @param stored    true 表示条目不压缩（STORED），便于读取端随机访问
+     */
+    public ZipShapefileWriter(OutputStream out, String layerName, SimpleFeatureType schema,
+                              Charset charset, boolean stored) throws IOException {
+        this.zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+        this.layerName = layerName;
+        this.charset = charset;
+        this.stored = stored;
+        this.writer = new ShapefileStreamWriter(schema, charset, shp, dbf);
+    }
+
+    /**
+     * 单个暂存文件保存在内存中的字节上限，超过后转存到临时文件；0 表示始终使用临时文件
+     * 只影响之后写入的内容，应在写入第一条记录前设置。
+     */
+    public ZipShapefileWriter spoolThreshold(int spoolThreshold) {
+        if (spoolThreshold < 0) {
+            throw new IllegalArgumentException("spoolThreshold 不能小于 0: " + spoolThreshold);
+        }
+        int threshold = Math.min(spoolThreshold, MAX_SPOOL_THRESHOLD);
+        shp.threshold = threshold;
+        shx.threshold = threshold;
+        dbf.threshold = threshold;
+        return this;
+    }
+
+    public void write(SimpleFeature feature) throws IOException {
+        write((Geometry) feature.getDefaultGeometry(), writer.attributes(feature));
+    }
+
+    /**
+     * 写入一条记录，.shp 或 .dbf 超过格式上限（2GB）时抛出 ShapefileException
+     */
+    public void write(Geometry geometry, Object[] attributes) throws IOException {
+        writer.write(geometry, attributes);
+    }
+
+    public int getRecordCount() {
+        return writer.getRecordCount();
+    }
+
+    /**
+     * 是否已有暂存内容转存到临时文件
+     */
+    public boolean isSpooled() {
+        return shp.file != null || shx.file != null || dbf.file != null;
+    }
+
+    /**
+     * 回填文件头并输出全部条目，不关闭底层输出流
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+
+        writer.finish();
+        shp.patch(writer.shpHeader());
+        writeEntry("shp", shp);
+
+        writer.writeShx(shx);
+        writeEntry("shx", shx);
+
+        dbf.patch(writer.dbaseHeader());
+        writeEntry("dbf", dbf);
+
+        String prj = writer.prj();
+        if (prj != null) {
+            writeEntry("prj", prj.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        writeEntry("cpg", charset.name().getBytes(StandardCharsets.US_ASCII));
+        zip.finish();
+    }
+
+    /**
+     * 把磁盘上已写好的 Shapefile（含存在的边车文件）打包写入输出流，不关闭输出流
+     */
+    public static void zip(Path shpFile, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+        for (String extension : new String[]{"shp", "shx", "dbf", "prj", "cpg"}) {
+            Path file = ShapefileFileWriter.sibling(shpFile, extension);
+            if (Files.exists(file)) {
+                zip.putNextEntry(new ZipEntry(file.getFileName().toString()));
+                Files.copy(file, zip);
+                zip.closeEntry();
+            }
+        }
+        zip.finish();
+    }
+
+    private void writeEntry(String extension, Spool content) throws IOException {
+        ZipEntry entry = new ZipEntry(layerName + "." + extension);
+        if (stored) {
+            // STORED 条目要求先写出 CRC，暂存内容需要读两遍
+            CRC32 crc = new CRC32();
+            content.copyTo(null, crc);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.size());
+            entry.setCompressedSize(content.size());
+            entry.setCrc(crc.getValue());
+        }
+        zip.putNextEntry(entry);
+        content.copyTo(zip, null);
+        zip.closeEntry();
+    }
+
+    private void writeEntry(String extension, byte[] content) throws IOException {
+        ZipEntry entry = new ZipEntry(layerName + "." + extension);
+        if (stored) {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.length);
+            entry.setCompressedSize(content.length);
+            entry.setCrc(crc.getValue());
+        }
+        zip.putNextEntry(entry);
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            try {
+                zip.close();
+            } finally {
+                shp.close();
+                shx.close();
+                dbf.close();
+            }
+        }
+    }
+
+    /**
+     * 可回填开头字节的暂存通道：不超过阈值时保存在内存中，超过后整体转存到临时文件
+     */
+    private static final class Spool implements WritableByteChannel, Closeable {
+
+        private final String extension;
+        int threshold = DEFAULT_SPOOL_THRESHOLD;
+        private byte[] memory = new byte[0];
+        private int count;
+        private Path file;
+        private FileChannel channel;
+        private long size;
+
+        Spool(String extension) {
+            this.extension = extension;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int n = src.remaining();
+            if (channel == null && size + n > threshold) {
+                spill();
+            }
+            if (channel == null) {
+                if (count + n > memory.length) {
+                    int capacity = (int) Math.min(threshold, Math.max(count + n, Math.max(COPY_BUFFER_SIZE, memory.length * 2L)));
+                    memory = Arrays.copyOf(memory, capacity);
+                }
+                src.get(memory, count, n);
+                count += n;
+            } else {
+                ShapefileCodec.writeFully(channel, src);
+            }
+            size += n;
+            return n;
+        }
+
+        private void spill() throws IOException {
+            file = Files.createTempFile("zip-shapefile-", "." + extension);
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ShapefileCodec.writeFully(channel, ByteBuffer.wrap(memory, 0, count));
+            memory = null;
+            count = 0;
+        }
+
+        /**
+         * 从头覆盖写入文件头
+         */
+        void patch(ByteBuffer header) throws IOException {
+            if (channel == null) {
+                header.get(memory, 0, header.remaining());
+                return;
+            }
+            long position = 0;
+            while (header.hasRemaining()) {
+                position += channel.write(header, position);
+            }
+        }
+
+        long size() {
+            return size;
+        }
+
+        /**
+         * 从头读出全部内容，写入 out 并更新 crc（均可为 null）
+         */
+        void copyTo(OutputStream out, CRC32 crc) throws IOException {
+            if (channel == null) {
+                if (crc != null) {
+                    crc.update(memory, 0, count);
+                }
+                if (out != null) {
+                    out.write(memory, 0, count);
+                }
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+            long position = 0;
+            while (position < size) {
+                buffer.clear();
+                int n = channel.read(buffer, position);
+                if (n < 0) {
+                    throw new IOException("临时文件 " + file + " 长度不足，期望 " + size + " 字节");
+                }
+                position += n;
+                if (crc != null) {
+                    crc.update(buffer.array(), 0, n);
+                }
+                if (out != null) {
+                    out.write(buffer.array(), 0, n);
+                }
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+            memory = null;
+            if (file == null) {
+                return;
+            }
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "删除临时文件 " + file + " 失败", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.zhangyh.shapefile.job;
+
+import com.zhangyh.shapefile.shapefile.stream.ShapefileStreamReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 任务名额、配额、取消与转换任务
+ *
+ * @author zhangyh
+ */
+class JobServiceTests {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * 任务名额与上传配额：满额拒绝、排队中取消、运行中取消、失败和成功后名额都要归还
+     */
+    @Test
+    void jobSlotsAndCancellation() throws Exception {
+        JobProperties properties = new JobProperties();
+        properties.setMaxActiveJobs(2);
+        properties.setMaxRunningJobs(1);
+        properties.setMaxPendingBytes(100);
+        properties.setCpuThreads(1);
+        properties.setWorkDir(tempDir);
+        JobService service = new JobService(properties);
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch proceed = new CountDownLatch(1);
+            JobTask blocking = context -> {
+                context.addRecords(5);
+                started.countDown();
+                proceed.await();
+            };
+            Job running = service.submit("test", upload(10), blocking);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertEquals(JobStatus.RUNNING, running.getStatus());
+            assertEquals(5, running.getRecordsProcessed());
+
+            Job queued = service.submit("test", upload(10), context -> {
+            });
+            assertEquals(JobStatus.QUEUED, queued.getStatus());
+            assertThrows(JobRejectedException.class, () -> service.submit("test", upload(10), context -> {
+            }));
+
+            // 排队中取消：名额立即归还，配额仍被运行中的任务占用 10 字节
+            service.cancel(queued.getId());
+            awaitFinished(queued);
+            assertEquals(JobStatus.CANCELLED, queued.getStatus());
+            assertThrows(JobRejectedException.class, () -> service.submit("test", upload(95), context -> {
+            }));
+            Admission admission = service.admit(90);
+            service.release(admission);
+            service.release(admission);
+
+            // 运行中取消：阻塞的任务被中断
+            service.cancel(running.getId());
+            awaitFinished(running);
+            assertEquals(JobStatus.CANCELLED, running.getStatus());
+
+            Job failing = service.submit("test", upload(10), context -> {
+                throw new IOException("boom");
+            });
+            awaitFinished(failing);
+            assertEquals(JobStatus.FAILED, failing.getStatus());
+            assertEquals("boom", failing.getError());
+
+            // 所有名额和配额都已归还
+            Job first = service.submit("test", upload(50), context -> context.addRecords(1));
+            Job second = service.submit("test", upload(50), context -> context.addRecords(2));
+            awaitFinished(first);
+            awaitFinished(second);
+            assertEquals(JobStatus.SUCCEEDED, first.getStatus());
+            assertEquals(2, second.getRecordsProcessed());
+            service.release(service.admit(100));
+            service.release(service.admit(100));
+        } finally {
+            service.destroy();
+        }
+    }
+
+    private static MockMultipartFile upload(int size) {
+        return new MockMultipartFile("file", "input.json", "application/json", new byte[size]);
+    }
+
+    private static void awaitFinished(Job job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!job.getStatus().isFinished()) {
+            assertTrue(System.nanoTime() < deadline, "任务未在 10 秒内结束: " + job.getId());
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * GeoJSON 转 Shapefile 任务：正常转换；没有要素时失败并给出原因
+     */
+    @Test
+    void geoJsonToShapefile() throws Exception {
+        JobProperties properties = new JobProperties();
+        properties.setCpuThreads(1);
+        properties.setWorkDir(tempDir);
+        JobService service = new JobService(properties);
+        try {
+            String geoJson = "{\"type\":\"FeatureCollection\",\"features\":["
+                    + "{\"type\":\"Feature\",\"properties\":{\"name\":\"Beijing\"},\"geometry\":{\"type\":\"Point\",\"coordinates\":[116.397,39.908]}},"
+                    + "{\"type\":\"Feature\",\"properties\":{\"name\":\"Shanghai\"},\"geometry\":{\"type\":\"Point\",\"coordinates\":[121.473,31.230]}}]}";
+            Job job = service.submit("geojson", json(geoJson), ConversionTasks.geoJsonToShapefile());
+            awaitFinished(job);
+            assertEquals(JobStatus.SUCCEEDED, job.getStatus(), job.getError());
+            assertEquals(2, job.getRecordsProcessed());
+            try (ShapefileStreamReader reader = ShapefileStreamReader.open(job.getResult())) {
+                assertEquals("Beijing", reader.next().getAttribute("name"));
+                assertEquals(121.473, reader.next().getGeometry().getCoordinate().x, 1e-9);
+                assertFalse(reader.hasNext());
+            }
+
+            Job empty = service.submit("geojson", json("{\"type\":\"FeatureCollection\",\"features\":[]}"),
+                    ConversionTasks.geoJsonToShapefile());
+            awaitFinished(empty);
+            assertEquals(JobStatus.FAILED, empty.getStatus());
+            assertTrue(empty.getError().contains("没有要素"), empty.getError());
+        } finally {
+            service.destroy();
+        }
+    }
+
+    private static MockMultipartFile json(String content) {
+        return new MockMultipartFile("file", "input.json", "application/json", content.getBytes(StandardCharsets.UTF_8));
+    }
+}
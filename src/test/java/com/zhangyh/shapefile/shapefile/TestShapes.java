@@ -0,0 +1,50 @@
+package com.zhangyh.shapefile.shapefile;
+
+import com.zhangyh.shapefile.shapefile.stream.ShapefileFileWriter;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 测试用的几何与文件工具
+ *
+ * @author zhangyh
+ */
+public final class TestShapes {
+
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    private TestShapes() {
+    }
+
+    /**
+     * 经度 120 + offset * 0.01、纬度 30 处边长 0.01° 的正方形
+     */
+    public static Polygon square(int offset) {
+        double x = 120 + offset * 0.01;
+        return GEOMETRY_FACTORY.createPolygon(new Coordinate[]{
+                new Coordinate(x, 30), new Coordinate(x + 0.01, 30), new Coordinate(x + 0.01, 30.01),
+                new Coordinate(x, 30.01), new Coordinate(x, 30)});
+    }
+
+    /**
+     * 给 .dbf 中第 number 行（从 1 开始）打上删除标记
+     */
+    public static void markDeleted(Path shpFile, int number) throws IOException {
+        try (FileChannel dbf = FileChannel.open(ShapefileFileWriter.sibling(shpFile, "dbf"),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            dbf.read(header, 0);
+            long position = Short.toUnsignedInt(header.getShort(8))
+                    + (long) Short.toUnsignedInt(header.getShort(10)) * (number - 1);
+            dbf.write(ByteBuffer.wrap(new byte[]{'*'}), position);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.zhangyh.shapefile.shapefile.coverage;
+
+import com.zhangyh.shapefile.shapefile.stream.ShapefileFileWriter;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.data.DataUtilities;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.operation.buffer.BufferOp;
+import org.locationtech.jts.operation.buffer.BufferParameters;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 作业覆盖分析
+ *
+ * @author zhangyh
+ */
+class CoverageEngineTests {
+
+    private static final double X0 = 500000;
+    private static final double Y0 = 3300000;
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * 10 米幅宽 9 趟覆盖 0~90 米，另有一趟与前两趟各重叠 3 米和 7 米：漏喷 1000 m²，重喷 1000 m²
+     */
+    @Test
+    void coverageAndOverlap() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("tracks", "the_geom:LineString,PASS:Integer");
+        Path tracks = tempDir.resolve("tracks.shp");
+        try (ShapefileFileWriter writer = new ShapefileFileWriter(tracks, type)) {
+            for (int pass = 0; pass < 9; pass++) {
+                writer.write(track(X0 + 5 + pass * 10), new Object[]{pass});
+            }
+            writer.write(track(X0 + 12), new Object[]{9});
+        }
+        Geometry field = GEOMETRY_FACTORY.toGeometry(new Envelope(X0, X0 + 100, Y0, Y0 + 100));
+        Map<String, Geometry> zones = Map.of(
+                "Z1", GEOMETRY_FACTORY.toGeometry(new Envelope(X0, X0 + 50, Y0, Y0 + 100)),
+                "Z2", GEOMETRY_FACTORY.toGeometry(new Envelope(X0 + 50, X0 + 100, Y0, Y0 + 100)));
+
+        CoverageResult result = new CoverageEngine(10).tileSize(30).mergeBatch(3).parallelism(4)
+                .compute(tracks, field, zones);
+        assertEquals(10000, result.getTotal().area(), 0.01);
+        assertEquals(9000, result.getTotal().covered(), 0.01);
+        assertEquals(1000, result.getTotal().skipped(), 0.01);
+        assertEquals(1000, result.getTotal().doubled(), 0.01);
+        assertEquals(1000, result.getSkipped().getArea(), 0.01);
+
+        CoverageResult.ZoneCoverage z1 = result.getZones().get(0);
+        CoverageResult.ZoneCoverage z2 = result.getZones().get(1);
+        assertEquals("Z1", z1.zone());
+        assertEquals(5000, z1.covered(), 0.01);
+        assertEquals(1000, z1.doubled(), 0.01);
+        assertEquals(1000, z2.skipped(), 0.01);
+        assertEquals(0, z2.doubled(), 0.01);
+    }
+
+    /**
+     * 半径 50 米、转过 270° 的弯道有 900 个顶点，跨过多个内部分段：既不重喷也不漏缝，面积与整条线一次缓冲相同；
+     * 同一条记录内长 100 米、间距 5 米的往返（10 米幅宽）重叠 5 × 95 = 475 m²
+     */
+    @Test
+    void coverageIndependentOfChunks() throws Exception {
+        Coordinate[] arc = new Coordinate[900];
+        for (int i = 0; i < arc.length; i++) {
+            double angle = 1.5 * Math.PI * i / (arc.length - 1);
+            arc[i] = new Coordinate(X0 + 100 + 50 * Math.cos(angle), Y0 + 100 + 50 * Math.sin(angle));
+        }
+        LineString curve = GEOMETRY_FACTORY.createLineString(arc);
+        LineString shuttle = GEOMETRY_FACTORY.createLineString(new Coordinate[]{
+                new Coordinate(X0 + 200, Y0 + 10), new Coordinate(X0 + 300, Y0 + 10),
+                new Coordinate(X0 + 300, Y0 + 15), new Coordinate(X0 + 200, Y0 + 15)});
+        SimpleFeatureType type = DataUtilities.createType("tracks", "the_geom:LineString,PASS:Integer");
+        Path tracks = tempDir.resolve("tracks.shp");
+        try (ShapefileFileWriter writer = new ShapefileFileWriter(tracks, type)) {
+            writer.write(curve, new Object[]{0});
+            writer.write(shuttle, new Object[]{1});
+        }
+        Geometry field = GEOMETRY_FACTORY.toGeometry(new Envelope(X0, X0 + 320, Y0, Y0 + 170));
+
+        CoverageResult result = new CoverageEngine(10).tileSize(30).mergeBatch(3).parallelism(4)
+                .compute(tracks, field, Map.of());
+        BufferParameters parameters = new BufferParameters(4, BufferParameters.CAP_FLAT, BufferParameters.JOIN_ROUND, 5);
+        parameters.setSimplifyFactor(0);
+        double expected = BufferOp.bufferOp(curve, 5, parameters).getArea() + BufferOp.bufferOp(shuttle, 5, parameters).getArea();
+        assertEquals(expected, result.getTotal().covered(), 0.01);
+        assertEquals(475, result.getTotal().doubled(), 0.01);
+        assertEquals(0, result.getDoubled().intersection(curve.buffer(6)).getArea(), 0.01);
+    }
+
+    /**
+     * 边界图层有两个地块，地块 A 由两条记录组成：按 FIELD_ID 分别统计，A 全部作业，B 只作业了一半
+     */
+    @Test
+    void coveragePerField() throws Exception {
+        SimpleFeatureType boundaryType = DataUtilities.createType("fields", "the_geom:Polygon,FIELD_ID:String");
+        Path boundaries = tempDir.resolve("fields.shp");
+        try (ShapefileFileWriter writer = new ShapefileFileWriter(boundaries, boundaryType)) {
+            writer.write(GEOMETRY_FACTORY.toGeometry(new Envelope(X0, X0 + 50, Y0, Y0 + 100)), new Object[]{"A"});
+            writer.write(GEOMETRY_FACTORY.toGeometry(new Envelope(X0 + 300, X0 + 400, Y0, Y0 + 100)), new Object[]{"B"});
+            writer.write(GEOMETRY_FACTORY.toGeometry(new Envelope(X0 + 50, X0 + 100, Y0, Y0 + 100)), new Object[]{"A"});
+        }
+        SimpleFeatureType type = DataUtilities.createType("tracks", "the_geom:LineString,PASS:Integer");
+        Path tracks = tempDir.resolve("tracks.shp");
+        try (ShapefileFileWriter writer = new ShapefileFileWriter(tracks, type)) {
+            for (int pass = 0; pass < 10; pass++) {
+                writer.write(track(X0 + 5 + pass * 10), new Object[]{pass});
+            }
+            for (int pass = 0; pass < 5; pass++) {
+                writer.write(track(X0 + 305 + pass * 10), new Object[]{10 + pass});
+            }
+        }
+        Map<String, Geometry> zones = Map.of(
+                "Z1", GEOMETRY_FACTORY.toGeometry(new Envelope(X0, X0 + 100, Y0, Y0 + 100)),
+                "Z2", GEOMETRY_FACTORY.toGeometry(new Envelope(X0 + 300, X0 + 400, Y0, Y0 + 100)));
+
+        Map<String, Geometry> fields = CoverageEngine.loadFields(boundaries, "FIELD_ID");
+        assertEquals(List.of("A", "B"), List.copyOf(fields.keySet()));
+        Map<String, CoverageResult> results = new CoverageEngine(10).tileSize(30).parallelism(4)
+                .computeFields(tracks, fields, zones);
+
+        CoverageResult a = results.get("A");
+        assertEquals(10000, a.getTotal().area(), 0.01);
+        assertEquals(10000, a.getTotal().covered(), 0.01);
+        assertEquals(0, a.getTotal().skipped(), 0.01);
+        assertEquals(1, a.getZones().size());
+        assertEquals("Z1", a.getZones().get(0).zone());
+
+        CoverageResult b = results.get("B");
+        assertEquals(10000, b.getTotal().area(), 0.01);
+        assertEquals(5000, b.getTotal().covered(), 0.01);
+        assertEquals(5000, b.getSkipped().getArea(), 0.01);
+        assertEquals(1, b.getZones().size());
+        assertEquals(5000, b.getZones().get(0).skipped(), 0.01);
+    }
+
+    private static LineString track(double x) {
+        return GEOMETRY_FACTORY.createLineString(new Coordinate[]{
+                new Coordinate(x, Y0), new Coordinate(x, Y0 + 50), new Coordinate(x, Y0 + 100)});
+    }
+}
@@ -0,0 +1,168 @@
+package com.zhangyh.shapefile.shapefile.diff;
+
+import com.zhangyh.shapefile.shapefile.stream.ShapefileFileWriter;
+import com.zhangyh.shapefile.shapefile.stream.ShapefileRecord;
+import com.zhangyh.shapefile.shapefile.stream.ShapefileStreamReader;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.data.DataUtilities;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.zhangyh.shapefile.shapefile.TestShapes.markDeleted;
+import static com.zhangyh.shapefile.shapefile.TestShapes.square;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 处方图版本差异比较
+ *
+ * @author zhangyh
+ */
+class ShapefileDiffTests {
+
+    private static final String PRESCRIPTION = "the_geom:Polygon:srid=4326,ZONE:String,PRODUCT:String,DOSE:Double";
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * 按 ZONE 比较两版处方图：Z1 不变，Z2 剂量变化，Z3 删除，Z4 新增
+     */
+    @Test
+    void diffPrescriptionVersions() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("prescription", PRESCRIPTION);
+        Path oldShp = tempDir.resolve("old.shp");
+        Path newShp = tempDir.resolve("new.shp");
+        try (ShapefileFileWriter writer = new ShapefileFileWriter(oldShp, type)) {
+            writer.write(square(0), new Object[]{"Z1", "Rice", 10.0});
+            writer.write(square(1), new Object[]{"Z2", "Rice", 12.0});
+            writer.write(square(2), new Object[]{"Z3", "Rice", 14.0});
+        }
+        try (ShapefileFileWriter writer = new ShapefileFileWriter(newShp, type)) {
+            writer.write(square(0), new Object[]{"Z1", "Rice", 10.0});
+            writer.write(square(1), new Object[]{"Z2", "Rice", 15.5});
+            writer.write(square(3), new Object[]{"Z4", "Rice", 9.0});
+        }
+
+        DiffResult result = ShapefileDiff.byKey("ZONE").compare(oldShp, newShp);
+        assertEquals(List.of(3), result.getAdded());
+        assertEquals(List.of(3), result.getRemoved());
+        assertEquals(List.of(new DiffResult.Modification(2, 2, ChangeKind.ATTRIBUTES)), result.getModified());
+
+        Path patch = tempDir.resolve("patch.shp");
+        result.writeShapefile(patch);
+        try (ShapefileStreamReader reader = ShapefileStreamReader.open(patch)) {
+            int count = 0;
+            while (reader.hasNext()) {
+                ShapefileRecord record = reader.next();
+                if ("modified".equals(record.getAttribute(DiffResult.OP_FIELD))) {
+                    assertEquals("DOSE", record.getAttribute(DiffResult.FIELDS_FIELD));
+                }
+                count++;
+            }
+            assertEquals(3, count);
+        }
+    }
+
+    /**
+     * 补丁结构是两个版本字段的并集：删除记录保留旧版独有的字段，新增记录保留新版独有的字段
+     */
+    @Test
+    void patchSchemaIsUnionOfBothVersions() throws Exception {
+        Path oldShp = tempDir.resolve("old.shp");
+        Path newShp = tempDir.resolve("new.shp");
+        try (ShapefileFileWriter writer = new ShapefileFileWriter(oldShp,
+                DataUtilities.createType("prescription", "the_geom:Polygon:srid=4326,ZONE:String,DOSE:Double,NOTE:String"))) {
+            writer.write(square(0), new Object[]{"Z1", 10.0, "keep"});
+            writer.write(square(1), new Object[]{"Z2", 12.0, "drop"});
+        }
+        try (ShapefileFileWriter writer = new ShapefileFileWriter(newShp,
+                DataUtilities.createType("prescription", "the_geom:Polygon:srid=4326,ZONE:String,DOSE:Double,RATE:Double"))) {
+            writer.write(square(0), new Object[]{"Z1", 10.0, 1.5});
+            writer.write(square(3), new Object[]{"Z4", 9.0, 2.5});
+        }
+
+        DiffResult result = ShapefileDiff.byKey("ZONE").compare(oldShp, newShp);
+        Path patch = tempDir.resolve("patch.shp");
+        result.writeShapefile(patch);
+        Map<String, ShapefileRecord> byOp = new HashMap<>();
+        try (ShapefileStreamReader reader = ShapefileStreamReader.open(patch)) {
+            while (reader.hasNext()) {
+                ShapefileRecord record = reader.next();
+                byOp.put((String) record.getAttribute(DiffResult.OP_FIELD), record);
+            }
+        }
+        ShapefileRecord removed = byOp.get("removed");
+        assertEquals("Z2", removed.getAttribute("ZONE"));
+        assertEquals("drop", removed.getAttribute("NOTE"));
+        assertNull(removed.getAttribute("RATE"));
+        ShapefileRecord added = byOp.get("added");
+        assertEquals("Z4", added.getAttribute("ZONE"));
+        assertEquals(2.5, added.getAttribute("RATE"));
+        assertNull(added.getAttribute("NOTE"));
+    }
+
+    /**
+     * 同名字段类型不同时无法合并结构，拒绝输出补丁
+     */
+    @Test
+    void rejectConflictingFieldTypes() throws Exception {
+        Path oldShp = tempDir.resolve("old.shp");
+        Path newShp = tempDir.resolve("new.shp");
+        try (ShapefileFileWriter writer = new ShapefileFileWriter(oldShp,
+                DataUtilities.createType("prescription", "the_geom:Polygon:srid=4326,ZONE:String,DOSE:String"))) {
+            writer.write(square(0), new Object[]{"Z1", "10"});
+        }
+        try (ShapefileFileWriter writer = new ShapefileFileWriter(newShp,
+                DataUtilities.createType("prescription", "the_geom:Polygon:srid=4326,ZONE:String,DOSE:Double"))) {
+            writer.write(square(0), new Object[]{"Z1", 12.0});
+        }
+
+        DiffResult result = ShapefileDiff.byKey("ZONE").compare(oldShp, newShp);
+        IOException e = assertThrows(IOException.class, () -> result.writeShapefile(tempDir.resolve("patch.shp")));
+        assertTrue(e.getMessage().contains("DOSE"), e.getMessage());
+    }
+
+    /**
+     * .dbf 中已删除的记录不参与比较，记录号仍按文件中的位置计算
+     */
+    @Test
+    void skipDeletedRows() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("prescription", PRESCRIPTION);
+        Path oldShp = tempDir.resolve("old.shp");
+        Path newShp = tempDir.resolve("new.shp");
+        try (ShapefileFileWriter writer = new ShapefileFileWriter(oldShp, type)) {
+            writer.write(square(0), new Object[]{"Z1", "Rice", 10.0});
+            writer.write(square(1), new Object[]{"Z2", "Rice", 12.0});
+            writer.write(square(2), new Object[]{"Z3", "Rice", 14.0});
+        }
+        try (ShapefileFileWriter writer = new ShapefileFileWriter(newShp, type)) {
+            writer.write(square(5), new Object[]{"Z0", "Rice", 8.0});
+            writer.write(square(0), new Object[]{"Z1", "Rice", 10.0});
+            writer.write(square(1), new Object[]{"Z2", "Rice", 12.0});
+            writer.write(square(3), new Object[]{"Z4", "Rice", 9.0});
+        }
+        markDeleted(oldShp, 3);
+        markDeleted(newShp, 1);
+
+        DiffResult result = ShapefileDiff.byKey("ZONE").compare(oldShp, newShp);
+        assertEquals(List.of(4), result.getAdded());
+        assertEquals(List.of(), result.getRemoved());
+        assertEquals(List.of(), result.getModified());
+        assertEquals(2, result.getOldCount());
+        assertEquals(3, result.getNewCount());
+
+        Path patch = tempDir.resolve("patch.shp");
+        result.writeShapefile(patch);
+        try (ShapefileStreamReader reader = ShapefileStreamReader.open(patch)) {
+            ShapefileRecord record = reader.next();
+            assertEquals("Z4", record.getAttribute("ZONE"));
+            assertFalse(reader.hasNext());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.zhangyh.shapefile.shapefile.query;
+
+import com.zhangyh.shapefile.shapefile.stream.ShapefileFileWriter;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.data.DataUtilities;
+import org.geotools.referencing.GeodeticCalculator;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 最近邻与到边界距离
+ *
+ * @author zhangyh
+ */
+class NearestNeighbourIndexTests {
+
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void nearestZonesAndBoundaryDistance() throws Exception {
+        double x0 = 500000;
+        double y0 = 3300000;
+        SimpleFeatureType type = DataUtilities.createType("zones", "the_geom:Polygon,ZONE:String");
+        Path zonesShp = tempDir.resolve("zones.shp");
+        try (ShapefileFileWriter writer = new ShapefileFileWriter(zonesShp, type)) {
+            for (int i = 0; i < 5; i++) {
+                writer.write(GEOMETRY_FACTORY.toGeometry(new Envelope(x0 + i * 20, x0 + i * 20 + 10, y0, y0 + 10)),
+                        new Object[]{"Z" + i});
+            }
+        }
+
+        NearestNeighbourIndex index = NearestNeighbourIndex.load(zonesShp).parallelism(4);
+        NearestNeighbourIndex.Query query = index.newQuery(3);
+        assertEquals(3, query.nearest(x0 + 24, y0 + 5));
+        assertEquals("Z1", index.getAttributes(query.item(0))[0]);
+        assertEquals(0, query.distance(0), 1e-9);
+        assertEquals("Z0", index.getAttributes(query.item(1))[0]);
+        assertEquals(14, query.distance(1), 1e-9);
+        assertEquals("Z2", index.getAttributes(query.item(2))[0]);
+        assertEquals(1, query.nearest(x0 + 24, y0 + 5, 10));
+
+        Coordinate[] points = new Coordinate[3000];
+        Random random = new Random(7);
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new Coordinate(x0 - 20 + random.nextDouble() * 140, y0 - 20 + random.nextDouble() * 50);
+        }
+        NearestNeighbourIndex.Neighbour[][] batch = index.nearest(points, 2);
+        for (int i = 0; i < points.length; i++) {
+            Point point = GEOMETRY_FACTORY.createPoint(points[i]);
+            double best = Double.MAX_VALUE;
+            for (int item = 0; item < index.size(); item++) {
+                best = Math.min(best, index.getGeometry(item).distance(point));
+            }
+            assertEquals(best, batch[i][0].distance(), 1e-6);
+            assertTrue(batch[i][1].distance() >= batch[i][0].distance());
+        }
+
+        Geometry field = GEOMETRY_FACTORY.toGeometry(new Envelope(x0, x0 + 100, y0, y0 + 100));
+        BoundaryDistanceIndex boundary = BoundaryDistanceIndex.of(field, null);
+        BoundaryDistanceIndex.Query boundaryQuery = boundary.newQuery();
+        assertEquals(10, boundaryQuery.distance(x0 + 10, y0 + 50), 1e-9);
+        assertTrue(boundaryQuery.contains(x0 + 10, y0 + 50));
+        assertEquals(-5, boundaryQuery.signedDistance(x0 - 5, y0 + 50), 1e-9);
+        double[] distances = boundary.distances(points, true);
+        for (int i = 0; i < points.length; i++) {
+            Point point = GEOMETRY_FACTORY.createPoint(points[i]);
+            double expected = field.getBoundary().distance(point);
+            assertEquals(field.contains(point) ? expected : -expected, distances[i], 1e-6);
+        }
+    }
+
+    /**
+     * 经纬度图层跨两个 UTM 带，按中心所在的 51 带（中央经线 123°）投影：查询点偏离中央经线 4.5°，
+     * 未经比例因子换算的平面距离偏大约 0.2%（500 多米差 1 米），换算后与椭球面距离相差不到 1 厘米
+     */
+    @Test
+    void geographicDistances() {
+        List<Point> points = List.of(point(118.5, 30.0), point(118.51, 30.0), point(121.5, 30.2));
+        NearestNeighbourIndex index = NearestNeighbourIndex.of(points, DefaultGeographicCRS.WGS84);
+        NearestNeighbourIndex.Query query = index.newQuery(2);
+        assertEquals(2, query.nearest(118.5, 30.005));
+        assertEquals(0, query.item(0));
+        assertEquals(geodesic(118.5, 30.005, 118.5, 30.0), query.distance(0), 0.01);
+        assertEquals(1, query.item(1));
+        assertEquals(geodesic(118.5, 30.005, 118.51, 30.0), query.distance(1), 0.01);
+        // 搜索半径同样按实地距离理解
+        double radius = geodesic(118.5, 30.005, 118.5, 30.0);
+        assertEquals(1, query.nearest(118.5, 30.005, radius + 0.05));
+
+        Geometry field = GEOMETRY_FACTORY.toGeometry(new Envelope(118.50, 118.52, 30.0, 30.02));
+        BoundaryDistanceIndex.Query edge = BoundaryDistanceIndex.of(field, DefaultGeographicCRS.WGS84).newQuery();
+        assertEquals(geodesic(118.51, 30.005, 118.51, 30.0), edge.signedDistance(118.51, 30.005), 0.01);
+        assertEquals(-geodesic(118.51, 29.995, 118.51, 30.0), edge.signedDistance(118.51, 29.995), 0.01);
+    }
+
+    /**
+     * 跨越超过两个 UTM 带的经纬度图层按一个带投影误差过大，建立索引时拒绝
+     */
+    @Test
+    void rejectWideGeographicLayers() {
+        List<Point> points = List.of(point(100, 30), point(130, 30));
+        assertThrows(IllegalArgumentException.class, () -> NearestNeighbourIndex.of(points, DefaultGeographicCRS.WGS84));
+        Geometry field = GEOMETRY_FACTORY.toGeometry(new Envelope(100, 130, 20, 40));
+        assertThrows(IllegalArgumentException.class, () -> BoundaryDistanceIndex.of(field, DefaultGeographicCRS.WGS84));
+    }
+
+    @Test
+    void rejectNonPositiveK() {
+        NearestNeighbourIndex index = NearestNeighbourIndex.of(List.of(point(500000, 3300000)), null);
+        assertThrows(IllegalArgumentException.class, () -> index.newQuery(0));
+        assertThrows(IllegalArgumentException.class, () -> index.nearest(500000, 3300000, 0));
+        assertThrows(IllegalArgumentException.class, () -> index.nearest(new Coordinate[]{new Coordinate(500000, 3300000)}, 0));
+    }
+
+    private static Point point(double x, double y) {
+        return GEOMETRY_FACTORY.createPoint(new Coordinate(x, y));
+    }
+
+    private static double geodesic(double lon0, double lat0, double lon1, double lat1) {
+        GeodeticCalculator calculator = new GeodeticCalculator(DefaultGeographicCRS.WGS84);
+        calculator.setStartingGeographicPoint(lon0, lat0);
+        calculator.setDestinationGeographicPoint(lon1, lat1);
+        return calculator.getOrthodromicDistance();
+    }
+}
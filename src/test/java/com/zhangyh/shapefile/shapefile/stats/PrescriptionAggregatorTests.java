@@ -0,0 +1,77 @@
+package com.zhangyh.shapefile.shapefile.stats;
+
+import com.zhangyh.shapefile.shapefile.stream.ShapefileFileWriter;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.data.DataUtilities;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.zhangyh.shapefile.shapefile.TestShapes.markDeleted;
+import static com.zhangyh.shapefile.shapefile.TestShapes.square;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 处方图汇总
+ *
+ * @author zhangyh
+ */
+class PrescriptionAggregatorTests {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * 处方图汇总：椭球面积与 UTM 面积一致，用量按 DOSE_UNIT 换算
+     */
+    @Test
+    void summarizePrescription() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("prescription",
+                "the_geom:Polygon:srid=4326,ZONE:String,DOSE_UNIT:String,PRODUCT:String,DOSE:Double");
+        Path shp = tempDir.resolve("prescription.shp");
+        try (ShapefileFileWriter writer = new ShapefileFileWriter(shp, type)) {
+            for (int i = 0; i < 3000; i++) {
+                writer.write(square(i % 4), new Object[]{"Z" + (i % 2), i % 2 == 0 ? "kg/ha" : "公斤/亩", "Urea", 15.0});
+            }
+        }
+
+        PrescriptionSummary geodesic = new PrescriptionAggregator().parallelism(3).aggregate(shp);
+        PrescriptionSummary utm = new PrescriptionAggregator().areaMethod(AreaMethod.AUTO_UTM).aggregate(shp);
+        assertEquals(3000, geodesic.getRecordCount());
+        assertEquals(2, geodesic.getZones().size());
+        assertEquals(utm.getTotalArea(), geodesic.getTotalArea(), geodesic.getTotalArea() * 1e-3);
+        // 0.01° × 0.01° 在北纬 30° 约 1.07 km²
+        double squareArea = geodesic.getTotalArea() / 3000;
+        assertEquals(1.07e6, squareArea, 0.01e6);
+
+        List<PrescriptionSummary.ProductTotal> products = geodesic.getProducts();
+        assertEquals(1, products.size());
+        assertEquals("kg", products.get(0).unit());
+        double expected = 1500 * squareArea / 10000 * 15 + 1500 * squareArea / (10000.0 / 15) * 15;
+        assertEquals(expected, products.get(0).quantity(), expected * 1e-9);
+        assertEquals(0, geodesic.getUnresolvedCount());
+    }
+
+    /**
+     * .dbf 中已删除的记录不计入面积和用量
+     */
+    @Test
+    void skipDeletedRows() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("prescription",
+                "the_geom:Polygon:srid=4326,ZONE:String,PRODUCT:String,DOSE:Double");
+        Path shp = tempDir.resolve("prescription.shp");
+        try (ShapefileFileWriter writer = new ShapefileFileWriter(shp, type)) {
+            writer.write(square(0), new Object[]{"Z1", "Urea", 15.0});
+            writer.write(square(1), new Object[]{"Z2", "Urea", 15.0});
+        }
+        PrescriptionSummary before = new PrescriptionAggregator().aggregate(shp);
+        markDeleted(shp, 2);
+        PrescriptionSummary after = new PrescriptionAggregator().aggregate(shp);
+        assertEquals(2, before.getRecordCount());
+        assertEquals(1, after.getRecordCount());
+        assertEquals(1, after.getZones().size());
+        assertEquals(before.getTotalArea() / 2, after.getTotalArea(), before.getTotalArea() * 1e-6);
+    }
+}
@@ -0,0 +1,160 @@
+package com.zhangyh.shapefile.shapefile.store;
+
+import com.zhangyh.shapefile.shapefile.stream.ShapefileFileWriter;
+import com.zhangyh.shapefile.shapefile.stream.ShapefileStreamReader;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.data.DataUtilities;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+import static com.zhangyh.shapefile.shapefile.TestShapes.square;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 多版本图层存储
+ *
+ * @author zhangyh
+ */
+class VersionedLayerStoreTests {
+
+    /** 测试用的后台刷新间隔，跨存储的发布在该间隔内可见 */
+    private static final Duration REFRESH_INTERVAL = Duration.ofMillis(50);
+
+    @TempDir
+    Path tempDir;
+
+    private SimpleFeatureType type;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        type = DataUtilities.createType("prescription", "the_geom:Polygon:srid=4326,ZONE:String");
+    }
+
+    /**
+     * 发布新版本后，旧快照仍读到旧数据，快照关闭后旧版本由后台线程回收
+     */
+    @Test
+    void snapshotIsolation() throws Exception {
+        try (VersionedLayerStore store = new VersionedLayerStore(tempDir, REFRESH_INTERVAL)) {
+            assertThrows(NoSuchFileException.class, () -> store.acquire("prescription"));
+            assertEquals(1, publish(store, 1));
+            try (GenerationBuilder builder = store.begin("prescription")) {
+                try (ShapefileFileWriter writer = builder.newWriter(type)) {
+                    writer.write(square(0), new Object[]{"Z0"});
+                }
+            }
+            // 第二个版本没有发布，不可见
+            assertEquals(1, store.getCurrentGeneration("prescription"));
+
+            LayerSnapshot old = store.acquire("prescription");
+            assertEquals(2, publish(store, 2));
+            try (LayerSnapshot current = store.acquire("prescription")) {
+                assertEquals(2, current.getGeneration());
+                assertEquals(2, countRecords(current));
+            }
+            assertEquals(1, countRecords(old));
+            Path oldDirectory = old.getDirectory();
+            old.close();
+            awaitTrue(() -> !Files.exists(oldDirectory), "旧版本没有被回收");
+        }
+    }
+
+    /**
+     * 两个存储实例共用一个根目录，模拟两个进程：一方的快照未关闭时，另一方发布新版本也不能删除它
+     */
+    @Test
+    void snapshotIsolationAcrossStores() throws Exception {
+        try (VersionedLayerStore writerStore = new VersionedLayerStore(tempDir, REFRESH_INTERVAL);
+             VersionedLayerStore readerStore = new VersionedLayerStore(tempDir, REFRESH_INTERVAL)) {
+            publish(writerStore, 1);
+
+            LayerSnapshot old = readerStore.acquire("prescription");
+            assertEquals(1, old.getGeneration());
+            publish(writerStore, 2);
+            // 读取方的存储在刷新为新版本之前一直持有旧版本的租约
+            assertTrue(Files.exists(old.getDirectory()));
+            assertEquals(1, countRecords(old));
+
+            // 没有调用 refresh，CURRENT 的变化由后台线程发现
+            awaitTrue(() -> readerStore.getCurrentGeneration("prescription") == 2, "没有发现其他存储发布的版本");
+            try (LayerSnapshot current = readerStore.acquire("prescription")) {
+                assertEquals(2, current.getGeneration());
+                assertEquals(2, countRecords(current));
+            }
+            Path oldDirectory = old.getDirectory();
+            assertTrue(Files.exists(oldDirectory));
+            old.close();
+            awaitTrue(() -> !Files.exists(oldDirectory), "旧版本没有被回收");
+
+            // 需要立即可见时直接刷新
+            publish(writerStore, 3);
+            readerStore.refresh("prescription");
+            try (LayerSnapshot current = readerStore.acquire("prescription")) {
+                assertEquals(3, current.getGeneration());
+            }
+        }
+    }
+
+    /**
+     * 存储关闭后不再接受获取和构建，未关闭的快照仍然可读
+     */
+    @Test
+    void closeStore() throws Exception {
+        VersionedLayerStore store = new VersionedLayerStore(tempDir, REFRESH_INTERVAL);
+        publish(store, 1);
+        LayerSnapshot snapshot = store.acquire("prescription");
+        store.close();
+        assertThrows(IllegalStateException.class, () -> store.acquire("prescription"));
+        assertThrows(IllegalStateException.class, () -> store.begin("prescription"));
+        assertEquals(1, countRecords(snapshot));
+        snapshot.close();
+
+        try (VersionedLayerStore reopened = new VersionedLayerStore(tempDir);
+             LayerSnapshot current = reopened.acquire("prescription")) {
+            assertEquals(1, current.getGeneration());
+        }
+    }
+
+    private long publish(VersionedLayerStore store, int records) throws IOException {
+        try (GenerationBuilder builder = store.begin("prescription")) {
+            try (ShapefileFileWriter writer = builder.newWriter(type)) {
+                for (int i = 0; i < records; i++) {
+                    writer.write(square(i), new Object[]{"Z" + i});
+                }
+            }
+            return builder.publish();
+        }
+    }
+
+    private static int countRecords(LayerSnapshot snapshot) throws IOException {
+        int count = 0;
+        try (ShapefileStreamReader reader = snapshot.openReader()) {
+            while (reader.hasNext()) {
+                reader.next();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 回收和跨存储刷新在后台线程进行，轮询等待其完成
+     */
+    private static void awaitTrue(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail(message);
+            }
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.zhangyh.shapefile.shapefile.stream;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.data.DataUtilities;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.zhangyh.shapefile.shapefile.TestShapes.square;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分片读写与合并空间索引
+ *
+ * @author zhangyh
+ */
+class ShardedShapefileTests {
+
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * 按记录数分片写入，再作为一个图层顺序、并行、按范围读取
+     */
+    @Test
+    void shardedShapefile() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("points", "the_geom:Point:srid=4326,ID:Integer");
+        try (ShardedShapefileWriter writer = new ShardedShapefileWriter(tempDir, "points", type,
+                StandardCharsets.UTF_8, Long.MAX_VALUE, 1000)) {
+            for (int i = 1; i <= 2500; i++) {
+                writer.write(geometryFactory.createPoint(new Coordinate(120 + i * 0.001, 30)), new Object[]{i});
+            }
+            assertEquals(3, writer.getShardCount());
+        }
+
+        try (ShardedShapefileReader reader = ShardedShapefileReader.open(tempDir, "points")) {
+            assertEquals(2500, reader.getRecordCount());
+            assertEquals(3, reader.getShardCount());
+            long[] next = {1};
+            reader.forEach((number, record) -> {
+                assertEquals(next[0]++, number);
+                assertEquals((int) number, ((Number) record.getAttribute("ID")).intValue());
+            });
+            List<Integer> counts = reader.scanShards(3, (shard, shardReader) -> {
+                int count = 0;
+                while (shardReader.hasNext()) {
+                    shardReader.next();
+                    count++;
+                }
+                return count;
+            });
+            assertEquals(List.of(1000, 1000, 500), counts);
+
+            List<ShardedShapefileReader.RecordRef> hits = reader.query(new Envelope(121.4995, 121.5005, 29, 31));
+            assertEquals(1, hits.size());
+            SimpleFeature feature = reader.readFeature(hits.get(0));
+            assertEquals(1500, ((Number) feature.getAttribute("ID")).intValue());
+            assertEquals("points.1500", feature.getID());
+        }
+    }
+
+    /**
+     * 按字节上限分片：记录数上限不起作用，每个分片的 .shp 都不超过字节上限；没有 .shx 的分片也能建索引
+     */
+    @Test
+    void rollOverOnByteLimit() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("fields", "the_geom:Polygon:srid=4326,ID:Integer");
+        // 每条面记录 8 + 4 + 32 + 4 + 4 + 4 + 5 * 16 = 136 字节，每个分片 .shp 最多 10 条
+        long maxShardBytes = 100 + 136 * 10;
+        try (ShardedShapefileWriter writer = new ShardedShapefileWriter(tempDir, "fields", type,
+                StandardCharsets.UTF_8, maxShardBytes, Integer.MAX_VALUE)) {
+            for (int i = 1; i <= 25; i++) {
+                writer.write(square(i), new Object[]{i});
+            }
+        }
+
+        try (ShardedShapefileReader reader = ShardedShapefileReader.open(tempDir, "fields")) {
+            assertEquals(25, reader.getRecordCount());
+            assertEquals(3, reader.getShardCount());
+            List<ShardManifest.Shard> shards = reader.getManifest().shards();
+            assertEquals(List.of(10, 10, 5), shards.stream().map(ShardManifest.Shard::records).toList());
+            for (int i = 0; i < shards.size(); i++) {
+                assertTrue(shards.get(i).shpLength() <= maxShardBytes);
+                assertEquals(shards.get(i).shpLength(), Files.size(reader.getShardFile(i)));
+            }
+
+            // 第二个分片去掉 .shx，按 .shp 记录头建索引
+            Files.delete(ShapefileFileWriter.sibling(reader.getShardFile(1), "shx"));
+            Envelope envelope = square(15).getEnvelopeInternal();
+            envelope.expandBy(-0.001);
+            List<ShardedShapefileReader.RecordRef> hits = reader.query(envelope);
+            assertEquals(1, hits.size());
+            assertEquals(1, hits.get(0).shard());
+            SimpleFeature feature = reader.readFeature(hits.get(0));
+            assertEquals(15, ((Number) feature.getAttribute("ID")).intValue());
+            assertEquals("fields.15", feature.getID());
+
+            Envelope all = reader.getBounds();
+            assertEquals(25, reader.query(all).size());
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.zhangyh.shapefile.shapefile.stream;
+
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.data.DataUtilities;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 压缩包读写与 .dbf 行处理
+ *
+ * @author zhangyh
+ */
+class ZipShapefileTests {
+
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    @TempDir
+    Path tempDir;
+
+    private static SimpleFeatureType locationType() throws Exception {
+        return DataUtilities.createType("Location", "the_geom:Point:srid=4326,name:String,number:Integer");
+    }
+
+    /**
+     * 压缩包写出后直接从压缩包读回：STORED 与 DEFLATED 两种方式，内存暂存与临时文件暂存都验证
+     */
+    @Test
+    void zipShapefileRoundTrip() throws Exception {
+        SimpleFeatureType type = locationType();
+        for (boolean stored : new boolean[]{true, false}) {
+            for (int spoolThreshold : new int[]{ZipShapefileWriter.DEFAULT_SPOOL_THRESHOLD, 0}) {
+                Path zip = tempDir.resolve("location-" + stored + "-" + spoolThreshold + ".zip");
+                try (OutputStream out = Files.newOutputStream(zip);
+                     ZipShapefileWriter writer = new ZipShapefileWriter(out, "Location", type, StandardCharsets.UTF_8, stored)
+                             .spoolThreshold(spoolThreshold)) {
+                    writer.write(geometryFactory.createPoint(new Coordinate(116.397, 39.908)), new Object[]{"北京", 1});
+                    writer.write(geometryFactory.createPoint(new Coordinate(121.473, 31.230)), new Object[]{"上海", 2});
+                    assertEquals(spoolThreshold == 0, writer.isSpooled());
+                }
+
+                try (ZipShapefileReader zipReader = new ZipShapefileReader(zip)) {
+                    assertEquals(List.of("Location"), zipReader.getLayerNames());
+                    try (ShapefileStreamReader reader = zipReader.open()) {
+                        assertEquals(StandardCharsets.UTF_8, reader.getCharset());
+                        ShapefileRecord first = reader.next();
+                        assertEquals(1, first.getNumber());
+                        assertEquals("北京", first.getAttribute("name"));
+                        assertEquals(1, first.getAttribute("number"));
+                        ShapefileRecord second = reader.next();
+                        assertEquals(121.473, second.getGeometry().getCoordinate().x, 1e-9);
+                        assertFalse(reader.hasNext());
+                    }
+                    if (stored) {
+                        assertEquals(31.230, zipReader.readGeometry("Location", 1).getCoordinate().y, 1e-9);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 超过暂存阈值后转存到临时文件，关闭后临时文件被删除
+     */
+    @Test
+    void spoolLargeLayerToTempFile() throws Exception {
+        SimpleFeatureType type = locationType();
+        Path zip = tempDir.resolve("large.zip");
+        try (OutputStream out = Files.newOutputStream(zip);
+             ZipShapefileWriter writer = new ZipShapefileWriter(out, "Location", type, StandardCharsets.UTF_8, true)
+                     .spoolThreshold(1000)) {
+            for (int i = 0; i < 1000; i++) {
+                writer.write(geometryFactory.createPoint(new Coordinate(116 + i * 1e-4, 39)), new Object[]{"北京", i});
+            }
+            assertTrue(writer.isSpooled());
+        }
+        try (ZipShapefileReader zipReader = new ZipShapefileReader(zip);
+             ShapefileStreamReader reader = zipReader.open()) {
+            int count = 0;
+            while (reader.hasNext()) {
+                assertEquals(count, reader.next().getAttribute("number"));
+                count++;
+            }
+            assertEquals(1000, count);
+            assertEquals(116 + 999 * 1e-4, zipReader.readGeometry("Location", 999).getCoordinate().x, 1e-9);
+        }
+    }
+
+    /**
+     * .dbf 以 0x1A 结尾；删除标记通过 isDeleted 暴露；.dbf 行数不足时属性为 null
+     */
+    @Test
+    void dbaseRows() throws Exception {
+        SimpleFeatureType type = locationType();
+        Path shp = tempDir.resolve("Location.shp");
+        try (ShapefileFileWriter writer = new ShapefileFileWriter(shp, type)) {
+            writer.write(geometryFactory.createPoint(new Coordinate(116.397, 39.908)), new Object[]{"北京", 1});
+            writer.write(geometryFactory.createPoint(new Coordinate(121.473, 31.230)), new Object[]{"上海", 2});
+        }
+        Path dbfFile = ShapefileFileWriter.sibling(shp, "dbf");
+        byte[] dbf = Files.readAllBytes(dbfFile);
+        assertEquals(0x1A, dbf[dbf.length - 1]);
+
+        // 第一行打上删除标记，文件头中的记录数改为 1
+        ByteBuffer header = ByteBuffer.wrap(dbf).order(ByteOrder.LITTLE_ENDIAN);
+        dbf[header.getShort(8)] = '*';
+        header.putInt(4, 1);
+        Files.write(dbfFile, dbf);
+
+        try (ShapefileStreamReader reader = ShapefileStreamReader.open(shp)) {
+            ShapefileRecord first = reader.next();
+            assertTrue(first.isDeleted());
+            assertEquals("北京", first.getAttribute("name"));
+            ShapefileRecord second = reader.next();
+            assertFalse(second.isDeleted());
+            assertNull(second.getAttribute("name"));
+            assertArrayEquals(new Object[]{null, null}, second.getAttributes());
+        }
+    }
+}